@@ -0,0 +1,111 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.FilterEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+public class BenchmarkSupport
+{
+    /**
+     * Points the plugin to a temporary copy of the bundled schemas, and generates the files that are derived from those.
+     */
+    public static synchronized void prepareSchemasFolder() throws IOException
+    {
+        EXIUtils.setSchemasFolder(Files.createTempDirectory("benchmark-classes-"));
+
+        try (final Stream<Path> stream = Files.walk(Paths.get("classes"))) {
+            stream.forEach(source -> {
+                Path destination = EXIUtils.getSchemasFolder().resolve(source.getFileName());
+                try {
+                    Files.copy(source, destination);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        EXIUtils.generateSchemasFile();
+        EXIUtils.generateDefaultCanonicalSchema();
+    }
+
+    /**
+     * Copies the remaining content of a buffer (which may be pooled, and larger than its content) into an array.
+     */
+    public static byte[] toByteArray(IoBuffer buffer)
+    {
+        final byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        buffer.free();
+        return result;
+    }
+
+    /**
+     * A filter that retains (only) the last message that it received.
+     */
+    public static class LastMessageNextFilter implements IoFilter.NextFilter
+    {
+        private Object messageReceived;
+        private Object messageWritten;
+
+        @Override public void sessionCreated(IoSession session) {}
+
+        @Override public void sessionOpened(IoSession session) {}
+
+        @Override public void sessionClosed(IoSession session) {}
+
+        @Override public void sessionIdle(IoSession session, IdleStatus status) {}
+
+        @Override public void exceptionCaught(IoSession session, Throwable cause) {}
+
+        @Override public void inputClosed(IoSession session) {}
+
+        @Override public void messageReceived(IoSession session, Object message) {
+            this.messageReceived = message;
+        }
+
+        public Object getMessageReceived() {
+            return messageReceived;
+        }
+
+        @Override public void messageSent(IoSession session, WriteRequest writeRequest) {}
+
+        @Override public void filterWrite(IoSession session, WriteRequest writeRequest) {
+            this.messageWritten = writeRequest.getMessage();
+        }
+
+        public Object getMessageWritten() {
+            return messageWritten;
+        }
+
+        @Override public void filterClose(IoSession session) {}
+
+        @Override public void event(IoSession session, FilterEvent event) {}
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.CodingMode;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the handling of inbound and outbound stanzas by an {@link EXICodecFilter}, for each of the EXI coding modes.
+ *
+ * The session is a MINA DummySession, which (unlike a Mockito mock) retains session attributes, so that per-session
+ * state is reused between invocations as it would be on a real connection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EXICodecFilterBenchmark
+{
+    @Param
+    public StanzaCorpus stanza;
+
+    @Param
+    public CodingMode codingMode;
+
+    private EXICodecFilter filter;
+    private BenchmarkSupport.LastMessageNextFilter nextFilter;
+    private IoSession session;
+    private byte[] xmlBytes;
+    private byte[] exi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(codingMode);
+        final EXIProcessor processor = new EXIProcessor(configuration);
+
+        xmlBytes = stanza.getBytes();
+        exi = BenchmarkSupport.toByteArray(processor.encodeByteBuffer(stanza.getXML()));
+
+        filter = new EXICodecFilter();
+        nextFilter = new BenchmarkSupport.LastMessageNextFilter();
+        session = new DummySession();
+        EXISessionState.get(session).setProcessor(processor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        filter.sessionClosed(nextFilter, session);
+    }
+
+    @Benchmark
+    public Object inbound() throws Exception
+    {
+        filter.messageReceived(nextFilter, session, IoBuffer.wrap(exi));
+        return nextFilter.getMessageReceived();
+    }
+
+    @Benchmark
+    public int outbound() throws Exception
+    {
+        final WriteRequest writeRequest = new DefaultWriteRequest(IoBuffer.wrap(xmlBytes));
+        filter.filterWrite(nextFilter, session, writeRequest);
+        final int result = ((IoBuffer) nextFilter.getMessageWritten()).remaining();
+        filter.messageSent(nextFilter, session, writeRequest);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.CodingMode;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of individual stanzas by an {@link EXIProcessor}, for each of the EXI coding modes.
+ *
+ * Allocation per operation is reported by the GC profiler, which is enabled by default in the 'jmh' Maven profile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EXIProcessorBenchmark
+{
+    @Param
+    public StanzaCorpus stanza;
+
+    @Param
+    public CodingMode codingMode;
+
+    private EXIProcessor processor;
+    private String xml;
+    private byte[] xmlBytes;
+    private byte[] exi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(codingMode);
+        processor = new EXIProcessor(configuration);
+
+        xml = stanza.getXML();
+        xmlBytes = stanza.getBytes();
+        exi = BenchmarkSupport.toByteArray(processor.encodeByteBuffer(xml));
+    }
+
+    @Benchmark
+    public int encodeString() throws Exception
+    {
+        final IoBuffer encoded = processor.encodeByteBuffer(xml);
+        final int result = encoded.remaining();
+        encoded.free();
+        return result;
+    }
+
+    @Benchmark
+    public int encodeBytes() throws Exception
+    {
+        final IoBuffer encoded = processor.encodeByteBuffer(IoBuffer.wrap(xmlBytes));
+        final int result = encoded.remaining();
+        encoded.free();
+        return result;
+    }
+
+    @Benchmark
+    public String decode() throws Exception
+    {
+        return processor.decode(new ByteArrayInputStream(exi));
+    }
+
+    @Benchmark
+    public String decodeByteArray() throws Exception
+    {
+        return processor.decodeByteArray(exi);
+    }
+}
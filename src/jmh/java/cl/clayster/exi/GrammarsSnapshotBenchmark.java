@@ -0,0 +1,69 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares creating grammars from a canonical schema that imports the bundled jabber-client.xsd, with loading those
+ * grammars from a {@link GrammarsSnapshot} (including the calculation of its fingerprint, as done on every load).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GrammarsSnapshotBenchmark
+{
+    private Path canonicalSchema;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        canonicalSchema = EXIUtils.getExiFolder().resolve("jabber-client-benchmark.xsd");
+        Files.write(canonicalSchema, ("<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:xmpp:exi:cs' elementFormDefault='qualified'>\n"
+            + "\t<xs:import namespace='jabber:client'/>\n"
+            + "</xs:schema>").getBytes(UTF_8));
+
+        GrammarsSnapshot.store(canonicalSchema, GrammarsSnapshot.fingerprint(canonicalSchema), compile());
+        if (!Files.exists(GrammarsSnapshot.getLocation(canonicalSchema))) {
+            throw new IllegalStateException("Grammars could not be stored as a snapshot.");
+        }
+    }
+
+    @Benchmark
+    public Grammars compile() throws Exception
+    {
+        return GrammarFactory.newInstance().createGrammars(canonicalSchema.toAbsolutePath().toString(), new SchemaResolver());
+    }
+
+    @Benchmark
+    public Grammars load() throws Exception
+    {
+        return GrammarsSnapshot.load(canonicalSchema, GrammarsSnapshot.fingerprint(canonicalSchema));
+    }
+}
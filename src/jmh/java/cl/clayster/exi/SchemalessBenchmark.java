@@ -0,0 +1,110 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the static schemaless methods of {@link EXIProcessor}, which reuse per-thread coders and shared grammars,
+ * with creating all of the required instances for every invocation (as done previously). The document that is used is
+ * a schema, as these methods are used to process uploaded schemas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemalessBenchmark
+{
+    private String xml;
+    private byte[] exi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        xml = new String(Files.readAllBytes(Paths.get("classes", "jabber-client.xsd")), UTF_8);
+
+        // decodeSchemaless() uses default EXI options.
+        final ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+        final XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        final EXIResult exiResult = new EXIResult(DefaultEXIFactory.newInstance());
+        exiResult.setOutputStream(osEXI);
+        xmlReader.setContentHandler(exiResult.getHandler());
+        xmlReader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        xmlReader.parse(new InputSource(new StringReader(xml)));
+        exi = osEXI.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeReused() throws Exception
+    {
+        return EXIProcessor.encodeSchemaless(xml, false);
+    }
+
+    @Benchmark
+    public byte[] encodeNewInstances() throws Exception
+    {
+        final ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+        final EXIFactory factory = new EXISetupConfiguration();
+        final XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        final EXIResult exiResult = new EXIResult(factory);
+        exiResult.setOutputStream(osEXI);
+        xmlReader.setContentHandler(exiResult.getHandler());
+        xmlReader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        xmlReader.parse(new InputSource(new StringReader(xml)));
+        return osEXI.toByteArray();
+    }
+
+    @Benchmark
+    public String decodeReused() throws Exception
+    {
+        return EXIProcessor.decodeSchemaless(exi);
+    }
+
+    @Benchmark
+    public String decodeNewInstances() throws Exception
+    {
+        final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        final SAXSource exiSource = new SAXSource(new InputSource(new ByteArrayInputStream(exi)));
+        exiSource.setXMLReader(new SAXDecoder(DefaultEXIFactory.newInstance()));
+        final ByteArrayOutputStream xmlDecoded = new ByteArrayOutputStream();
+        transformer.transform(exiSource, new StreamResult(xmlDecoded));
+        return xmlDecoded.toString(UTF_8.name());
+    }
+}
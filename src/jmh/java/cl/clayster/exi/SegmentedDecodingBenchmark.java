@@ -0,0 +1,94 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.openjdk.jmh.annotations.*;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of decoding one large stanza that is received in many segments, as compared to receiving it in
+ * one segment. The cost of decoding in segments is expected to grow linearly with the size of the stanza.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentedDecodingBenchmark
+{
+    @Param({"65536", "262144", "1048576"})
+    public int stanzaSize;
+
+    @Param({"1024"})
+    public int segmentSize;
+
+    private EXIProcessor processor;
+    private byte[] exi;
+    private EXICodecFilter filter;
+    private BenchmarkSupport.LastMessageNextFilter nextFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        processor = new EXIProcessor(new EXISetupConfiguration());
+
+        final StringBuilder body = new StringBuilder(stanzaSize);
+        int line = 0;
+        while (body.length() < stanzaSize) {
+            body.append("Line ").append(line++).append(" of a large message that is received in many segments.\n");
+        }
+        body.setLength(stanzaSize);
+
+        final Message stanza = new Message();
+        stanza.setFrom(new JID("john", "example.org", "mobile"));
+        stanza.setTo(new JID("jane", "example.com", "desktop"));
+        stanza.setBody(body.toString());
+        exi = BenchmarkSupport.toByteArray(processor.encodeByteBuffer(stanza.toXML()));
+
+        filter = new EXICodecFilter();
+        nextFilter = new BenchmarkSupport.LastMessageNextFilter();
+    }
+
+    @Benchmark
+    public Object decodeInSegments() throws Exception
+    {
+        final IoSession session = new DummySession();
+        EXISessionState.get(session).setProcessor(processor);
+        for (int offset = 0; offset < exi.length; offset += segmentSize) {
+            filter.messageReceived(nextFilter, session, IoBuffer.wrap(exi, offset, Math.min(segmentSize, exi.length - offset)));
+        }
+        filter.sessionClosed(nextFilter, session);
+        return nextFilter.getMessageReceived();
+    }
+
+    @Benchmark
+    public Object decodeInOneSegment() throws Exception
+    {
+        final IoSession session = new DummySession();
+        EXISessionState.get(session).setProcessor(processor);
+        filter.messageReceived(nextFilter, session, IoBuffer.wrap(exi));
+        filter.sessionClosed(nextFilter, session);
+        return nextFilter.getMessageReceived();
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.openjdk.jmh.annotations.*;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap that is retained by the EXI state of idle sessions, each of which has encoded and decoded one
+ * stanza, with and without their processors having hibernated. The result is reported as the 'retainedBytesPerSession'
+ * secondary metric.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SessionFootprintBenchmark
+{
+    @Param({"false", "true"})
+    public boolean hibernated;
+
+    @Param({"1000"})
+    public int sessions;
+
+    private EXISetupConfiguration configuration;
+    private EXICodecFilter filter;
+    private BenchmarkSupport.LastMessageNextFilter nextFilter;
+    private byte[] stanza;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint
+    {
+        public long retainedBytesPerSession;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        configuration = new EXISetupConfiguration();
+        filter = new EXICodecFilter();
+        nextFilter = new BenchmarkSupport.LastMessageNextFilter();
+
+        final Message message = new Message();
+        message.setFrom(new JID("john", "example.org", "mobile"));
+        message.setTo(new JID("jane", "example.com", "desktop"));
+        message.setBody("A message that is sent by every session.");
+        stanza = message.toXML().getBytes();
+    }
+
+    @Benchmark
+    public List<IoSession> idleSessions(Footprint footprint) throws Exception
+    {
+        final long before = usedHeap();
+        final List<IoSession> result = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            final IoSession session = new DummySession();
+            final EXIProcessor processor = new EXIProcessor(configuration);
+            EXISessionState.get(session).setProcessor(processor);
+            filter.filterWrite(nextFilter, session, new DefaultWriteRequest(IoBuffer.wrap(stanza)));
+            filter.messageReceived(nextFilter, session, nextFilter.getMessageWritten());
+            if (hibernated) {
+                synchronized (processor) {
+                    processor.hibernate();
+                }
+            }
+            result.add(session);
+        }
+        footprint.retainedBytesPerSession = (usedHeap() - before) / sessions;
+        for (final IoSession session : result) {
+            filter.sessionClosed(nextFilter, session);
+        }
+        return result;
+    }
+
+    private static long usedHeap()
+    {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
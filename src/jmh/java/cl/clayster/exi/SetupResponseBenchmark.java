@@ -0,0 +1,79 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the processing of 'setup' elements by {@link EXIFilter#setupResponse(Element, IoSession)}, for a setup that
+ * lists all schemas known to the server, and for a quick setup that refers to a previously agreed configuration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SetupResponseBenchmark
+{
+    private EXIFilter filter;
+    private IoSession session;
+    private Element setup;
+    private Element quickSetup;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        filter = new EXIFilter();
+        session = new DummySession();
+
+        setup = DocumentHelper.createElement(DocumentHelper.createQName("setup", DocumentHelper.createNamespace("", "http://jabber.org/protocol/compress/exi")));
+        setup.addAttribute("version", "1");
+        setup.addAttribute(SetupValues.STRICT, "false");
+        setup.addAttribute(SetupValues.BLOCK_SIZE, "1000000");
+        setup.addAttribute(SetupValues.VALUE_MAX_LENGTH, "64");
+        setup.addAttribute(SetupValues.VALUE_PARTITION_CAPACITY, "64");
+        for (final SchemaRegistry.Schema schema : SchemaRegistry.getInstance().getSchemas()) {
+            setup.addElement("schema")
+                .addAttribute("ns", schema.getNamespace())
+                .addAttribute("bytes", schema.getBytes())
+                .addAttribute("md5Hash", schema.getMd5Hash());
+        }
+
+        final Element response = DocumentHelper.parseText(filter.setupResponse(setup.createCopy(), session)).getRootElement();
+        quickSetup = DocumentHelper.createElement(DocumentHelper.createQName("setup", DocumentHelper.createNamespace("", "http://jabber.org/protocol/compress/exi")));
+        quickSetup.addAttribute("configurationId", response.attributeValue("configurationId"));
+    }
+
+    @Benchmark
+    public String setup() throws Exception
+    {
+        return filter.setupResponse(setup.createCopy(), session);
+    }
+
+    @Benchmark
+    public String quickSetup() throws Exception
+    {
+        return filter.setupResponse(quickSetup.createCopy(), session);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Realistic XMPP stanzas that are used as input for benchmarks. Apart from the MUC extension, these are all defined by
+ * the bundled jabber-client.xsd schema.
+ */
+public enum StanzaCorpus
+{
+    MESSAGE("<message xmlns=\"jabber:client\" from=\"romeo@example.net/orchard\" to=\"juliet@example.com/balcony\" type=\"chat\" id=\"ktx72v49\">" +
+        "<body>Art thou not Romeo, and a Montague?</body>" +
+        "<thread>e0ffe42b28561960c6b12b944a092794b9683a38</thread>" +
+        "</message>"),
+
+    PRESENCE("<presence xmlns=\"jabber:client\" from=\"romeo@example.net/orchard\">" +
+        "<show>dnd</show>" +
+        "<status>Wooing Juliet</status>" +
+        "<priority>1</priority>" +
+        "</presence>"),
+
+    ROSTER("<iq xmlns=\"jabber:client\" to=\"juliet@example.com/balcony\" type=\"result\" id=\"bv1bs71f\">" +
+        "<query xmlns=\"jabber:iq:roster\" ver=\"ver11\">" +
+        "<item jid=\"romeo@example.net\" name=\"Romeo\" subscription=\"both\"><group>Friends</group></item>" +
+        "<item jid=\"mercutio@example.com\" name=\"Mercutio\" subscription=\"from\"><group>Friends</group></item>" +
+        "<item jid=\"benvolio@example.net\" name=\"Benvolio\" subscription=\"both\"><group>Friends</group></item>" +
+        "<item jid=\"nurse@example.com\" name=\"Nurse\" subscription=\"to\"/>" +
+        "</query>" +
+        "</iq>"),
+
+    MUC("<message xmlns=\"jabber:client\" from=\"coven@chat.shakespeare.lit/thirdwitch\" to=\"crone1@shakespeare.lit/desktop\" type=\"groupchat\" id=\"hysf1v37\">" +
+        "<body>Harpier cries: 'tis time, 'tis time.</body>" +
+        "<x xmlns=\"http://jabber.org/protocol/muc#user\"><item affiliation=\"member\" jid=\"hag66@shakespeare.lit/pda\" role=\"participant\"/></x>" +
+        "</message>");
+
+    private final String xml;
+
+    StanzaCorpus(String xml)
+    {
+        this.xml = xml;
+    }
+
+    public String getXML()
+    {
+        return xml;
+    }
+
+    public byte[] getBytes()
+    {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.main.api.sax.EXISource;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the per-stanza cost of decoding through an identity Transformer followed by a dom4j parse to find the root
+ * element (as done previously) with decoding directly into a {@link StanzaSerializer}.
+ *
+ * Run with the GC profiler to obtain allocation figures: mvn -Pjmh test-compile exec:exec -Djmh.args="StanzaDecoding -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StanzaDecodingBenchmark
+{
+    @Param({
+        "<message xmlns='jabber:client' to='juliet@example.com/balcony' from='romeo@example.net/orchard' type='chat' id='a1'><body>Art thou not Romeo, and a Montague?</body></message>",
+        "<presence xmlns='jabber:client' from='romeo@example.net/orchard'><show>away</show><status>In the orchard</status><priority>5</priority></presence>"
+    })
+    public String stanza;
+
+    private EXIProcessor processor;
+    private byte[] exi;
+    private XMLReader exiReader;
+    private Transformer transformer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        BenchmarkSupport.prepareSchemasFolder();
+        processor = new EXIProcessor(new EXISetupConfiguration());
+        exi = BenchmarkSupport.toByteArray(processor.encodeByteBuffer(stanza));
+
+        exiReader = new EXISource(processor.exiFactory).getXMLReader();
+        transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    }
+
+    @Benchmark
+    public String transformerAndDom4j() throws Exception
+    {
+        final SAXSource source = new SAXSource(new InputSource(new ByteArrayInputStream(exi)));
+        source.setXMLReader(exiReader);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(source, new StreamResult(baos));
+        final String xml = baos.toString(UTF_8.name());
+        return DocumentHelper.parseText(xml).getRootElement().getName();
+    }
+
+    @Benchmark
+    public String serializer() throws Exception
+    {
+        return processor.decodeStanza(new ByteArrayInputStream(exi)).getRootElementName();
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.CachedBufferAllocator;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds EXI data that has been received from one session, but that has not been decoded into a complete document yet.
+ *
+ * Data is stored in chunks of a fixed size, which are drawn from a pool of direct (off-heap) buffers. Appending data
+ * never copies the data that was appended before it, and chunks are returned to the pool as soon as all data in them
+ * has been decoded. An instance that holds no data, holds no memory.
+ *
+ * The amount of data that an instance holds is limited: appending beyond that limit fails. When data is held, but none
+ * has been appended for a while, a callback is invoked. As the data that is held can not be decoded without the data
+ * that has failed to arrive, that callback typically closes the session.
+ *
+ * Data is read from a mark onwards, which allows decoding of a document to be retried from its start. Setting the mark
+ * releases all data before it.
+ *
+ * Instances are not thread-safe, except for the idle check, which only reads from volatile fields.
+ */
+class AccumulationBuffer
+{
+    static final int CHUNK_SIZE = 1024;
+    static final int DEFAULT_MAXIMUM_SIZE = 1024 * 1024;
+    static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final IoBufferAllocator allocator = new CachedBufferAllocator();
+
+    private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "exi-accumulation-buffer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The number of bytes in chunks that are currently held by all instances.
+     */
+    private static final LongAdder allocatedBytes = new LongAdder();
+
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private static volatile Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * Defines the maximum number of bytes of one incomplete document (or, when the whole stream is one EXI fragment,
+     * of the part of the stream that is being decoded).
+     *
+     * @param size the maximum number of bytes to hold.
+     */
+    static void setMaximumSize(int size)
+    {
+        maximumSize = size;
+    }
+
+    /**
+     * Defines for how long data of an incomplete document is held, without more data being received.
+     *
+     * @param timeout the maximum idle time, or zero to hold data indefinitely.
+     */
+    static void setIdleTimeout(Duration timeout)
+    {
+        idleTimeout = timeout;
+    }
+
+    static long getAllocatedBytes()
+    {
+        return allocatedBytes.sum();
+    }
+
+    private final Runnable onIdle;
+
+    /**
+     * Chunks, in 'write' mode: data is stored from the start of each chunk up to its position.
+     */
+    private final List<IoBuffer> chunks = new ArrayList<>();
+
+    /**
+     * The offset of the mark in the first chunk.
+     */
+    private int markOffset;
+
+    private int readChunk;
+    private int readOffset;
+
+    /**
+     * The number of bytes that have been read since the mark.
+     */
+    private int consumed;
+
+    /**
+     * The number of bytes that are held: from the mark up to the end of the data.
+     */
+    private volatile int size;
+
+    private volatile long lastAppended;
+    private final AtomicBoolean idleCheckScheduled = new AtomicBoolean();
+
+    /**
+     * @param onIdle invoked (on a background thread) when data is held for longer than the idle timeout, without more
+     *               data being appended. Can be null.
+     */
+    AccumulationBuffer(Runnable onIdle)
+    {
+        this.onIdle = onIdle;
+    }
+
+    /**
+     * Appends the remaining data of a buffer. The position of that buffer is advanced to its limit.
+     *
+     * @param segment the data to append.
+     * @throws SizeLimitExceededException when the data that would be held exceeds the maximum size. Nothing is appended.
+     */
+    void append(IoBuffer segment) throws SizeLimitExceededException
+    {
+        final int maximum = maximumSize;
+        if ((long) size + segment.remaining() > maximum) {
+            throw new SizeLimitExceededException((long) size + segment.remaining(), maximum);
+        }
+
+        final int length = segment.remaining();
+        final int limit = segment.limit();
+        while (segment.hasRemaining()) {
+            IoBuffer tail = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (tail == null || !tail.hasRemaining()) {
+                tail = allocator.allocate(CHUNK_SIZE, true);
+                allocatedBytes.add(tail.capacity());
+                chunks.add(tail);
+            }
+            segment.limit(segment.position() + Math.min(tail.remaining(), segment.remaining()));
+            tail.put(segment);
+            segment.limit(limit);
+        }
+        size += length;
+
+        lastAppended = System.nanoTime();
+        scheduleIdleCheck(idleTimeout.toNanos());
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes that are held, from the mark onwards.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes that have not been read yet.
+     */
+    int remaining()
+    {
+        return size - consumed;
+    }
+
+    /**
+     * Checks if the data from the mark onwards starts with the provided bytes.
+     */
+    boolean startsWith(byte[] prefix)
+    {
+        if (size < prefix.length) {
+            return false;
+        }
+        int chunk = 0;
+        int offset = markOffset;
+        for (final byte b : prefix) {
+            if (offset == chunks.get(chunk).position()) {
+                chunk++;
+                offset = 0;
+            }
+            if (chunks.get(chunk).get(offset++) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return the byte, or -1 when all data has been read.
+     */
+    int read()
+    {
+        if (consumed == size) {
+            return -1;
+        }
+        IoBuffer chunk = chunks.get(readChunk);
+        if (readOffset == chunk.position()) {
+            chunk = chunks.get(++readChunk);
+            readOffset = 0;
+        }
+        consumed++;
+        return chunk.get(readOffset++) & 0xFF;
+    }
+
+    /**
+     * Reads up to the specified number of bytes.
+     *
+     * @return the number of bytes read, or -1 when all data has been read.
+     */
+    int read(byte[] b, int off, int len)
+    {
+        if (consumed == size) {
+            return -1;
+        }
+        int count = 0;
+        while (count < len && consumed < size) {
+            final IoBuffer chunk = chunks.get(readChunk);
+            if (readOffset == chunk.position()) {
+                readChunk++;
+                readOffset = 0;
+                continue;
+            }
+            final int n = Math.min(len - count, chunk.position() - readOffset);
+            final ByteBuffer source = chunk.buf().duplicate();
+            source.position(readOffset);
+            source.get(b, off + count, n);
+            readOffset += n;
+            consumed += n;
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a stream that reads from this buffer. The stream signals its end when all data has been read.
+     */
+    InputStream asInputStream()
+    {
+        return new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                return AccumulationBuffer.this.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                return len == 0 ? 0 : AccumulationBuffer.this.read(b, off, len);
+            }
+
+            @Override
+            public int available()
+            {
+                return remaining();
+            }
+        };
+    }
+
+    /**
+     * Moves the mark to the data that is to be read next, releasing everything before it.
+     */
+    void mark()
+    {
+        if (consumed == size) {
+            free();
+            return;
+        }
+        for (int i = 0; i < readChunk; i++) {
+            release(chunks.get(i));
+        }
+        chunks.subList(0, readChunk).clear();
+        readChunk = 0;
+        markOffset = readOffset;
+        size -= consumed;
+        consumed = 0;
+    }
+
+    /**
+     * Moves reading back to the mark.
+     */
+    void reset()
+    {
+        readChunk = 0;
+        readOffset = markOffset;
+        consumed = 0;
+    }
+
+    /**
+     * Releases all data. The buffer can be used again afterwards.
+     */
+    void free()
+    {
+        for (final IoBuffer chunk : chunks) {
+            release(chunk);
+        }
+        chunks.clear();
+        markOffset = 0;
+        readChunk = 0;
+        readOffset = 0;
+        consumed = 0;
+        size = 0;
+    }
+
+    private static void release(IoBuffer chunk)
+    {
+        allocatedBytes.add(-chunk.capacity());
+        chunk.free();
+    }
+
+    private void scheduleIdleCheck(long delayNanos)
+    {
+        if (onIdle != null && delayNanos > 0 && idleCheckScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void checkIdle()
+    {
+        idleCheckScheduled.set(false);
+        if (size == 0) {
+            return;
+        }
+        final long timeout = idleTimeout.toNanos();
+        if (timeout <= 0) {
+            return;
+        }
+        final long idle = System.nanoTime() - lastAppended;
+        if (idle >= timeout) {
+            onIdle.run();
+        } else {
+            scheduleIdleCheck(timeout - idle);
+        }
+    }
+
+    /**
+     * Signals that data could not be appended, as the amount of data held would exceed the maximum.
+     */
+    static class SizeLimitExceededException extends IOException
+    {
+        SizeLimitExceededException(long size, int maximum)
+        {
+            super("Incomplete EXI data of " + size + " bytes exceeds the maximum of " + maximum + " bytes.");
+        }
+    }
+}
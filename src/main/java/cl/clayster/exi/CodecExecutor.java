@@ -0,0 +1,161 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.IoEventQueueHandler;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves the encoding and decoding of EXI data of sessions off the threads that deliver their events.
+ *
+ * Two executor filters are placed around the codec filter of a session: one below it, that hands off received data
+ * (to be decoded), and one above it, that hands off data that is written (to be encoded). Both use the same ordered
+ * executor, which runs the work of one session on one thread at a time, in the order in which it was queued. This keeps
+ * reads, writes and the closing of a session in order, while the work of different sessions runs concurrently.
+ *
+ * The number of events of one session that wait to be processed is limited. A session that exceeds that limit (for
+ * example, because it sends data faster than it can be decoded) is closed, as events can not be dropped without
+ * corrupting its stream. Events that close the session are always accepted.
+ */
+class CodecExecutor
+{
+    private static final Logger Log = LoggerFactory.getLogger(CodecExecutor.class);
+
+    static final String DECODER_FILTER_NAME = "exiDecoderExecutor";
+    static final String ENCODER_FILTER_NAME = "exiEncoderExecutor";
+
+    static final int DEFAULT_MAXIMUM_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    static final int DEFAULT_MAXIMUM_QUEUED_EVENTS = 1024;
+
+    private static final OrderedThreadPoolExecutor executor;
+
+    static {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        executor = new OrderedThreadPoolExecutor(0, DEFAULT_MAXIMUM_THREADS, 60L, TimeUnit.SECONDS, runnable -> {
+            final Thread thread = new Thread(runnable, "exi-codec-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, new SessionQueueLimit());
+    }
+
+    private static volatile boolean enabled = false;
+    private static volatile int maximumQueuedEvents = DEFAULT_MAXIMUM_QUEUED_EVENTS;
+
+    /**
+     * Defines if the codec work of sessions that start using EXI is moved off the threads that deliver their events.
+     * Sessions that use EXI already are not affected.
+     *
+     * @param enabled true to move the codec work onto separate threads.
+     */
+    static void setEnabled(boolean enabled)
+    {
+        CodecExecutor.enabled = enabled;
+    }
+
+    static void setMaximumThreads(int maximum)
+    {
+        executor.setMaximumPoolSize(maximum);
+    }
+
+    /**
+     * Defines the maximum number of events of one session that can wait to be processed.
+     *
+     * @param maximum the maximum number of events per session.
+     */
+    static void setMaximumQueuedEvents(int maximum)
+    {
+        maximumQueuedEvents = maximum;
+    }
+
+    /**
+     * Adds executor filters around the codec filter of a session, if enabled.
+     *
+     * @param filterChain the filter chain of a session, which must contain the codec filter.
+     * @param codecFilterName the name of the codec filter in the chain.
+     */
+    static void addTo(IoFilterChain filterChain, String codecFilterName)
+    {
+        if (!enabled) {
+            return;
+        }
+        // The session is reported closed only after the data that was received before has been decoded.
+        filterChain.addBefore(codecFilterName, DECODER_FILTER_NAME, new ExecutorFilter(executor, IoEventType.MESSAGE_RECEIVED, IoEventType.SESSION_CLOSED));
+        // The session is closed only after the data that was written before has been encoded.
+        filterChain.addAfter(codecFilterName, ENCODER_FILTER_NAME, new ExecutorFilter(executor, IoEventType.WRITE, IoEventType.CLOSE));
+    }
+
+    /**
+     * Keeps track of the number of events that are waiting to be processed, and limits that number per session.
+     */
+    private static final class SessionQueueLimit implements IoEventQueueHandler
+    {
+        @Override
+        public boolean accept(Object source, IoEvent event)
+        {
+            final EXISessionState state = getLimitedState(event);
+            if (state == null || state.getQueuedCodecEvents().get() < maximumQueuedEvents) {
+                return true;
+            }
+            if (!event.getSession().isClosing()) {
+                Log.info("Closing session {}, as more than {} of its events are waiting to be encoded or decoded.", event.getSession().hashCode(), maximumQueuedEvents);
+                EXIMetrics.getInstance().recordCodecQueueOverflow();
+                event.getSession().closeNow();
+            }
+            return false;
+        }
+
+        @Override
+        public void offered(Object source, IoEvent event)
+        {
+            EXIMetrics.getInstance().recordCodecTaskQueued();
+            final EXISessionState state = getLimitedState(event);
+            if (state != null) {
+                state.getQueuedCodecEvents().incrementAndGet();
+            }
+        }
+
+        @Override
+        public void polled(Object source, IoEvent event)
+        {
+            EXIMetrics.getInstance().recordCodecTaskStarted();
+            final EXISessionState state = getLimitedState(event);
+            if (state != null) {
+                state.getQueuedCodecEvents().decrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the state of the session of an event that counts towards the limit, or null when the event does not.
+         */
+        private static EXISessionState getLimitedState(IoEvent event)
+        {
+            if (event.getType() == IoEventType.CLOSE || event.getType() == IoEventType.SESSION_CLOSED) {
+                return null;
+            }
+            return EXISessionState.peek(event.getSession());
+        }
+    }
+}
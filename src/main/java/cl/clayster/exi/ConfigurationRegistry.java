@@ -0,0 +1,186 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.dom4j.DocumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A process-wide, bounded registry of EXI setup configurations that have been negotiated before, keyed by their
+ * configuration ID.
+ *
+ * Clients that use quick setup refer to a configuration by its ID only. Without this registry, every such setup would
+ * require the configuration file to be read and parsed. Configurations in this registry are shared by all sessions that
+ * use them, and must therefore not be modified once they have been registered.
+ */
+public class ConfigurationRegistry
+{
+    private static final Logger Log = LoggerFactory.getLogger(ConfigurationRegistry.class);
+
+    static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * Configuration IDs are MD5 hashes, in hexadecimal notation. Anything else is not looked up on disk.
+     */
+    private static final Pattern CONFIGURATION_ID = Pattern.compile("[0-9a-fA-F]{1,64}");
+
+    private static final ConfigurationRegistry INSTANCE = new ConfigurationRegistry(DEFAULT_MAXIMUM_SIZE);
+
+    public static ConfigurationRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private volatile int maximumSize;
+
+    /**
+     * Configurations, in least-recently-used order. Guarded by 'this'.
+     */
+    private final Map<String, EXISetupConfiguration> entries = new LinkedHashMap<String, EXISetupConfiguration>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EXISetupConfiguration> eldest)
+        {
+            return size() > maximumSize;
+        }
+    };
+
+    ConfigurationRegistry(int maximumSize)
+    {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Returns the configuration with the provided ID. Configurations that are not in memory are loaded from disk.
+     *
+     * Note that disk access (when it occurs) happens outside of any lock: this prevents the EXI folder from being
+     * accessed (which synchronizes on {@link EXIUtils}) while holding the lock of this registry.
+     *
+     * @param configurationId the ID of the configuration to look up.
+     * @return the (shared) configuration, or null when no such configuration is known.
+     * @throws DocumentException when the configuration file on disk could not be parsed.
+     */
+    public EXISetupConfiguration get(final String configurationId) throws DocumentException
+    {
+        if (configurationId == null || !CONFIGURATION_ID.matcher(configurationId).matches()) {
+            Log.debug("Ignoring invalid configuration ID: {}", configurationId);
+            return null;
+        }
+
+        synchronized (this) {
+            final EXISetupConfiguration existing = entries.get(configurationId);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        final EXISetupConfiguration loaded = EXISetupConfiguration.loadConfiguration(configurationId);
+        if (loaded == null) {
+            return null;
+        }
+        return intern(loaded);
+    }
+
+    /**
+     * Registers a configuration, unless a configuration with the same ID already is registered.
+     *
+     * @param configuration the configuration to register (must have a configuration ID).
+     * @return the configuration that is registered under the ID of the provided configuration (which is either the
+     *         provided instance, or an instance that was registered earlier).
+     */
+    public synchronized EXISetupConfiguration intern(final EXISetupConfiguration configuration)
+    {
+        final String configurationId = configuration.getConfigurationId();
+        if (configurationId == null) {
+            throw new IllegalArgumentException("Cannot register a configuration that does not have a configuration ID.");
+        }
+        final EXISetupConfiguration existing = entries.get(configurationId);
+        if (existing != null) {
+            return existing;
+        }
+        entries.put(configurationId, configuration);
+        return configuration;
+    }
+
+    /**
+     * Loads configurations that are stored on disk, until the registry is full.
+     */
+    public void warm()
+    {
+        final Path exiFolder = EXIUtils.getExiFolder();
+        if (!Files.isDirectory(exiFolder)) {
+            return;
+        }
+
+        int loaded = 0;
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(exiFolder, "*.xml")) {
+            for (final Path file : stream) {
+                if (loaded >= maximumSize) {
+                    break;
+                }
+                final String fileName = file.getFileName().toString();
+                final String configurationId = fileName.substring(0, fileName.length() - ".xml".length());
+                try {
+                    if (get(configurationId) != null) {
+                        loaded++;
+                    }
+                } catch (DocumentException e) {
+                    Log.warn("Unable to load EXI configuration from: {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            Log.warn("Unable to load EXI configurations from: {}", exiFolder, e);
+        }
+        Log.debug("Loaded {} EXI configuration(s) from: {}", loaded, exiFolder);
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public synchronized void setMaximumSize(int maximumSize)
+    {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number, but was: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+
+        // Shrink immediately, least recently used first.
+        while (entries.size() > maximumSize) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+}
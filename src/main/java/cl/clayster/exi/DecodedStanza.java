@@ -0,0 +1,47 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+/**
+ * The XML text of a decoded EXI document (stanza), together with the name of its root element.
+ */
+final class DecodedStanza
+{
+    private final String xml;
+    private final String rootElementName;
+
+    DecodedStanza(String xml, String rootElementName)
+    {
+        this.xml = xml;
+        this.rootElementName = rootElementName;
+    }
+
+    String getXML()
+    {
+        return xml;
+    }
+
+    /**
+     * Returns the local name of the root element, which allows the kind of stanza to be determined without parsing the
+     * XML text.
+     *
+     * @return an element name (possibly null if the document is empty).
+     */
+    String getRootElementName()
+    {
+        return rootElementName;
+    }
+}
@@ -20,7 +20,9 @@ import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.io.channel.BitDecoderChannel;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteRequest;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
@@ -29,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.transform.TransformerException;
+import java.io.InputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -50,6 +53,8 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
     private static final String agreementSentFlag = "exiAltAgreementSent";
     private static final String setupFlag = "exiAltSetupReceived";
 
+    private static final byte[] COOKIE = "$EXI".getBytes(UTF_8);
+
     public EXIAlternativeBindingFilter()
     {
     }
@@ -57,6 +62,14 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
     @Override
     public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
     {
+        // Data is not encoded by this filter before EXI has been recognized, nor after the codec has taken over (which
+        // happens before this filter is removed).
+        final EXISessionState state = EXISessionState.peek(session);
+        final EXIProcessor processor = state == null ? null : state.getProcessor();
+        if (processor == null || session.getFilterChain().contains(EXICodecFilter.filterName)) {
+            super.filterWrite(nextFilter, session, writeRequest);
+            return;
+        }
         if (writeRequest.getMessage() instanceof IoBuffer) {
             IoBuffer bb = (IoBuffer) writeRequest.getMessage();
             String msg = UTF_8.decode(((IoBuffer) writeRequest.getMessage()).buf()).toString();
@@ -64,17 +77,20 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
                 final Element startStream = EXIUtils.generateStreamStart(EXIUtils.getAttributeValue(msg, "id"), XMPPServer.getInstance().getServerInfo().getXMPPDomain(), true);
                 final String startStreamXml = startStream.asXML();
                 Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", startStreamXml.length(), session.hashCode());
-                bb = ((EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR)).encodeByteBuffer(startStreamXml, true);
-                writeRequest.setMessage(bb);
-                super.filterWrite(nextFilter, session, writeRequest);
-
-                if (msg.contains("<stream:features")) {
-                    msg = msg.substring(msg.indexOf("<stream:features"))
-                        .replaceAll("<stream:features", "<stream:features xmlns:stream=\"http://etherx.jabber.org/streams\"");
-                    Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", msg.length(), session.hashCode());
-                    writeRequest.setMessage(((EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR)).encodeByteBuffer(msg));
+                bb = state.trackEncoded(processor.encodeByteBuffer(startStreamXml, true));
+                if (!msg.contains("<stream:features")) {
+                    writeRequest.setMessage(bb);
                     super.filterWrite(nextFilter, session, writeRequest);
+                    return;
                 }
+                // Each buffer is written by a request of its own, so that each can be released once it has been written.
+                super.filterWrite(nextFilter, session, new DefaultWriteRequest(bb));
+
+                msg = msg.substring(msg.indexOf("<stream:features"))
+                    .replaceAll("<stream:features", "<stream:features xmlns:stream=\"http://etherx.jabber.org/streams\"");
+                Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", msg.length(), session.hashCode());
+                writeRequest.setMessage(state.trackEncoded(processor.encodeByteBuffer(msg)));
+                super.filterWrite(nextFilter, session, writeRequest);
                 return;
             } else if (msg.startsWith("<stream:features")) {
                 msg = msg.replaceAll("<stream:features", "<stream:features xmlns:stream=\"http://etherx.jabber.org/streams\"");
@@ -86,12 +102,23 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
                 }
             }
             Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", msg.length(), session.hashCode());
-            bb = ((EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR)).encodeByteBuffer(msg);
-            writeRequest.setMessage(bb);
+            bb = processor.encodeByteBuffer(msg);
+            writeRequest.setMessage(state.trackEncoded(bb));
             super.filterWrite(nextFilter, session, writeRequest);
         }
     }
 
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        // The data that was written has been encoded by this filter into a pooled buffer, which can now be reused.
+        final EXISessionState state = EXISessionState.peek(session);
+        if (state != null) {
+            state.releaseEncoded(writeRequest.getMessage());
+        }
+        super.messageSent(nextFilter, session, writeRequest);
+    }
+
 
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
@@ -103,35 +130,46 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
             // Keep current position in the buffer
             int currentPos = byteBuffer.position();
 
-            byte[] exiBytes = (byte[]) session.getAttribute("exiBytes");
-            if (exiBytes == null) {
-                exiBytes = byteBuffer.array();
-            } else {
-                byte[] dest = new byte[exiBytes.length + byteBuffer.limit()];
-                System.arraycopy(exiBytes, 0, dest, 0, exiBytes.length);
-                System.arraycopy(byteBuffer.array(), 0, dest, exiBytes.length, byteBuffer.limit());
-                exiBytes = dest;
+            // Data of a message that was received incompletely is held until the rest of it has been received.
+            final EXISessionState existing = EXISessionState.peek(session);
+            final AccumulationBuffer pending = existing == null ? null : existing.getNegotiationData();
+            if (pending != null) {
+                try {
+                    pending.append(byteBuffer.duplicate());
+                } catch (AccumulationBuffer.SizeLimitExceededException e) {
+                    Log.info("Closing session {}: {}", session.hashCode(), e.getMessage());
+                    existing.releaseNegotiationData();
+                    EXIUtils.closeWithStreamError(session, "policy-violation");
+                    return;
+                }
             }
-            if (EXIProcessor.hasEXICookie(exiBytes)) {
+            if (pending != null ? pending.startsWith(COOKIE) : EXIUtils.startsWith(byteBuffer, COOKIE)) {
+                final EXISessionState state = EXISessionState.get(session);
                 session.setAttribute(EXIAlternativeBindingFilter.flag, true);
                 if (!session.containsAttribute(EXIAlternativeBindingFilter.quickSetupFlag)) {
                     session.setAttribute(EXIAlternativeBindingFilter.quickSetupFlag, false);
                     try {
                         EXIHeaderDecoder headerDecoder = new EXIHeaderDecoder();
-                        BitDecoderChannel headerChannel = new BitDecoderChannel(((IoBuffer) message).asInputStream());
+                        BitDecoderChannel headerChannel = new BitDecoderChannel(open(pending, byteBuffer, currentPos));
                         EXISetupConfiguration exiConfig = new EXISetupConfiguration(true);
                         exiConfig.setSchemaIdResolver(new SchemaIdResolver());
                         exiConfig = (EXISetupConfiguration) headerDecoder.parse(headerChannel, exiConfig);
-                        if (exiConfig.getGrammars().isSchemaInformed()) {
+                        if (exiConfig.isFragment()) {
+                            // A quick setup is completed by decoding the first document, which a stream that is one
+                            // EXI fragment does not end. Such a stream is only agreed on through a setup.
+                            Log.debug("Declining quick setup with a fragment.");
+                            EXIMetrics.getInstance().recordQuickSetup(false);
+                        } else if (exiConfig.getGrammars().isSchemaInformed()) {
                             exiConfig.setSchemaId(exiConfig.getGrammars().getSchemaId());
                             EXIProcessor ep = new EXIProcessor(exiConfig);
-                            msg = ep.decodeByteArray(exiBytes);
-                            session.setAttribute(EXIUtils.EXI_PROCESSOR, ep);
-                            session.setAttribute(EXIUtils.EXI_CONFIG, exiConfig);
+                            msg = ep.decode(open(pending, byteBuffer, currentPos));
+                            state.setProcessor(ep);
+                            state.setConfiguration(exiConfig);
                             session.setAttribute(EXIAlternativeBindingFilter.quickSetupFlag, true);
+                            EXIMetrics.getInstance().recordQuickSetup(true);
                             Log.debug("quick setup: {}", exiConfig);
                         } else {
-
+                            EXIMetrics.getInstance().recordQuickSetup(false);
                         }
                     } catch (EXIException | TransformerException e) {
                         Log.warn("Exception while trying to process received message.", e);
@@ -140,30 +178,41 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
 
                 if (session.getAttribute(EXIAlternativeBindingFilter.quickSetupFlag).equals(false)) {
                     EXISetupConfiguration exiConfig = new EXISetupConfiguration();
-                    if (session.containsAttribute(EXIUtils.EXI_CONFIG)) {
-                        exiConfig = (EXISetupConfiguration) session.getAttribute(EXIUtils.EXI_CONFIG);
+                    if (state.getConfiguration() != null) {
+                        exiConfig = state.getConfiguration();
                     }
-                    session.setAttribute(EXIUtils.EXI_PROCESSOR, new EXIProcessor(exiConfig));
-                    Log.debug("new EXIProcessor: {} with: {}", session.getAttribute(EXIUtils.EXI_PROCESSOR), exiConfig);
+                    state.setProcessor(new EXIProcessor(exiConfig));
+                    Log.debug("new EXIProcessor: {} with: {}", state.getProcessor(), exiConfig);
                 }
             }
             if (session.containsAttribute(EXIAlternativeBindingFilter.flag)) {
                 // Decode EXI bytes
-                Log.trace("Decoding {} EXI bytes into XMPP characters, using EXISetupConfigurations: {}", exiBytes.length, session.containsAttribute(EXIUtils.EXI_CONFIG) ? session.getAttribute(EXIUtils.EXI_CONFIG) : new EXISetupConfiguration());
+                final EXISessionState state = EXISessionState.get(session);
+                final int exiBytes = pending != null ? pending.size() : byteBuffer.limit() - currentPos;
+                Log.trace("Decoding {} EXI bytes into XMPP characters, using EXISetupConfigurations: {}", exiBytes, state.getConfiguration() != null ? state.getConfiguration() : new EXISetupConfiguration());
                 try {
-                    msg = ((EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR)).decodeByteArray(exiBytes);
+                    final long start = System.nanoTime();
+                    msg = state.getProcessor().decode(open(pending, byteBuffer, currentPos));
+                    EXIMetrics.getInstance().recordDecode(exiBytes, EXIMetrics.utf8Length(msg), System.nanoTime() - start);
                 } catch (TransformerException e) {
-                    if (session.containsAttribute("exiBytes")) {
-                        byte[] anterior = (byte[]) session.getAttribute("exiBytes");
-                        byte[] aux = new byte[anterior.length + exiBytes.length];
-                        System.arraycopy(exiBytes, 0, aux, anterior.length, exiBytes.length - anterior.length);
-                        System.arraycopy(anterior, 0, aux, 0, anterior.length);
-                        exiBytes = aux;
+                    EXIMetrics.getInstance().recordIncompleteFrame();
+                    if (pending == null) {
+                        final AccumulationBuffer created = new AccumulationBuffer(() -> {
+                            Log.debug("Closing session {}, as it did not complete the EXI data that it started sending.", session.hashCode());
+                            EXIUtils.closeWithStreamError(session, "connection-timeout");
+                        });
+                        try {
+                            created.append(byteBuffer.duplicate().position(currentPos));
+                        } catch (AccumulationBuffer.SizeLimitExceededException ex) {
+                            Log.info("Closing session {}: {}", session.hashCode(), ex.getMessage());
+                            EXIUtils.closeWithStreamError(session, "policy-violation");
+                            return;
+                        }
+                        state.setNegotiationData(created);
                     }
-                    session.setAttribute("exiBytes", exiBytes);
                     return;
                 }
-                session.setAttribute("exiBytes", null);    // old bytes have been used with the last message
+                state.releaseNegotiationData();    // old bytes have been used with the last message
 
                 Element xml = DocumentHelper.parseText(msg).getRootElement();
                 Log.trace("Decoded EXI bytes into {} XMPP characters.", xml.asXML().length());
@@ -208,4 +257,39 @@ public class EXIAlternativeBindingFilter extends IoFilterAdapter
         }
         super.messageReceived(nextFilter, session, message);
     }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception
+    {
+        releaseNegotiationData(session);
+        super.sessionClosed(nextFilter, session);
+    }
+
+    @Override
+    public void onPostRemove(IoFilterChain parent, String name, NextFilter nextFilter) throws Exception
+    {
+        releaseNegotiationData(parent.getSession());
+        super.onPostRemove(parent, name, nextFilter);
+    }
+
+    /**
+     * Returns a stream of the data of the message that is being received, which is the data that is held for the
+     * session (if any), or otherwise the data that was just received.
+     */
+    private static InputStream open(AccumulationBuffer pending, IoBuffer byteBuffer, int position)
+    {
+        if (pending != null) {
+            pending.reset();
+            return pending.asInputStream();
+        }
+        return byteBuffer.duplicate().position(position).asInputStream();
+    }
+
+    private static void releaseNegotiationData(IoSession session)
+    {
+        final EXISessionState state = EXISessionState.peek(session);
+        if (state != null) {
+            state.releaseNegotiationData();
+        }
+    }
 }
@@ -26,10 +26,8 @@ import org.jivesoftware.openfire.XMPPServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.transform.TransformerException;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -43,6 +41,36 @@ public class EXICodecFilter extends IoFilterAdapter
 {
     private static final Logger Log = LoggerFactory.getLogger(EXICodecFilter.class);
 
+    public static final String filterName = "exiCodec";
+
+    private static final byte[] STREAM_END = "</stream:stream>".getBytes(UTF_8);
+    private static final byte[] STREAM_START = "<exi:streamStart".getBytes(UTF_8);
+
+    static final int DEFAULT_COALESCING_SIZE = 16 * 1024;
+
+    private static volatile Duration coalescingDelay = Duration.ZERO;
+    private static volatile int coalescingSize = DEFAULT_COALESCING_SIZE;
+
+    /**
+     * Defines for how long the EXI data of stanzas is gathered, before it is written to a session as one buffer.
+     *
+     * @param delay the maximum delay of a stanza, or zero to write every stanza immediately.
+     */
+    static void setCoalescingDelay(Duration delay)
+    {
+        coalescingDelay = delay;
+    }
+
+    /**
+     * Defines the amount of gathered EXI data (in bytes) that causes it to be written, regardless of the delay.
+     *
+     * @param size the maximum number of bytes to gather.
+     */
+    static void setCoalescingSize(int size)
+    {
+        coalescingSize = size;
+    }
+
     public EXICodecFilter()
     {
     }
@@ -51,91 +79,235 @@ public class EXICodecFilter extends IoFilterAdapter
     public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
     {
         if (writeRequest.getMessage() instanceof IoBuffer) {
-            final ByteBuffer bytes = ((IoBuffer) writeRequest.getMessage()).buf();
-            final String msg = UTF_8.decode(bytes).toString();
-            final String outputMsg;
-            if (msg.startsWith("</stream:stream>")) {
-                if (session.containsAttribute(EXIAlternativeBindingFilter.flag)) {
-                    outputMsg = "<streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>";
-                } else {
-                    outputMsg = "<exi:streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>";
-                }
-            } else if (msg.startsWith("<exi:streamStart")) {
-                final Element startStream = EXIUtils.generateStreamStart(null, XMPPServer.getInstance().getServerInfo().getXMPPDomain(), false);
-                outputMsg = startStream.asXML();
-            } else {
-                outputMsg = msg;
-            }
-            Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", outputMsg.length(), session.hashCode());
+            // Prefixes are compared as bytes, so that data does not need to be decoded into characters before it's encoded.
+            final IoBuffer bytes = (IoBuffer) writeRequest.getMessage();
+            final int plainBytes = bytes.remaining();
+            final long start = System.nanoTime();
+            final EXISessionState state = EXISessionState.get(session);
             try {
-                EXIProcessor attribute = (EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR);
-                IoBuffer bb = attribute.encodeByteBuffer(outputMsg);
-                writeRequest.setMessage(bb);
-                super.filterWrite(nextFilter, session, writeRequest);
+                final EXIProcessor attribute = state.getProcessor();
+                // Encoding is not thread-safe. Also, when session-wide buffers are used, stanzas must be written in the
+                // order in which they are encoded, as each stanza can refer to strings of the stanzas before it.
+                synchronized (attribute) {
+                    state.markActive();
+                    final WriteCoalescer coalescer = getWriteCoalescer(nextFilter, state);
+                    final IoBuffer bb;
+                    final boolean stanza;
+                    if (EXIUtils.startsWith(bytes, STREAM_END)) {
+                        stanza = false;
+                        final String outputMsg;
+                        if (session.containsAttribute(EXIAlternativeBindingFilter.flag)) {
+                            outputMsg = "<streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>";
+                        } else {
+                            outputMsg = "<exi:streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>";
+                        }
+                        Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", outputMsg.length(), session.hashCode());
+                        bb = attribute.encodeStreamEnd(outputMsg);
+                    } else if (EXIUtils.startsWith(bytes, STREAM_START)) {
+                        stanza = false;
+                        final Element startStream = EXIUtils.generateStreamStart(null, XMPPServer.getInstance().getServerInfo().getXMPPDomain(), false);
+                        final String outputMsg = startStream.asXML();
+                        Log.trace("Encoding {} XMPP characters into EXI bytes for session {}", outputMsg.length(), session.hashCode());
+                        bb = attribute.encodeByteBuffer(outputMsg);
+                    } else {
+                        stanza = true;
+                        Log.trace("Encoding {} XMPP bytes into EXI bytes for session {}", bytes.remaining(), session.hashCode());
+                        OptionAdvisor.getInstance().offer(attribute, bytes);
+                        VocabularyAnalyzer.getInstance().offer(bytes);
+                        bb = attribute.encodeByteBuffer(bytes);
+                    }
+                    EXIMetrics.getInstance().recordEncode(plainBytes, bb.remaining(), System.nanoTime() - start);
+                    final EXIMetrics.SessionMetrics sessionMetrics = state.getMetrics();
+                    sessionMetrics.plainBytesSent.add(plainBytes);
+                    sessionMetrics.exiBytesSent.add(bb.remaining());
+                    if (coalescer != null && stanza) {
+                        coalescer.add(writeRequest, bb);
+                        return;
+                    }
+                    if (coalescer != null) {
+                        coalescer.flush();
+                    }
+                    writeRequest.setMessage(state.trackEncoded(bb));
+                    super.filterWrite(nextFilter, session, writeRequest);
+                }
                 return;
             } catch (EXIException e) {
                 Log.warn("Exception while trying to filter a write.", e);
             }
         }
+        // Anything that is not gathered must not overtake what has been.
+        flushWrites(session);
         super.filterWrite(nextFilter, session, writeRequest);
     }
 
+    @Override
+    public void filterClose(NextFilter nextFilter, IoSession session) throws Exception
+    {
+        flushWrites(session);
+        super.filterClose(nextFilter, session);
+    }
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        // The data that was written has been encoded by this filter into a pooled buffer, which can now be reused.
+        if (writeRequest instanceof WriteCoalescer.CoalescedWriteRequest) {
+            ((IoBuffer) writeRequest.getMessage()).free();
+            for (final WriteRequest request : ((WriteCoalescer.CoalescedWriteRequest) writeRequest).getRequests()) {
+                super.messageSent(nextFilter, session, request);
+            }
+            return;
+        }
+        // Other filters can replace messages too: only buffers that were allocated by this filter are released.
+        final EXISessionState state = EXISessionState.peek(session);
+        if (state != null) {
+            state.releaseEncoded(writeRequest.getMessage());
+        }
+        super.messageSent(nextFilter, session, writeRequest);
+    }
+
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
     {
         if (message instanceof IoBuffer) {
             IoBuffer byteBuffer = (IoBuffer) message;
-            byte[] exiBytes = (byte[]) session.getAttribute("exiBytes");
-            if (exiBytes == null) {
-                exiBytes = new byte[byteBuffer.limit()];
-                System.arraycopy(byteBuffer.array(), 0, exiBytes, 0, exiBytes.length);
-            } else {
-                byte[] dest = new byte[exiBytes.length + byteBuffer.limit()];
-                System.arraycopy(exiBytes, 0, dest, 0, exiBytes.length);
-                System.arraycopy(byteBuffer.array(), 0, dest, exiBytes.length, byteBuffer.limit());
-                exiBytes = dest;
+            final EXISessionState state = EXISessionState.get(session);
+            final int exiBytes = byteBuffer.remaining();
+            final long start = System.nanoTime();
+            final List<DecodedStanza> decoded;
+            final EXIFrameDecoder frameDecoder = state.beginDecoding(new DeferredDelivery(nextFilter, session, state));
+            try {
+                if (!frameDecoder.hasPendingData() && byteBuffer.hasRemaining() && !EXIProcessor.isEXI(byteBuffer.get(byteBuffer.position()))) {
+                    decoded = null;
+                } else {
+                    Log.trace("Decoding {} EXI bytes from session {} into XMPP characters.", byteBuffer.remaining(), session.hashCode());
+                    decoded = frameDecoder.decode(byteBuffer);
+                }
+            } catch (AccumulationBuffer.SizeLimitExceededException e) {
+                Log.info("Closing session {}: {}", session.hashCode(), e.getMessage());
+                frameDecoder.close();
+                EXIUtils.closeWithStreamError(session, "policy-violation");
+                return;
+            } catch (EXIFrameDecoder.CapacityExceededException e) {
+                Log.info("Closing session {}: {}", session.hashCode(), e.getMessage());
+                frameDecoder.close();
+                EXIUtils.closeWithStreamError(session, "resource-constraint");
+                return;
+            } finally {
+                state.endDecoding();
             }
-
-            Log.trace("Decoding {} EXI bytes from session {} into XMPP characters.", exiBytes.length, session.hashCode());
-            if (!EXIProcessor.isEXI(exiBytes[0])) {
+            if (decoded == null) {
                 super.messageReceived(nextFilter, session, message);
+                return;
+            }
+
+            final long plainBytes = plainBytes(decoded);
+            EXIMetrics.getInstance().recordDecode(exiBytes, plainBytes, System.nanoTime() - start);
+            final EXIMetrics.SessionMetrics sessionMetrics = state.getMetrics();
+            sessionMetrics.exiBytesReceived.add(exiBytes);
+            sessionMetrics.plainBytesReceived.add(plainBytes);
+            if (decoded.isEmpty()) {
+                Log.trace("EXI data received from session {} is incomplete. Waiting for more data.", session.hashCode());
+                super.messageReceived(nextFilter, session, IoBuffer.wrap("".getBytes()));
+                return;
+            }
+            deliver(nextFilter, session, decoded);
+        }
+    }
+
+    /**
+     * Passes decoded stanzas on to the next filter, converting the start and end of the stream to XMPP.
+     */
+    private static void deliver(NextFilter nextFilter, IoSession session, List<DecodedStanza> decoded) throws Exception
+    {
+        for (final DecodedStanza stanza : decoded) {
+            if ("streamStart".equals(stanza.getRootElementName())) {
+                // Only the (rare) stream start is parsed, as its attributes and namespaces need to be converted.
+                Element xml = DocumentHelper.parseText(stanza.getXML()).getRootElement();
+                String open = EXIUtils.convertStreamStart(xml);
+                final Element startStream = EXIUtils.generateStreamStart(null, XMPPServer.getInstance().getServerInfo().getXMPPDomain(), false);
+                session.write(IoBuffer.wrap(startStream.asXML().getBytes()));
+                nextFilter.messageReceived(session, open);
+            } else if ("streamEnd".equals(stanza.getRootElementName())) {
+                nextFilter.messageReceived(session, "</stream:stream>");
             } else {
-                BufferedInputStream bis = new BufferedInputStream(new ByteArrayInputStream(exiBytes));
-                while (bis.available() > 0) {
-                    // Decode EXI bytes
-                    try {
-                        bis.mark(exiBytes.length);
-                        String xmlStr = ((EXIProcessor) session.getAttribute(EXIUtils.EXI_PROCESSOR)).decode(bis);
-                        Element xml = DocumentHelper.parseText(xmlStr).getRootElement();
-                        session.setAttribute("exiBytes", null); // old bytes have been used with the last message
-                        if ("streamStart".equals(xml.getName())) {
-                            String open = EXIUtils.convertStreamStart(xml);
-                            final Element startStream = EXIUtils.generateStreamStart(null, XMPPServer.getInstance().getServerInfo().getXMPPDomain(), false);
-                            session.write(IoBuffer.wrap(startStream.asXML().getBytes()));
-                            super.messageReceived(nextFilter, session, open);
-                            return;
-                        } else if ("streamEnd".equals(xml.getName())) {
-                            xmlStr = "</stream:stream>";
-                        }
-                        super.messageReceived(nextFilter, session, xmlStr);
-                    } catch (TransformerException e) {
-                        bis.reset();
-                        byte[] restingBytes = new byte[bis.available()];
-                        bis.read(restingBytes);
-                        Log.trace("Unable to decode EXI data received from session {}. Incomplete data? Saving for later processing.", session.hashCode(), e);
-                        session.setAttribute("exiBytes", restingBytes);
-                        super.messageReceived(nextFilter, session, IoBuffer.wrap("".getBytes()));
-                        return;
-                    }
-                }
+                VocabularyAnalyzer.getInstance().offer(stanza.getXML());
+                nextFilter.messageReceived(session, stanza.getXML());
             }
         }
     }
 
+    private static long plainBytes(List<DecodedStanza> decoded)
+    {
+        long result = 0;
+        for (final DecodedStanza stanza : decoded) {
+            result += EXIMetrics.utf8Length(stanza.getXML());
+        }
+        return result;
+    }
+
+    /**
+     * Passes on stanzas of a session that were decoded after decoding had to wait for a thread, and closes the session
+     * when its EXI data can not be decoded.
+     */
+    private static class DeferredDelivery implements EXIFrameDecoder.Listener
+    {
+        private final NextFilter nextFilter;
+        private final IoSession session;
+        private final EXISessionState state;
+
+        DeferredDelivery(NextFilter nextFilter, IoSession session, EXISessionState state)
+        {
+            this.nextFilter = nextFilter;
+            this.session = session;
+            this.state = state;
+        }
+
+        @Override
+        public void stanzasDecoded(List<DecodedStanza> stanzas) throws Exception
+        {
+            state.getMetrics().plainBytesReceived.add(plainBytes(stanzas));
+            deliver(nextFilter, session, stanzas);
+        }
+
+        @Override
+        public void closeStream(String condition, String reason)
+        {
+            Log.debug("Closing session {}, as {}", session.hashCode(), reason);
+            EXIUtils.closeWithStreamError(session, condition);
+        }
+    }
+
     @Override
     public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception
     {
+        final EXISessionState state = EXISessionState.remove(session);
+        if (state != null) {
+            Log.debug("EXI session {} closed: {}", session.hashCode(), state.getMetrics());
+        }
         super.sessionClosed(nextFilter, session);
     }
 
+    /**
+     * Returns the coalescer of the session, creating it when needed.
+     *
+     * @return a coalescer, or null when stanzas are not to be gathered.
+     */
+    private static WriteCoalescer getWriteCoalescer(NextFilter nextFilter, EXISessionState state)
+    {
+        final Duration delay = coalescingDelay;
+        if (delay.isZero() || delay.isNegative()) {
+            return null;
+        }
+        return state.getWriteCoalescer(nextFilter, delay, coalescingSize);
+    }
+
+    private static void flushWrites(IoSession session)
+    {
+        final EXISessionState state = EXISessionState.peek(session);
+        if (state != null) {
+            state.flushWrites();
+        }
+    }
+
 }
@@ -32,11 +32,11 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
 import javax.xml.transform.TransformerException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -58,6 +58,48 @@ public class EXIFilter extends IoFilterAdapter
     public static final String filterName = "exiFilter";
     private final String setupReceived = "setupReceived";
 
+    private static final byte[] XML_DECLARATION = "<?xml".getBytes(UTF_8);
+    private static final byte[] STREAM_PREFIX = "<stream:".getBytes(UTF_8);
+    private static final byte[] FAILURE = "<failure".getBytes(UTF_8);
+
+    static final int MAXIMUM_CANONICAL_SCHEMAS = 256;
+
+    /**
+     * Schema IDs of canonical schemas that have been created, by the set of schemas that they import (see
+     * {@link #getCanonicalSchemaKey(SortedMap)}), in least-recently-used order. Guarded by the map itself.
+     */
+    private static final Map<String, String> canonicalSchemas = new LinkedHashMap<String, String>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > MAXIMUM_CANONICAL_SCHEMAS;
+        }
+    };
+
+    private static volatile boolean streamingEnabled = false;
+
+    /**
+     * Defines if clients may set up sessions in which the whole stream is encoded as one EXI fragment.
+     *
+     * @param enabled true to agree to streaming when it is requested.
+     */
+    static void setStreamingEnabled(boolean enabled)
+    {
+        streamingEnabled = enabled;
+    }
+
+    /**
+     * Checks if a session that is set up now may encode the whole stream as one EXI fragment: streaming needs to be
+     * enabled, and the number of streaming sessions must not have reached its maximum.
+     *
+     * @return true when streaming can be agreed on.
+     */
+    static boolean isStreamingAvailable()
+    {
+        return streamingEnabled && EXIFrameDecoder.hasStreamingCapacity();
+    }
+
     public EXIFilter()
     {
     }
@@ -66,7 +108,7 @@ public class EXIFilter extends IoFilterAdapter
     public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
     {
         //"<failure xmlns='http://jabber.org/protocol/compress'><unsupported-method/></failure>"
-        if (writeRequest.getMessage() instanceof IoBuffer) {
+        if (writeRequest.getMessage() instanceof IoBuffer && isInspected((IoBuffer) writeRequest.getMessage())) {
             int currentPos = ((IoBuffer) writeRequest.getMessage()).position();
             String msg = UTF_8.decode(((IoBuffer) writeRequest.getMessage()).buf()).toString();
             ((IoBuffer) writeRequest.getMessage()).position(currentPos);
@@ -75,11 +117,49 @@ public class EXIFilter extends IoFilterAdapter
             } else if (msg.contains("</compression>")) {
                 msg = msg.replace("</compression>", "<method>exi</method></compression>");
                 writeRequest.setMessage(IoBuffer.wrap(msg.getBytes()));
+            } else if (msg.contains("urn:ietf:params:xml:ns:xmpp-bind")) {
+                // Features that offer resource binding, but no compression: EXI can no longer be negotiated.
+                super.filterWrite(nextFilter, session, writeRequest);
+                removeFromSession(session);
+                return;
             }
         }
         super.filterWrite(nextFilter, session, writeRequest);
     }
 
+    /**
+     * Checks if outgoing data needs to be inspected by this filter, based on a cheap comparison of its first bytes.
+     * Only stream headers, stream features and compression failures are of interest.
+     *
+     * @param buffer the data to be written
+     * @return <b>true</b> if the data is to be inspected, otherwise <b>false</b>
+     */
+    static boolean isInspected(IoBuffer buffer)
+    {
+        return EXIUtils.startsWith(buffer, XML_DECLARATION)
+            || EXIUtils.startsWith(buffer, STREAM_PREFIX)
+            || EXIUtils.startsWith(buffer, FAILURE);
+    }
+
+    /**
+     * Removes this filter from the chain of a session on which EXI can no longer be negotiated, so that the remainder
+     * of its traffic is not inspected.
+     *
+     * @param session the session on which EXI will not be used
+     */
+    private void removeFromSession(IoSession session)
+    {
+        if (session.containsAttribute(EXIAlternativeBindingFilter.flag)) {
+            // The alternative binding uses this filter to complete its negotiation.
+            return;
+        }
+        final IoFilterChain chain = session.getFilterChain();
+        if (chain.contains(EXIFilter.filterName)) {
+            Log.debug("EXI can no longer be negotiated on session {}. Removing the EXI filter.", session.hashCode());
+            chain.remove(EXIFilter.filterName);
+        }
+    }
+
     /**
      * Identifies EXI sessions (based on distinguishing bits -> should be based on Negotiation) and adds an EXIEncoder and EXIDecoder to that session
      */
@@ -87,6 +167,20 @@ public class EXIFilter extends IoFilterAdapter
     public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
     {
         if (message instanceof String) {
+            // Only the (few) elements that are used to negotiate EXI are parsed.
+            final String name = EXIUtils.getRootElementName((String) message);
+            if ("message".equals(name) || "presence".equals(name)
+                || ("iq".equals(name) && ((String) message).contains("urn:ietf:params:xml:ns:xmpp-bind"))) {
+                // Compression is negotiated before resource binding: once stanzas are exchanged, that is no longer possible.
+                super.messageReceived(nextFilter, session, message);
+                removeFromSession(session);
+                return;
+            }
+            if (!"setup".equals(name) && !"downloadSchema".equals(name) && !"compress".equals(name)) {
+                super.messageReceived(nextFilter, session, message);
+                return;
+            }
+
             Element xml;
             try {
                 xml = DocumentHelper.parseText((String) message).getRootElement();
@@ -107,31 +201,33 @@ public class EXIFilter extends IoFilterAdapter
             } else if ("downloadSchema".equals(xml.getName())) {
                 String url = xml.attributeValue("null", "url");
                 if (url != null) {
-                    String response;
-                    try {
-                        String download = EXIUtils.downloadXml(url);
-                        if (download.startsWith("<downloadSchemaResponse ")) {
-                            // error already found during download process
-                            response = download;
-                        } else {    // SUCCESS!
-                            saveDownloadedSchema(download, session);
-                            response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url + "' result='true'/>";
+                    // The download is performed off the I/O thread. The response is written when it completes.
+                    SchemaDownloader.getInstance().download(url).whenComplete((download, failure) -> {
+                        if (failure != null) {
+                            Log.warn("Exception while trying to download a schema from {} for session {}.", url, session.hashCode(), failure);
+                            return;
                         }
-                    } catch (
-                        DocumentException e) {    // error while parsing the just saved file, not probable (exception makes sense while uploading)
-                        response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
-                            + "' result='false'><invalidContentType contentTypeReturned='text/html'/></downloadSchemaResponse>";
-                    } catch (Exception e) {
-                        response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
-                            + "' result='false'><error message='No free space left.'/></downloadSchemaResponse>";
-                    }
-                    session.write(IoBuffer.wrap((response).getBytes()));
+                        if (session.isClosing()) {
+                            Log.debug("Session {} closed before the download of {} completed.", session.hashCode(), url);
+                            return;
+                        }
+                        // Several downloads of one session can complete concurrently, all of which update the same canonical schema.
+                        try {
+                            final String response;
+                            synchronized (session) {
+                                response = downloadSchemaResponse(url, download, session);
+                            }
+                            session.write(IoBuffer.wrap((response).getBytes()));
+                        } catch (RuntimeException e) {
+                            Log.warn("Exception while trying to respond to the download of a schema from {} for session {}.", url, session.hashCode(), e);
+                        }
+                    });
                     return;
                 }
             } else if ("compress".equals(xml.getName()) && "exi".equals(xml.elementText("method"))) {
                 EXIProcessor exiProcessor = createExiProcessor(session);
                 if (exiProcessor != null) {
-                    session.setAttribute(EXIUtils.EXI_PROCESSOR, exiProcessor);
+                    EXISessionState.get(session).setProcessor(exiProcessor);
                     String response = "<compressed xmlns='http://jabber.org/protocol/compress'/>";
                     IoBuffer bb = IoBuffer.wrap(response.getBytes());
                     session.write(bb);
@@ -167,50 +263,34 @@ public class EXIFilter extends IoFilterAdapter
         if (configId != null) {
             Log.debug("Configuration ID found: {}", configId);
             String agreement = "false";
+            String recommendation = null;
             try {
                 EXISetupConfiguration exiConfig = EXISetupConfiguration.parseQuickConfigId(configId);
-                if (exiConfig != null) {
-                    session.setAttribute(EXIUtils.EXI_CONFIG, exiConfig);
+                if (exiConfig != null && exiConfig.isStreaming() && !isStreamingAvailable()) {
+                    // The saved configuration can not be changed without changing its ID. The client falls back to a
+                    // full setup, in which streaming is declined.
+                    Log.debug("Declining quick setup of configuration {}, as streaming is not available.", configId);
+                } else if (exiConfig != null) {
+                    EXISessionState.get(session).setConfiguration(exiConfig);
                     agreement = "true";
+                    recommendation = OptionAdvisor.getInstance().getRecommendation(exiConfig);
                 }
             } catch (DocumentException e) {
                 agreement = "false";
             }
-            return "<setupResponse xmlns='http://jabber.org/protocol/compress/exi' agreement='" + agreement + "' configurationId='" + configId + "'/>";
+            EXIMetrics.getInstance().recordQuickSetup("true".equals(agreement));
+            return "<setupResponse xmlns='http://jabber.org/protocol/compress/exi' agreement='" + agreement + "' configurationId='" + configId + "'"
+                + (recommendation == null ? "" : " " + SetupValues.RECOMMENDED_CONFIGURATION_ID + "='" + recommendation + "'") + "/>";
         }
 
-        EXIUtils.generateSchemasFile();
-
         try {
-            // obtener el schemas File del servidor y transformarlo a un elemento XML
-            Element serverSchemas;
-            String schemasFileContent = EXIUtils.readFile(EXIUtils.getSchemasFileLocation());
-            if (schemasFileContent == null) {
-                return null;
-            }
-            serverSchemas = DocumentHelper.parseText(schemasFileContent).getRootElement();
-
-            boolean missingSchema;
-            Element auxSchema1, auxSchema2;
-            String ns, bytes, md5Hash;
+            final SchemaRegistry registry = SchemaRegistry.getInstance();
             boolean agreement = true;    // turns to false when there is a missing schema
             for (Iterator<Element> i = setup.elementIterator("schema"); i.hasNext(); ) {
-                auxSchema1 = i.next();
-                missingSchema = true;
-                ns = auxSchema1.attributeValue("ns");
-                bytes = auxSchema1.attributeValue("bytes");
-                md5Hash = auxSchema1.attributeValue("md5Hash");
-                for (Iterator<Element> j = serverSchemas.elementIterator("schema"); j.hasNext(); ) {
-                    auxSchema2 = j.next();
-                    if (auxSchema2.attributeValue("ns").equals(ns)
-                        && auxSchema2.attributeValue("bytes").equals(bytes)
-                        && auxSchema2.attributeValue("md5Hash").equals(md5Hash)) {
-                        missingSchema = false;
-                        break;
-                    }
-                }
-                if (missingSchema) {
-                    auxSchema1.setName("missingSchema");
+                final Element schema = i.next();
+                if (registry.find(schema.attributeValue("ns"), schema.attributeValue("bytes"), schema.attributeValue("md5Hash")) == null) {
+                    schema.setName("missingSchema");
+                    EXIMetrics.getInstance().recordMissingSchema();
                     agreement = false;
                 }
             }
@@ -276,19 +356,38 @@ public class EXIFilter extends IoFilterAdapter
                 if (aux != null || "".equals(aux)) {
                     exiConfig.setSessionWideBuffers(true);
                 }
+                // Streaming is only agreed on when it is available, and when stanzas end on a byte boundary. It is
+                // declined by leaving the attribute out of the response.
+                final Attribute streaming = setup.attribute(SetupValues.STREAMING);
+                if (streaming != null) {
+                    if (isStreamingAvailable() && Boolean.parseBoolean(streaming.getValue()) && exiConfig.getCodingMode() == CodingMode.BYTE_PACKED) {
+                        exiConfig.setStreaming(true);
+                    } else {
+                        setup.remove(streaming);
+                    }
+                }
                 // generate canonical schema
-                configId = createCanonicalSchema(setup, serverSchemas);
+                configId = createCanonicalSchema(setup);
                 exiConfig.setSchemaId(configId);
-                session.setAttribute(EXIUtils.EXI_CONFIG, exiConfig);
                 session.setAttribute(EXIUtils.SCHEMA_ID, configId);    // still necessary for uploading schemas with UploadSchemaFilter
-                exiConfig.saveConfiguration();
+                if (exiConfig.saveConfiguration()) {
+                    // Share the configuration with all other sessions that negotiated the same one.
+                    exiConfig = ConfigurationRegistry.getInstance().intern(exiConfig);
+                }
+                EXISessionState.get(session).setConfiguration(exiConfig);
                 setup.addAttribute("configurationId", exiConfig.getConfigurationId());
+                // Clients that use the same schemas may have been found to do better with other options.
+                final String recommendation = OptionAdvisor.getInstance().getRecommendation(exiConfig);
+                if (recommendation != null) {
+                    setup.addAttribute(SetupValues.RECOMMENDED_CONFIGURATION_ID, recommendation);
+                }
             }
+            EXIMetrics.getInstance().recordSetup(agreement);
             setup.addAttribute("agreement", String.valueOf(agreement));
             setup.setName("setupResponse");
 
             setupResponse = setup.asXML();
-        } catch (DocumentException | IOException | NoSuchAlgorithmException e) {
+        } catch (IOException | NoSuchAlgorithmException e) {
             Log.warn("Exception while trying to process a 'setup' from a client.", e);
             return null;
         }
@@ -299,18 +398,37 @@ public class EXIFilter extends IoFilterAdapter
     /**
      * Generates a canonical schema out of the schemas' namespaces sent in the <setup> stanza during EXI compression negotiation.
      * Once the server makes sure that it has all schemas needed, it creates a specific canonical schema for the connection being negotiated.
-     * It takes the location from a general canonical schema which includes all the schemas contained in a given folder.
+     * It takes the location of each schema from the {@link SchemaRegistry}, which contains all the schemas in a given folder.
+     *
+     * Schemas are imported in order of their namespace, which makes the canonical schema for a set of schemas
+     * independent of the order in which they are listed in the setup stanza. A canonical schema is created only once
+     * for every distinct set of schemas: afterwards, its schema ID is returned without writing to the file system (as
+     * long as the file of the canonical schema exists).
      *
      * @param setup         The setup stanza as received from a peer
-     * @param serverSchemas An XML document representing the schemas currently recognized by the server.
      */
-    private String createCanonicalSchema(Element setup, Element serverSchemas) throws IOException, NoSuchAlgorithmException
+    private String createCanonicalSchema(Element setup) throws IOException, NoSuchAlgorithmException
     {
-        final Map<String, String> serverSchemaLocationsByNamespace = new HashMap<>();
-        final Iterator<Element> schema1 = serverSchemas.elementIterator("schema");
-        while (schema1.hasNext()) {
-            Element next = schema1.next();
-            serverSchemaLocationsByNamespace.put(next.attributeValue("ns"), next.attributeValue("schemaLocation"));
+        final SortedMap<String, SchemaRegistry.Schema> schemasByNamespace = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (Iterator<Element> i = setup.elementIterator("schema"); i.hasNext(); ) {
+            final String namespace = i.next().attributeValue("ns");
+            schemasByNamespace.put(namespace, namespace == null ? null : SchemaRegistry.getInstance().getSchema(namespace));
+        }
+
+        final String key = getCanonicalSchemaKey(schemasByNamespace);
+        final String existing;
+        synchronized (canonicalSchemas) {
+            existing = canonicalSchemas.get(key);
+        }
+        if (existing != null) {
+            if (Files.exists(EXIUtils.getExiFolder().resolve(existing + ".xsd"))) {
+                return existing;
+            }
+            // The file has been removed (by an administrator, for example) since it was created: it is created again.
+            Log.debug("Canonical schema {} no longer exists, and will be created again.", existing);
+            synchronized (canonicalSchemas) {
+                canonicalSchemas.remove(key, existing);
+            }
         }
 
         final Document canonicalSchema = DocumentHelper.createDocument();
@@ -320,16 +438,11 @@ public class EXIFilter extends IoFilterAdapter
         root.addAttribute("targetNamespace", "urn:xmpp:exi:cs");
         root.addAttribute("elementFormDefault", "qualified");
 
-        Element schema;
-        for (Iterator<Element> i = setup.elementIterator("schema"); i.hasNext(); ) {
-            schema = i.next();
-            final String namespace = schema.attributeValue("ns");
-            final String schemaLocation = serverSchemaLocationsByNamespace.get(namespace);
-
+        for (final Map.Entry<String, SchemaRegistry.Schema> entry : schemasByNamespace.entrySet()) {
             final Element importElement = root.addElement("import", "http://www.w3.org/2001/XMLSchema");
-            importElement.addAttribute("namespace", namespace);
-            if (schemaLocation != null) {
-                importElement.addAttribute("schemaLocation", schemaLocation);
+            importElement.addAttribute("namespace", entry.getKey());
+            if (entry.getValue() != null) {
+                importElement.addAttribute("schemaLocation", entry.getValue().getLocation().toString());
             }
         }
 
@@ -337,16 +450,53 @@ public class EXIFilter extends IoFilterAdapter
         final String schemaId = EXIUtils.bytesToHex(md.digest(canonicalSchema.asXML().getBytes()));
 
         final Path fileName = EXIUtils.getExiFolder().resolve(schemaId + ".xsd");
-        try (final FileWriter fileWriter = new FileWriter(fileName.toFile()))
-        {
-            final XMLWriter writer = new XMLWriter(fileWriter, OutputFormat.createPrettyPrint());
-            writer.write(canonicalSchema);
-            writer.close();
+        if (!Files.exists(fileName)) {
+            // Written to a temporary file first, as a concurrent setup for the same schemas could be reading it.
+            final Path temporary = Files.createTempFile(fileName.getParent(), schemaId, ".tmp");
+            try {
+                try (final Writer fileWriter = Files.newBufferedWriter(temporary, UTF_8)) {
+                    final XMLWriter writer = new XMLWriter(fileWriter, OutputFormat.createPrettyPrint());
+                    writer.write(canonicalSchema);
+                    writer.flush();
+                }
+                Files.move(temporary, fileName, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
         }
 
+        synchronized (canonicalSchemas) {
+            canonicalSchemas.put(key, schemaId);
+        }
         return schemaId;
     }
 
+    /**
+     * Returns a value that identifies a set of schemas, by their namespaces and the hashes of their content.
+     */
+    private static String getCanonicalSchemaKey(SortedMap<String, SchemaRegistry.Schema> schemasByNamespace)
+    {
+        final StringBuilder key = new StringBuilder();
+        for (final Map.Entry<String, SchemaRegistry.Schema> entry : schemasByNamespace.entrySet()) {
+            key.append(entry.getKey()).append('|');
+            if (entry.getValue() != null) {
+                key.append(entry.getValue().getMd5Hash()).append('|').append(entry.getValue().getLocation());
+            }
+            key.append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Forgets all canonical schemas that have been created.
+     */
+    static void clearCanonicalSchemas()
+    {
+        synchronized (canonicalSchemas) {
+            canonicalSchemas.clear();
+        }
+    }
+
     /* Compress **/
 
     /**
@@ -358,9 +508,9 @@ public class EXIFilter extends IoFilterAdapter
     EXIProcessor createExiProcessor(IoSession session)
     {
         EXIProcessor exiProcessor;
-        if (session.containsAttribute(EXIUtils.EXI_CONFIG)) {
+        final EXISetupConfiguration exiConfig = EXISessionState.get(session).getConfiguration();
+        if (exiConfig != null) {
             try {
-                EXISetupConfiguration exiConfig = (EXISetupConfiguration) session.getAttribute(EXIUtils.EXI_CONFIG);
                 exiProcessor = new EXIProcessor(exiConfig);
             } catch (EXIException e) {
                 Log.warn("Exception while trying to create an EXI processor.", e);
@@ -381,7 +531,9 @@ public class EXIFilter extends IoFilterAdapter
     void addCodec(IoSession session)
     {
         IoFilterChain fc = session.getFilterChain();
-        fc.addBefore("xmpp", "exiCodec", new EXICodecFilter());
+        fc.addBefore("xmpp", EXICodecFilter.filterName, new EXICodecFilter());
+        CodecExecutor.addTo(fc, EXICodecFilter.filterName);
+        EXIMetrics.getInstance().recordSessionCompressed();
         if (fc.contains(EXIFilter.filterName))
             session.getFilterChain().remove(EXIFilter.filterName);
         if (fc.contains(EXIAlternativeBindingFilter.filterName))
@@ -395,7 +547,7 @@ public class EXIFilter extends IoFilterAdapter
 
     /**
      * Saves a new schema file on the server, which is sent using a Base64 encoding by an EXI client.
-     * The name of the file is related to the time when the file was saved.
+     * The name of the file is the hash of its content.
      *
      * @param content the content of the uploaded schema file (base64 encoded)
      * @throws IOException while trying to decode the file content using Base64
@@ -406,83 +558,34 @@ public class EXIFilter extends IoFilterAdapter
         String contentB64 = content.substring(content.indexOf('>') + 1, content.indexOf("</"));
         byte[] outputBytes = Base64.getDecoder().decode(contentB64);
 
-        final Path filePath = EXIUtils.getSchemasFolder().resolve(Calendar.getInstance().getTimeInMillis() + ".xsd");
-        try (final OutputStream out = Files.newOutputStream(filePath)) {
-            out.write(outputBytes);
-        }
-
-        addNewSchemaToSchemasFile(filePath, null, null);
+        final Path filePath = addNewSchemaToSchemasFile(outputBytes, null, null);
         addNewSchemaToCanonicalSchema(filePath, session);
+        EXIMetrics.getInstance().recordSchemaUpload();
     }
 
     void uploadCompressedMissingSchema(byte[] content, String contentType, String md5Hash, String bytes, IoSession session)
         throws IOException, NoSuchAlgorithmException, DocumentException, EXIException, SAXException, TransformerException
     {
-        Path filePath = EXIUtils.getSchemasFolder().resolve(Calendar.getInstance().getTimeInMillis() + ".xsd");
-
-        if (!"text".equals(contentType) && md5Hash != null && bytes != null) {
-            String xml = "";
-            if (contentType.equals("ExiDocument")) {
-                xml = EXIProcessor.decodeSchemaless(content);
-
-            } else if (contentType.equals("ExiBody")) {
-                xml = EXIProcessor.decodeExiBodySchemaless(content);
-            }
-            EXIUtils.writeFile(filePath, xml);
-        }
-
-        addNewSchemaToSchemasFile(filePath, md5Hash, bytes);
+        Path filePath = UploadSchemaFilter.storeCompressedSchema(content, contentType, md5Hash, bytes);
         addNewSchemaToCanonicalSchema(filePath, session);
+        EXIMetrics.getInstance().recordSchemaUpload();
     }
 
     /**
-     * Saves an uploaded schema to a file.
-     * It also processes its md5Hash value and the length in bytes when those parameters are null (for base64 encoded files).
+     * Stores a schema under the hash of its content (unless the same schema is stored already) and registers it with the
+     * {@link SchemaRegistry}, which updates the schemas file accordingly (in the background).
+     * The md5Hash value and the length in bytes that identify the schema are calculated from the content when those
+     * parameters are null (for base64 encoded files).
      *
-     * @param fileLocation Location of the file
+     * @param content      the content of the schema
      * @param md5Hash      md5Hash for the file content for compressed files or null for base64 files
      * @param bytes        number of the file's bytes for compressed files or null for base64 files
+     * @return the location of the stored schema
      */
-    static void addNewSchemaToSchemasFile(Path fileLocation, String md5Hash, String bytes) throws NoSuchAlgorithmException, IOException, DocumentException
+    static Path addNewSchemaToSchemasFile(byte[] content, String md5Hash, String bytes) throws IOException, DocumentException
     {
-        if (md5Hash == null || bytes == null) {
-            final byte[] data = Files.readAllBytes(fileLocation);
-            final byte[] hash = MessageDigest.getInstance("MD5").digest(data);
-            md5Hash = EXIUtils.bytesToHex(hash);
-        }
-        String ns = EXIUtils.getAttributeValue(EXIUtils.readFile(fileLocation), "targetNamespace");
-
-        // Create schemas file if it does not exist yet.
-        final Document document;
-        if (!Files.exists(EXIUtils.getSchemasFileLocation())) {    // no more schemas (only the new one)
-            document = DocumentHelper.createDocument();
-            document.addElement("setupResponse");
-        } else {
-            // obtener el schemas File del servidor y transformarlo a un elemento XML
-            final String content = String.join("", Files.readAllLines(EXIUtils.getSchemasFileLocation()));
-            document = DocumentHelper.parseText(content);
-        }
-
-        final Element newSchema = DocumentHelper.createElement("schema")
-            .addAttribute("ns", ns)
-            .addAttribute("bytes", bytes == null ? String.valueOf(Files.size(fileLocation)) : bytes)
-            .addAttribute("md5Hash", md5Hash)
-            .addAttribute("schemaLocation", fileLocation.toString());
-
-        // Add new schema to collection of schema's that's in the file.
-        final Element root = document.getRootElement();
-        final List<Element> schemas = root.elements("schema");
-        schemas.add(newSchema);
-
-        // XEP-0322 wants canonical schemas to be ordered by namespace.
-        schemas.sort(Comparator.comparing(element -> element.attributeValue("ns")));
-
-        try (final FileWriter fileWriter = new FileWriter(EXIUtils.getSchemasFileLocation().toFile()))
-        {
-            final XMLWriter writer = new XMLWriter(fileWriter, OutputFormat.createPrettyPrint());
-            writer.write(document);
-            writer.close();
-        }
+        // No schema file is written when the schema is stored already, but the provided hash is recorded as an alias.
+        return SchemaRegistry.getInstance().add(content, md5Hash, bytes).getLocation();
     }
 
     static void addNewSchemaToCanonicalSchema(Path fileLocation, IoSession session) throws IOException, DocumentException
@@ -495,15 +598,34 @@ public class EXIFilter extends IoFilterAdapter
 
     /* downloadSchema */
 
-    private void saveDownloadedSchema(String content, IoSession session) throws NoSuchAlgorithmException, IOException, DocumentException
+    private String downloadSchemaResponse(String url, String download, IoSession session)
     {
-        Path filePath = EXIUtils.getSchemasFolder().resolve(Calendar.getInstance().getTimeInMillis() + ".xsd");
-
-        OutputStream out = Files.newOutputStream(filePath);
-        out.write(content.getBytes());
-        out.close();
+        String response;
+        try {
+            if (download.startsWith("<downloadSchemaResponse ")) {
+                // error already found during download process
+                response = download;
+            } else {    // SUCCESS!
+                saveDownloadedSchema(download, session);
+                response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url + "' result='true'/>";
+            }
+            EXIMetrics.getInstance().recordSchemaDownload(!download.startsWith("<downloadSchemaResponse "));
+        } catch (
+            DocumentException e) {
+            EXIMetrics.getInstance().recordSchemaDownload(false);    // error while parsing the just saved file, not probable (exception makes sense while uploading)
+            response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
+                + "' result='false'><invalidContentType contentTypeReturned='text/html'/></downloadSchemaResponse>";
+        } catch (Exception e) {
+            EXIMetrics.getInstance().recordSchemaDownload(false);
+            response = "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
+                + "' result='false'><error message='No free space left.'/></downloadSchemaResponse>";
+        }
+        return response;
+    }
 
-        addNewSchemaToSchemasFile(filePath, null, null);
+    private void saveDownloadedSchema(String content, IoSession session) throws IOException, DocumentException
+    {
+        final Path filePath = addNewSchemaToSchemasFile(content.getBytes(UTF_8), null, null);
         addNewSchemaToCanonicalSchema(filePath, session);
     }
 }
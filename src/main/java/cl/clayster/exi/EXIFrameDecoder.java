@@ -0,0 +1,710 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.transform.TransformerException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decodes EXI documents (stanzas) from data that is received in arbitrarily sized segments.
+ *
+ * EXI data does not carry framing information: the only way to find out if a document is complete, is to decode it.
+ * Data is therefore first decoded directly from what has been received. When that turns out to contain an incomplete
+ * document, decoding of that document is continued on a separate thread that blocks until more data is provided,
+ * which keeps the state of the EXI decoder intact. As a result, every document is decoded from its start at most twice
+ * (once on the calling thread, and once on the separate thread), regardless of the number of segments that it is
+ * received in, and nothing but the data of incomplete documents is ever copied. That data is held in an
+ * {@link AccumulationBuffer}, which limits its size and the time for which it is held.
+ *
+ * Once a document of a session has been received in more than one segment, the data of the next document is handed to
+ * a separate thread right away, without first being decoded on the calling thread. This continues until a document is
+ * found to be complete without that thread having had to wait for data.
+ *
+ * When session-wide buffers are used, the string table of the decoder is modified by every decoding attempt. What an
+ * attempt on an incomplete document added to it is undone (see {@link RetainedStringDecoder}), which allows such
+ * sessions to be treated like any other. Only when the whole stream is one EXI fragment is all data decoded on a
+ * separate thread, which then lasts as long as the session. The number of such threads is limited separately: sessions
+ * beyond that limit are not to agree on streaming (see {@link #hasStreamingCapacity()}), and are closed when they do.
+ *
+ * The number of threads that decode incomplete documents is limited. When all of them are in use, the incomplete
+ * document waits until one is available, without being decoded again in the mean time. Documents that are decoded
+ * after having waited are passed to the {@link Listener}, rather than being returned by {@link #decode(IoBuffer)}. The
+ * number of documents that wait is not limited: each session has at most one, the data of which is limited by its
+ * {@link AccumulationBuffer}.
+ *
+ * A session holds a thread only for as long as its data keeps arriving, or no other session needs that thread: a
+ * thread that has been waiting for data for {@link #YIELD_DELAY} while other documents wait for a thread, is given up.
+ * The document that it was decoding is decoded again from its start once more of its data arrives (which may then
+ * have to wait for a thread as well). This prevents peers that send part of a stanza, and then nothing, from holding
+ * up the sessions of others.
+ *
+ * Data is to be provided by one thread at a time (typically the I/O thread that processes data of one session).
+ */
+class EXIFrameDecoder
+{
+    private static final Logger Log = LoggerFactory.getLogger(EXIFrameDecoder.class);
+
+    static final int DEFAULT_MAXIMUM_CONTINUATIONS = 64;
+
+    static final int DEFAULT_MAXIMUM_STREAMING_SESSIONS = 256;
+
+    /**
+     * For how long a thread waits for more data of a document, before it is given up when other documents wait for it.
+     */
+    static final Duration YIELD_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Threads on which incomplete documents are decoded. Their number does not exceed the number of continuations that
+     * are running, which is limited by {@link #maximumContinuations}, plus the number of streaming sessions, which is
+     * limited by {@link #maximumStreamingSessions}.
+     */
+    private static final ThreadPoolExecutor continuations = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+    static {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        continuations.setThreadFactory(runnable -> {
+            final Thread thread = new Thread(runnable, "exi-frame-decoder-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final Object slots = new Object();
+
+    // All fields below are guarded by 'slots'.
+    private static int running;
+    private static int streamingSessions;
+    private static final Deque<Continuation> waiting = new ArrayDeque<>();
+
+    private static volatile int maximumContinuations = DEFAULT_MAXIMUM_CONTINUATIONS;
+    private static volatile int maximumStreamingSessions = DEFAULT_MAXIMUM_STREAMING_SESSIONS;
+
+    /**
+     * Defines the maximum number of threads that decode incomplete documents.
+     *
+     * @param maximum the maximum number of threads.
+     */
+    static void setMaximumContinuations(int maximum)
+    {
+        maximumContinuations = maximum;
+    }
+
+    /**
+     * Defines the maximum number of sessions of which the whole stream is decoded as one EXI fragment, each of which
+     * uses a thread for as long as the session lasts.
+     *
+     * @param maximum the maximum number of streaming sessions.
+     */
+    static void setMaximumStreamingSessions(int maximum)
+    {
+        maximumStreamingSessions = maximum;
+    }
+
+    /**
+     * Checks if another session of which the whole stream is one EXI fragment can be decoded.
+     *
+     * @return true when streaming can be agreed on.
+     */
+    static boolean hasStreamingCapacity()
+    {
+        synchronized (slots) {
+            return streamingSessions < maximumStreamingSessions;
+        }
+    }
+
+    /**
+     * Returns the number of threads that currently decode incomplete documents.
+     */
+    static int getRunningContinuations()
+    {
+        synchronized (slots) {
+            return running;
+        }
+    }
+
+    private final EXIProcessor processor;
+    private final Listener listener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // All fields below are guarded by 'lock'.
+
+    /**
+     * Data that has been received, but that has not been decoded into a complete document yet.
+     */
+    private final AccumulationBuffer pending;
+
+    /**
+     * The decoding of an incomplete document that is in progress (or that waits for a thread), if any.
+     */
+    private Continuation continuation;
+
+    /**
+     * True when the last document that was decoded on a separate thread had to wait for data.
+     */
+    private boolean segmented;
+
+    private boolean closed;
+
+    /**
+     * @param processor the processor that decodes the data.
+     * @param listener  receives documents that are not returned by {@link #decode(IoBuffer)}, and failures.
+     */
+    EXIFrameDecoder(EXIProcessor processor, Listener listener)
+    {
+        this.processor = processor;
+        this.listener = listener;
+        this.pending = new AccumulationBuffer(() -> listener.closeStream("connection-timeout", "it did not complete the EXI data that it started sending."));
+    }
+
+    /**
+     * Checks if data has been received that was not yet decoded into a complete document.
+     *
+     * @return true if a document is partially received.
+     */
+    boolean hasPendingData()
+    {
+        lock.lock();
+        try {
+            return continuation != null || !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Decodes the provided data, combined with data previously provided to this instance.
+     *
+     * @param segment the data to decode.
+     * @return all documents that were completed by the provided data (possibly empty, never null), except for those
+     *         that are passed to the listener.
+     */
+    List<DecodedStanza> decode(IoBuffer segment) throws IOException, EXIException, TransformerException
+    {
+        final List<DecodedStanza> result = new ArrayList<>();
+        Continuation current;
+        lock.lock();
+        try {
+            if (closed) {
+                return result;
+            }
+            current = continuation;
+            if (current != null) {
+                pending.append(segment);
+                changed.signalAll();
+            } else if (segmented || processor.isStreaming()) {
+                pending.append(segment);
+                current = continueDecoding();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (current != null) {
+            current.resume(result);
+            return result;
+        }
+
+        // Complete documents are decoded straight from the segment: only an incomplete document is copied.
+        while (segment.hasRemaining()) {
+            final int start = segment.position();
+            final FrameInputStream in = new FrameInputStream(segment.asInputStream());
+            try {
+                result.add(processor.decodeStanza(in));
+            } catch (Exception e) {
+                if (!in.isExhausted()) {
+                    throw e;
+                }
+                Log.trace("EXI data of {} bytes contains an incomplete document.", segment.limit() - start);
+                EXIMetrics.getInstance().recordIncompleteFrame();
+                segment.position(start);
+                lock.lock();
+                try {
+                    pending.append(segment);
+                    current = continueDecoding();
+                } finally {
+                    lock.unlock();
+                }
+                current.resume(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the pending data on a separate thread, or makes it wait for one when none is available. This must be
+     * invoked while holding the lock.
+     *
+     * @throws CapacityExceededException when the stream is one EXI fragment, and the maximum number of such streams is
+     *                                   being decoded already.
+     */
+    private Continuation continueDecoding() throws CapacityExceededException
+    {
+        final Continuation candidate;
+        synchronized (slots) {
+            if (processor.isStreaming()) {
+                if (streamingSessions >= maximumStreamingSessions) {
+                    pending.free();
+                    throw new CapacityExceededException();
+                }
+                streamingSessions++;
+                candidate = new Continuation(false);
+                continuations.execute(candidate);
+            } else if (running < maximumContinuations) {
+                running++;
+                candidate = new Continuation(false);
+                continuations.execute(candidate);
+            } else {
+                Log.debug("No thread available to continue decoding an incomplete document. Waiting for one.");
+                EXIMetrics.getInstance().recordFrameDeferred();
+                candidate = new Continuation(true);
+                waiting.add(candidate);
+            }
+        }
+        continuation = candidate;
+        return candidate;
+    }
+
+    /**
+     * Checks if any incomplete document waits for a thread.
+     */
+    private static boolean isThreadNeeded()
+    {
+        synchronized (slots) {
+            return !waiting.isEmpty();
+        }
+    }
+
+    /**
+     * Hands the thread of a continuation that stopped to the next one that waits for a thread, if any.
+     *
+     * @param streaming true when the continuation decoded a stream that is one EXI fragment.
+     */
+    private static void handOver(boolean streaming)
+    {
+        final Continuation next;
+        synchronized (slots) {
+            if (streaming) {
+                streamingSessions--;
+                return;
+            }
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        continuations.execute(next);
+    }
+
+    /**
+     * Releases all resources. Data that has not been decoded into a complete document yet is discarded.
+     */
+    void close()
+    {
+        final Continuation current;
+        lock.lock();
+        try {
+            closed = true;
+            current = continuation;
+            continuation = null;
+            pending.free();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (current != null && current.deferred) {
+            synchronized (slots) {
+                waiting.remove(current);
+            }
+        }
+    }
+
+    /**
+     * Receives what happens on the threads that decode incomplete documents that had to wait for such a thread, as well
+     * as the expiry of incomplete data.
+     */
+    interface Listener
+    {
+        /**
+         * Receives documents that were decoded after {@link #decode(IoBuffer)} returned. This is invoked on a pooled
+         * thread, but never concurrently, and never while documents are being returned by {@link #decode(IoBuffer)}.
+         *
+         * @param stanzas the documents, in the order in which they were received.
+         */
+        void stanzasDecoded(List<DecodedStanza> stanzas) throws Exception;
+
+        /**
+         * Signals that the session is to be closed.
+         *
+         * @param condition the stream error condition.
+         * @param reason    a description of the reason, for logging.
+         */
+        void closeStream(String condition, String reason);
+    }
+
+    /**
+     * An exception that signals that the end of the available data has been reached. Stack traces are not recorded, as
+     * this exception is expected for every incomplete document.
+     */
+    static class IncompleteFrameException extends IOException
+    {
+        IncompleteFrameException()
+        {
+            super("Incomplete EXI data.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+
+    /**
+     * Signals that no thread is available to decode a stream that is one EXI fragment.
+     */
+    static class CapacityExceededException extends IOException
+    {
+        CapacityExceededException()
+        {
+            super("No thread is available to decode EXI data.");
+        }
+    }
+
+    /**
+     * Aborts the decoding of an incomplete document, so that its thread can be used for another one.
+     */
+    private static class YieldException extends IOException
+    {
+        YieldException()
+        {
+            super("Giving up the thread that decodes an incomplete EXI document.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+
+    /**
+     * An input stream that signals when reading beyond the end of the data that is available is attempted.
+     */
+    private static class FrameInputStream extends FilterInputStream
+    {
+        private boolean exhausted;
+
+        FrameInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        boolean isExhausted()
+        {
+            return exhausted;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int result = super.read();
+            if (result == -1) {
+                exhausted = true;
+                throw new IncompleteFrameException();
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            final int result = super.read(b, off, len);
+            if (result == -1) {
+                exhausted = true;
+                throw new IncompleteFrameException();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Decodes documents from the pending data. Reading blocks until data is provided; decoding stops when a document is
+     * completed while no more data is available.
+     *
+     * The thread that provides data to a continuation that started right away, waits until that data is consumed, and
+     * takes the documents that were completed. A continuation that had to wait for a thread (is 'deferred') passes the
+     * documents that it completes to the listener instead.
+     */
+    private final class Continuation extends InputStream implements Runnable
+    {
+        private final boolean deferred;
+
+        // All fields below are guarded by 'lock'.
+        private final List<DecodedStanza> results = new ArrayList<>();
+        private boolean waiting;
+        private boolean waited;
+        private boolean done;
+        private boolean yielding;
+        private Exception failure;
+
+        Continuation(boolean deferred)
+        {
+            this.deferred = deferred;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                if (processor.isStreaming()) {
+                    processor.decodeStream(this, this::completed);
+                    finish(null);
+                    return;
+                }
+                while (!completed(processor.decodeStanza(this))) {
+                    // Continue with the next document.
+                }
+            } catch (Exception e) {
+                if (yielding && lock.isHeldByCurrentThread()) {
+                    yielded();
+                } else {
+                    finish(e);
+                }
+            } finally {
+                handOver(processor.isStreaming());
+            }
+        }
+
+        /**
+         * Records a completed document.
+         *
+         * @return true when decoding has stopped, as no more data is available.
+         */
+        private boolean completed(DecodedStanza stanza)
+        {
+            lock.lock();
+            try {
+                pending.mark();
+                results.add(stanza);
+            } finally {
+                lock.unlock();
+            }
+            if (deferred) {
+                deliver();
+            }
+            lock.lock();
+            try {
+                if (processor.isStreaming() || !pending.isEmpty()) {
+                    return false;
+                }
+                segmented = waited;
+                done = true;
+                if (continuation == this) {
+                    continuation = null;
+                }
+                changed.signalAll();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Completes giving up the thread. The lock, which was kept while the decoder undid the partial document (see
+         * {@link #awaitData()}), is released only afterwards, so that no other continuation uses the decoder before.
+         */
+        private void yielded()
+        {
+            try {
+                pending.reset();
+                segmented = true;
+                done = true;
+                if (continuation == this) {
+                    continuation = null;
+                }
+                changed.signalAll();
+            } finally {
+                while (lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+            Log.trace("Gave up the thread that decoded an incomplete document, as other documents are waiting for one.");
+        }
+
+        private void finish(Exception e)
+        {
+            final boolean report;
+            lock.lock();
+            try {
+                report = deferred && e != null && !closed;
+                if (report) {
+                    closed = true;
+                    pending.free();
+                }
+                failure = e;
+                done = true;
+                if (continuation == this) {
+                    continuation = null;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (report) {
+                listener.closeStream("bad-format", "its EXI data could not be decoded: " + e.getMessage());
+            }
+        }
+
+        private void deliver()
+        {
+            final List<DecodedStanza> stanzas;
+            lock.lock();
+            try {
+                if (closed || results.isEmpty()) {
+                    return;
+                }
+                stanzas = new ArrayList<>(results);
+                results.clear();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                listener.stanzasDecoded(Collections.unmodifiableList(stanzas));
+            } catch (Exception e) {
+                Log.warn("Exception while passing on stanzas that were decoded from incomplete EXI data.", e);
+            }
+        }
+
+        /**
+         * Waits until all data that has been provided is consumed (or until decoding has stopped), and takes the
+         * documents that were completed. This returns right away for a continuation that is deferred.
+         */
+        void resume(List<DecodedStanza> destination) throws IOException, EXIException, TransformerException
+        {
+            if (deferred) {
+                return;
+            }
+            final Exception e;
+            lock.lock();
+            try {
+                while (!done && !(waiting && pending.remaining() == 0)) {
+                    changed.await();
+                }
+                destination.addAll(results);
+                results.clear();
+                e = done ? failure : null;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for EXI data to be decoded.");
+            } finally {
+                lock.unlock();
+            }
+            if (e == null) {
+                return;
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof EXIException) {
+                throw (EXIException) e;
+            }
+            if (e instanceof TransformerException) {
+                throw (TransformerException) e;
+            }
+            throw new EXIException("Unable to decode EXI data.", e);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            lock.lock();
+            try {
+                awaitData();
+                return pending.read();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                awaitData();
+                return pending.read(b, off, len);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void awaitData() throws IOException
+        {
+            try {
+                long idle = 0;
+                while (pending.remaining() == 0) {
+                    if (closed || continuation != this) {
+                        throw new IOException("Closed while decoding an incomplete EXI document.");
+                    }
+                    if (yielding || (idle >= YIELD_DELAY.toNanos() && !processor.isStreaming() && isThreadNeeded())) {
+                        // The lock is kept (it is reentrant) until the decoder has undone this document. See #yielded().
+                        yielding = true;
+                        lock.lock();
+                        throw new YieldException();
+                    }
+                    waiting = true;
+                    waited = true;
+                    changed.signalAll();
+                    final long start = System.nanoTime();
+                    changed.await(YIELD_DELAY.toNanos(), TimeUnit.NANOSECONDS);
+                    idle += System.nanoTime() - start;
+                }
+                waiting = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for EXI data.");
+            }
+        }
+    }
+}
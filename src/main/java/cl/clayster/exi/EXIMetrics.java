@@ -0,0 +1,461 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics of the EXI plugin, for all sessions combined: data volumes before and after EXI coding, the time
+ * spent coding, and the outcome of negotiations. Recording uses striped counters, so that it does not introduce
+ * contention between I/O threads.
+ *
+ * Metrics are exposed through JMX and as Openfire statistics (both registered by {@link EXIPlugin}).
+ */
+public class EXIMetrics implements EXIMetricsMBean
+{
+    private static final EXIMetrics INSTANCE = new EXIMetrics();
+
+    public static EXIMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final LongAdder plainBytesSent = new LongAdder();
+    private final LongAdder exiBytesSent = new LongAdder();
+    private final LongAdder plainBytesReceived = new LongAdder();
+    private final LongAdder exiBytesReceived = new LongAdder();
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LongAdder incompleteFrames = new LongAdder();
+    private final LongAdder deferredFrames = new LongAdder();
+    private final LatencyHistogram grammarBuildTime = new LatencyHistogram();
+    private final LongAdder setupsAgreed = new LongAdder();
+    private final LongAdder setupsRejected = new LongAdder();
+    private final LongAdder quickSetupHits = new LongAdder();
+    private final LongAdder quickSetupMisses = new LongAdder();
+    private final LongAdder missingSchemas = new LongAdder();
+    private final LongAdder schemaUploads = new LongAdder();
+    private final LongAdder schemaDownloads = new LongAdder();
+    private final LongAdder schemaDownloadFailures = new LongAdder();
+    private final LongAdder sessionsCompressed = new LongAdder();
+    private final LongAdder sessionsHibernated = new LongAdder();
+    private final LongAdder sessionsRehydrated = new LongAdder();
+    private final LongAdder codecTasks = new LongAdder();
+    private final LongAdder codecQueueOverflows = new LongAdder();
+    private final AtomicLong codecQueueDepth = new AtomicLong();
+    private final AtomicLong codecQueueDepthMax = new AtomicLong();
+
+    EXIMetrics()
+    {
+    }
+
+    /**
+     * Records the encoding of XMPP data into EXI.
+     *
+     * @param plainBytes the size of the XML data, in bytes.
+     * @param exiBytes   the size of the resulting EXI data, in bytes.
+     * @param nanos      the time spent encoding.
+     */
+    void recordEncode(long plainBytes, long exiBytes, long nanos)
+    {
+        plainBytesSent.add(plainBytes);
+        exiBytesSent.add(exiBytes);
+        encodeLatency.record(nanos);
+    }
+
+    /**
+     * Records the decoding of EXI data into XMPP data.
+     *
+     * @param exiBytes   the size of the EXI data, in bytes.
+     * @param plainBytes the size of the resulting XML data, in bytes.
+     * @param nanos      the time spent decoding.
+     */
+    void recordDecode(long exiBytes, long plainBytes, long nanos)
+    {
+        exiBytesReceived.add(exiBytes);
+        plainBytesReceived.add(plainBytes);
+        decodeLatency.record(nanos);
+    }
+
+    /**
+     * Records that received data turned out to contain an incomplete EXI document.
+     */
+    void recordIncompleteFrame()
+    {
+        incompleteFrames.increment();
+    }
+
+    /**
+     * Records that decoding of an incomplete EXI document has to wait until a thread is available.
+     */
+    void recordFrameDeferred()
+    {
+        deferredFrames.increment();
+    }
+
+    void recordGrammarsBuilt(long nanos)
+    {
+        grammarBuildTime.record(nanos);
+    }
+
+    void recordSetup(boolean agreement)
+    {
+        (agreement ? setupsAgreed : setupsRejected).increment();
+    }
+
+    void recordQuickSetup(boolean hit)
+    {
+        (hit ? quickSetupHits : quickSetupMisses).increment();
+    }
+
+    void recordMissingSchema()
+    {
+        missingSchemas.increment();
+    }
+
+    void recordSchemaUpload()
+    {
+        schemaUploads.increment();
+    }
+
+    void recordSchemaDownload(boolean success)
+    {
+        (success ? schemaDownloads : schemaDownloadFailures).increment();
+    }
+
+    void recordSessionCompressed()
+    {
+        sessionsCompressed.increment();
+    }
+
+    void recordSessionHibernated()
+    {
+        sessionsHibernated.increment();
+    }
+
+    void recordSessionRehydrated()
+    {
+        sessionsRehydrated.increment();
+    }
+
+    /**
+     * Records that encoding or decoding work was queued for a codec thread.
+     */
+    void recordCodecTaskQueued()
+    {
+        codecTasks.increment();
+        codecQueueDepthMax.accumulateAndGet(codecQueueDepth.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Records that a session was closed, as too many of its events were waiting for a codec thread.
+     */
+    void recordCodecQueueOverflow()
+    {
+        codecQueueOverflows.increment();
+    }
+
+    /**
+     * Records that queued encoding or decoding work was taken up by a codec thread.
+     */
+    void recordCodecTaskStarted()
+    {
+        codecQueueDepth.decrementAndGet();
+    }
+
+    /**
+     * Calculates the number of bytes needed to represent text in UTF-8, without encoding it.
+     *
+     * @param text the text to measure.
+     * @return a number of bytes.
+     */
+    static long utf8Length(CharSequence text)
+    {
+        long result = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                result++;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                result += 4;
+                i++;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getPlainBytesSent()
+    {
+        return plainBytesSent.sum();
+    }
+
+    @Override
+    public long getExiBytesSent()
+    {
+        return exiBytesSent.sum();
+    }
+
+    @Override
+    public long getPlainBytesReceived()
+    {
+        return plainBytesReceived.sum();
+    }
+
+    @Override
+    public long getExiBytesReceived()
+    {
+        return exiBytesReceived.sum();
+    }
+
+    /**
+     * Returns the size of EXI data that was sent, as a fraction of the size of the XML data that it represents.
+     *
+     * @return a ratio (lower is better), or zero if nothing was sent.
+     */
+    @Override
+    public double getCompressionRatioSent()
+    {
+        final long plain = plainBytesSent.sum();
+        return plain == 0 ? 0 : (double) exiBytesSent.sum() / plain;
+    }
+
+    /**
+     * Returns the size of EXI data that was received, as a fraction of the size of the XML data that it represents.
+     *
+     * @return a ratio (lower is better), or zero if nothing was received.
+     */
+    @Override
+    public double getCompressionRatioReceived()
+    {
+        final long plain = plainBytesReceived.sum();
+        return plain == 0 ? 0 : (double) exiBytesReceived.sum() / plain;
+    }
+
+    @Override
+    public long getEncodeCount()
+    {
+        return encodeLatency.getCount();
+    }
+
+    @Override
+    public double getEncodeLatencyMeanMicros()
+    {
+        return encodeLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getEncodeLatency99thPercentileMicros()
+    {
+        return encodeLatency.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public long getDecodeCount()
+    {
+        return decodeLatency.getCount();
+    }
+
+    @Override
+    public double getDecodeLatencyMeanMicros()
+    {
+        return decodeLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getDecodeLatency99thPercentileMicros()
+    {
+        return decodeLatency.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public long getIncompleteFrames()
+    {
+        return incompleteFrames.sum();
+    }
+
+    @Override
+    public long getDeferredFrames()
+    {
+        return deferredFrames.sum();
+    }
+
+    @Override
+    public long getGrammarsBuilt()
+    {
+        return grammarBuildTime.getCount();
+    }
+
+    @Override
+    public double getGrammarBuildTimeMeanMicros()
+    {
+        return grammarBuildTime.getMeanMicros();
+    }
+
+    @Override
+    public long getGrammarBuildTime99thPercentileMicros()
+    {
+        return grammarBuildTime.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public long getSetupsAgreed()
+    {
+        return setupsAgreed.sum();
+    }
+
+    @Override
+    public long getSetupsRejected()
+    {
+        return setupsRejected.sum();
+    }
+
+    @Override
+    public long getQuickSetupHits()
+    {
+        return quickSetupHits.sum();
+    }
+
+    @Override
+    public long getQuickSetupMisses()
+    {
+        return quickSetupMisses.sum();
+    }
+
+    @Override
+    public long getMissingSchemas()
+    {
+        return missingSchemas.sum();
+    }
+
+    @Override
+    public long getSchemaUploads()
+    {
+        return schemaUploads.sum();
+    }
+
+    @Override
+    public long getSchemaDownloads()
+    {
+        return schemaDownloads.sum();
+    }
+
+    @Override
+    public long getSchemaDownloadFailures()
+    {
+        return schemaDownloadFailures.sum();
+    }
+
+    @Override
+    public long getSessionsCompressed()
+    {
+        return sessionsCompressed.sum();
+    }
+
+    @Override
+    public long getSessionsHibernated()
+    {
+        return sessionsHibernated.sum();
+    }
+
+    @Override
+    public long getSessionsRehydrated()
+    {
+        return sessionsRehydrated.sum();
+    }
+
+    @Override
+    public long getCodecTasks()
+    {
+        return codecTasks.sum();
+    }
+
+    @Override
+    public long getCodecQueueOverflows()
+    {
+        return codecQueueOverflows.sum();
+    }
+
+    @Override
+    public long getCodecQueueDepth()
+    {
+        return codecQueueDepth.get();
+    }
+
+    @Override
+    public long getCodecQueueDepthMax()
+    {
+        return codecQueueDepthMax.get();
+    }
+
+    @Override
+    public long getPendingDataBytes()
+    {
+        return AccumulationBuffer.getAllocatedBytes();
+    }
+
+    @Override
+    public void reset()
+    {
+        plainBytesSent.reset();
+        exiBytesSent.reset();
+        plainBytesReceived.reset();
+        exiBytesReceived.reset();
+        encodeLatency.reset();
+        decodeLatency.reset();
+        incompleteFrames.reset();
+        deferredFrames.reset();
+        grammarBuildTime.reset();
+        setupsAgreed.reset();
+        setupsRejected.reset();
+        quickSetupHits.reset();
+        quickSetupMisses.reset();
+        missingSchemas.reset();
+        schemaUploads.reset();
+        schemaDownloads.reset();
+        schemaDownloadFailures.reset();
+        sessionsCompressed.reset();
+        sessionsHibernated.reset();
+        sessionsRehydrated.reset();
+        codecTasks.reset();
+        codecQueueOverflows.reset();
+        // The depth is a gauge, which is not reset. Its peak starts over from the current depth.
+        codecQueueDepthMax.set(codecQueueDepth.get());
+    }
+
+    /**
+     * Data volumes of one session. Data can be written to a session by any thread, so these are striped counters too.
+     */
+    static class SessionMetrics
+    {
+        final LongAdder plainBytesSent = new LongAdder();
+        final LongAdder exiBytesSent = new LongAdder();
+        final LongAdder plainBytesReceived = new LongAdder();
+        final LongAdder exiBytesReceived = new LongAdder();
+
+        @Override
+        public String toString()
+        {
+            return "sent " + exiBytesSent.sum() + " EXI bytes for " + plainBytesSent.sum() + " XML bytes, received "
+                + exiBytesReceived.sum() + " EXI bytes for " + plainBytesReceived.sum() + " XML bytes";
+        }
+    }
+}
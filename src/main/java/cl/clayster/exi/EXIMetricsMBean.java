@@ -0,0 +1,90 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+/**
+ * Management interface of {@link EXIMetrics}, exposed through JMX.
+ */
+public interface EXIMetricsMBean
+{
+    long getPlainBytesSent();
+
+    long getExiBytesSent();
+
+    long getPlainBytesReceived();
+
+    long getExiBytesReceived();
+
+    double getCompressionRatioSent();
+
+    double getCompressionRatioReceived();
+
+    long getEncodeCount();
+
+    double getEncodeLatencyMeanMicros();
+
+    long getEncodeLatency99thPercentileMicros();
+
+    long getDecodeCount();
+
+    double getDecodeLatencyMeanMicros();
+
+    long getDecodeLatency99thPercentileMicros();
+
+    long getIncompleteFrames();
+
+    long getDeferredFrames();
+
+    long getGrammarsBuilt();
+
+    double getGrammarBuildTimeMeanMicros();
+
+    long getGrammarBuildTime99thPercentileMicros();
+
+    long getSetupsAgreed();
+
+    long getSetupsRejected();
+
+    long getQuickSetupHits();
+
+    long getQuickSetupMisses();
+
+    long getMissingSchemas();
+
+    long getSchemaUploads();
+
+    long getSchemaDownloads();
+
+    long getSchemaDownloadFailures();
+
+    long getSessionsCompressed();
+
+    long getSessionsHibernated();
+
+    long getSessionsRehydrated();
+
+    long getCodecTasks();
+
+    long getCodecQueueOverflows();
+
+    long getCodecQueueDepth();
+
+    long getCodecQueueDepthMax();
+
+    long getPendingDataBytes();
+
+    void reset();
+}
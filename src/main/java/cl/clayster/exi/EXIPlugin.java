@@ -21,11 +21,19 @@ import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.container.Plugin;
 import org.jivesoftware.openfire.container.PluginManager;
 import org.jivesoftware.openfire.spi.ConnectionManagerImpl;
+import org.jivesoftware.openfire.stats.StatisticsManager;
+import org.jivesoftware.util.SystemProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Main plugin class
@@ -34,12 +42,262 @@ public class EXIPlugin implements Plugin
 {
     private static final Logger Log = LoggerFactory.getLogger(EXIPlugin.class);
 
+    public static final SystemProperty<Integer> GRAMMARS_CACHE_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.grammars.cache.size")
+        .setDefaultValue(GrammarsCache.DEFAULT_MAXIMUM_SIZE)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(size -> GrammarsCache.getInstance().setMaximumSize(size))
+        .build();
+
+    public static final SystemProperty<Boolean> GRAMMARS_SNAPSHOTS_ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("plugin.exi.grammars.snapshots.enabled")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(GrammarsSnapshot::setEnabled)
+        .build();
+
+    public static final SystemProperty<Integer> GRAMMARS_PREWARM_COUNT = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.grammars.prewarm.count")
+        .setDefaultValue(GrammarsPrewarmer.DEFAULT_COUNT)
+        .setMinValue(0)
+        .setDynamic(false)
+        .setPlugin("exi")
+        .build();
+
+    public static final SystemProperty<Integer> DECODER_CONTINUATIONS_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.decoder.continuations.max")
+        .setDefaultValue(EXIFrameDecoder.DEFAULT_MAXIMUM_CONTINUATIONS)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXIFrameDecoder::setMaximumContinuations)
+        .build();
+
+    public static final SystemProperty<Integer> DECODER_PENDING_SIZE_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.decoder.pending.size.max")
+        .setDefaultValue(AccumulationBuffer.DEFAULT_MAXIMUM_SIZE)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(AccumulationBuffer::setMaximumSize)
+        .build();
+
+    public static final SystemProperty<Duration> DECODER_PENDING_TIMEOUT = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("plugin.exi.decoder.pending.timeout")
+        .setDefaultValue(AccumulationBuffer.DEFAULT_IDLE_TIMEOUT)
+        .setMinValue(Duration.ZERO)
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(AccumulationBuffer::setIdleTimeout)
+        .build();
+
+    public static final SystemProperty<Boolean> CODEC_OFFLOAD_ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("plugin.exi.codec.offload.enabled")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(CodecExecutor::setEnabled)
+        .build();
+
+    public static final SystemProperty<Integer> CODEC_THREADS_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.codec.threads.max")
+        .setDefaultValue(CodecExecutor.DEFAULT_MAXIMUM_THREADS)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(CodecExecutor::setMaximumThreads)
+        .build();
+
+    public static final SystemProperty<Integer> CODEC_QUEUE_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.codec.queue.max")
+        .setDefaultValue(CodecExecutor.DEFAULT_MAXIMUM_QUEUED_EVENTS)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(CodecExecutor::setMaximumQueuedEvents)
+        .build();
+
+    public static final SystemProperty<Duration> SESSION_HIBERNATION_DELAY = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("plugin.exi.session.hibernation.delay")
+        .setDefaultValue(EXISessionState.DEFAULT_HIBERNATION_DELAY)
+        .setMinValue(Duration.ZERO)
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXISessionState::setHibernationDelay)
+        .build();
+
+    public static final SystemProperty<Boolean> ENCODER_DIRECT_BUFFERS = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("plugin.exi.encoder.buffers.direct")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXIProcessor::setUseDirectBuffers)
+        .build();
+
+    public static final SystemProperty<Duration> COALESCING_DELAY = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("plugin.exi.coalescing.delay")
+        .setDefaultValue(Duration.ZERO)
+        .setMinValue(Duration.ZERO)
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXICodecFilter::setCoalescingDelay)
+        .build();
+
+    public static final SystemProperty<Integer> COALESCING_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.coalescing.size")
+        .setDefaultValue(EXICodecFilter.DEFAULT_COALESCING_SIZE)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXICodecFilter::setCoalescingSize)
+        .build();
+
+    public static final SystemProperty<Boolean> STREAMING_ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("plugin.exi.streaming.enabled")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXIFilter::setStreamingEnabled)
+        .build();
+
+    public static final SystemProperty<Integer> STREAMING_SESSIONS_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.streaming.sessions.max")
+        .setDefaultValue(EXIFrameDecoder.DEFAULT_MAXIMUM_STREAMING_SESSIONS)
+        .setMinValue(0)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(EXIFrameDecoder::setMaximumStreamingSessions)
+        .build();
+
+    public static final SystemProperty<Integer> ADVISOR_SAMPLE_RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.advisor.sample.rate")
+        .setDefaultValue(0)
+        .setMinValue(0)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(rate -> OptionAdvisor.getInstance().setSampleRate(rate))
+        .build();
+
+    public static final SystemProperty<Integer> VOCABULARY_SAMPLE_RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.vocabulary.sample.rate")
+        .setDefaultValue(0)
+        .setMinValue(0)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(rate -> VocabularyAnalyzer.getInstance().setSampleRate(rate))
+        .build();
+
+    public static final SystemProperty<Boolean> VOCABULARY_ENUMERATE = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("plugin.exi.vocabulary.enumerate")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(enumerate -> VocabularyAnalyzer.getInstance().setEnumerateAttributes(enumerate))
+        .build();
+
+    public static final SystemProperty<Integer> CONFIGURATIONS_CACHE_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.configurations.cache.size")
+        .setDefaultValue(ConfigurationRegistry.DEFAULT_MAXIMUM_SIZE)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(size -> ConfigurationRegistry.getInstance().setMaximumSize(size))
+        .build();
+
+    public static final SystemProperty<Integer> DOWNLOADS_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.download.threads.max")
+        .setDefaultValue(SchemaDownloader.DEFAULT_MAXIMUM_DOWNLOADS)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(maximum -> SchemaDownloader.getInstance().setMaximumDownloads(maximum))
+        .build();
+
+    public static final SystemProperty<Duration> DOWNLOAD_TIMEOUT = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("plugin.exi.download.timeout")
+        .setDefaultValue(SchemaDownloader.DEFAULT_TIMEOUT)
+        .setMinValue(Duration.ofMillis(1))
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(timeout -> SchemaDownloader.getInstance().setTimeout(timeout))
+        .build();
+
+    public static final SystemProperty<Duration> DOWNLOAD_DURATION_MAX = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("plugin.exi.download.duration.max")
+        .setDefaultValue(SchemaDownloader.DEFAULT_MAXIMUM_DURATION)
+        .setMinValue(Duration.ofMillis(1))
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(duration -> SchemaDownloader.getInstance().setMaximumDuration(duration))
+        .build();
+
+    public static final SystemProperty<Integer> DOWNLOAD_SIZE_MAX = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("plugin.exi.download.size.max")
+        .setDefaultValue(SchemaDownloader.DEFAULT_MAXIMUM_SIZE)
+        .setMinValue(1)
+        .setDynamic(true)
+        .setPlugin("exi")
+        .addListener(size -> SchemaDownloader.getInstance().setMaximumSize(size))
+        .build();
+
+    /**
+     * Name under which {@link EXIMetrics} is registered with JMX.
+     */
+    static final String METRICS_OBJECT_NAME = "cl.clayster.exi:type=Metrics";
+
+    /**
+     * Name under which {@link VocabularyAnalyzer} is registered with JMX.
+     */
+    static final String VOCABULARY_OBJECT_NAME = "cl.clayster.exi:type=VocabularyAnalyzer";
+
+    /**
+     * Keys of the statistics that are registered with Openfire's StatisticsManager.
+     */
+    static final String STAT_EXI_BYTES_SENT = "exi_bytes_sent";
+    static final String STAT_EXI_BYTES_RECEIVED = "exi_bytes_received";
+    static final String STAT_PLAIN_BYTES_SENT = "exi_plain_bytes_sent";
+    static final String STAT_PLAIN_BYTES_RECEIVED = "exi_plain_bytes_received";
+    static final String STAT_COMPRESSION_RATIO = "exi_compression_ratio";
+
     @Override
     public void initializePlugin(PluginManager manager, File pluginDirectory)
     {
+        GrammarsCache.getInstance().setMaximumSize(GRAMMARS_CACHE_SIZE.getValue());
+        GrammarsSnapshot.setEnabled(GRAMMARS_SNAPSHOTS_ENABLED.getValue());
+        EXIFrameDecoder.setMaximumContinuations(DECODER_CONTINUATIONS_MAX.getValue());
+        AccumulationBuffer.setMaximumSize(DECODER_PENDING_SIZE_MAX.getValue());
+        AccumulationBuffer.setIdleTimeout(DECODER_PENDING_TIMEOUT.getValue());
+        CodecExecutor.setEnabled(CODEC_OFFLOAD_ENABLED.getValue());
+        CodecExecutor.setMaximumThreads(CODEC_THREADS_MAX.getValue());
+        CodecExecutor.setMaximumQueuedEvents(CODEC_QUEUE_MAX.getValue());
+        EXISessionState.setHibernationDelay(SESSION_HIBERNATION_DELAY.getValue());
+        EXIProcessor.setUseDirectBuffers(ENCODER_DIRECT_BUFFERS.getValue());
+        EXIFilter.setStreamingEnabled(STREAMING_ENABLED.getValue());
+        EXIFrameDecoder.setMaximumStreamingSessions(STREAMING_SESSIONS_MAX.getValue());
+        EXICodecFilter.setCoalescingDelay(COALESCING_DELAY.getValue());
+        EXICodecFilter.setCoalescingSize(COALESCING_SIZE.getValue());
+        OptionAdvisor.getInstance().setSampleRate(ADVISOR_SAMPLE_RATE.getValue());
+        VocabularyAnalyzer.getInstance().setSampleRate(VOCABULARY_SAMPLE_RATE.getValue());
+        VocabularyAnalyzer.getInstance().setEnumerateAttributes(VOCABULARY_ENUMERATE.getValue());
+        ConfigurationRegistry.getInstance().setMaximumSize(CONFIGURATIONS_CACHE_SIZE.getValue());
+        SchemaDownloader.getInstance().setMaximumDownloads(DOWNLOADS_MAX.getValue());
+        SchemaDownloader.getInstance().setTimeout(DOWNLOAD_TIMEOUT.getValue());
+        SchemaDownloader.getInstance().setMaximumDuration(DOWNLOAD_DURATION_MAX.getValue());
+        SchemaDownloader.getInstance().setMaximumSize(DOWNLOAD_SIZE_MAX.getValue());
         try {
             EXIUtils.generateSchemasFile();
             EXIUtils.generateDefaultCanonicalSchema();
+            ConfigurationRegistry.getInstance().warm();
+            GrammarsPrewarmer.getInstance().start(GRAMMARS_PREWARM_COUNT.getValue());
+            SchemaRegistry.getInstance().startWatching();
         } catch (IOException e) {
             Log.warn("Exception while trying to initialize the Openfire EXI plugin.", e);
             return;
@@ -51,6 +309,7 @@ public class EXIPlugin implements Plugin
         socketAcceptor.getFilterChain().addBefore("xmpp", EXIAlternativeBindingFilter.filterName, new EXIAlternativeBindingFilter());
         EXIFilter exiFilter = new EXIFilter();
         socketAcceptor.getFilterChain().addAfter("xmpp", EXIFilter.filterName, exiFilter);
+        registerMetrics();
         Log.info("Starting EXI Plugin");
     }
 
@@ -65,5 +324,74 @@ public class EXIPlugin implements Plugin
         if (socketAcceptor != null && socketAcceptor.getFilterChain().contains(EXIAlternativeBindingFilter.filterName)) {
             socketAcceptor.getFilterChain().remove(EXIAlternativeBindingFilter.filterName);
         }
+        GrammarsPrewarmer.getInstance().stop();
+        try {
+            SchemaRegistry.getInstance().shutdown();
+        } catch (IOException e) {
+            Log.warn("Exception while trying to write the schemas file.", e);
+        }
+        GrammarsCache.getInstance().clear();
+        ConfigurationRegistry.getInstance().clear();
+        SchemaDownloader.getInstance().clear();
+        OptionAdvisor.getInstance().clear();
+        EXISessionState.shutdown();
+        WriteCoalescer.shutdown();
+        unregisterMetrics();
+    }
+
+    /**
+     * Exposes {@link EXIMetrics} through JMX, and as statistics in the Openfire admin console. Also exposes the
+     * {@link VocabularyAnalyzer} through JMX, from where it is triggered.
+     */
+    private void registerMetrics()
+    {
+        final EXIMetrics metrics = EXIMetrics.getInstance();
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(METRICS_OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(metrics, objectName);
+            }
+            final ObjectName vocabularyObjectName = new ObjectName(VOCABULARY_OBJECT_NAME);
+            if (!mBeanServer.isRegistered(vocabularyObjectName)) {
+                mBeanServer.registerMBean(VocabularyAnalyzer.getInstance(), vocabularyObjectName);
+            }
+        } catch (JMException e) {
+            Log.warn("Unable to register EXI metrics with JMX.", e);
+        }
+
+        final StatisticsManager statisticsManager = StatisticsManager.getInstance();
+        statisticsManager.addStatistic(STAT_EXI_BYTES_SENT, EXIStatistic.rate(STAT_EXI_BYTES_SENT, metrics::getExiBytesSent));
+        statisticsManager.addStatistic(STAT_EXI_BYTES_RECEIVED, EXIStatistic.rate(STAT_EXI_BYTES_RECEIVED, metrics::getExiBytesReceived));
+        statisticsManager.addStatistic(STAT_PLAIN_BYTES_SENT, EXIStatistic.rate(STAT_PLAIN_BYTES_SENT, metrics::getPlainBytesSent));
+        statisticsManager.addStatistic(STAT_PLAIN_BYTES_RECEIVED, EXIStatistic.rate(STAT_PLAIN_BYTES_RECEIVED, metrics::getPlainBytesReceived));
+        statisticsManager.addStatistic(STAT_COMPRESSION_RATIO, EXIStatistic.count(STAT_COMPRESSION_RATIO, () -> {
+            final long plain = metrics.getPlainBytesSent() + metrics.getPlainBytesReceived();
+            return plain == 0 ? 0 : 100.0 * (metrics.getExiBytesSent() + metrics.getExiBytesReceived()) / plain;
+        }));
+    }
+
+    private void unregisterMetrics()
+    {
+        final StatisticsManager statisticsManager = StatisticsManager.getInstance();
+        statisticsManager.removeStatistic(STAT_EXI_BYTES_SENT);
+        statisticsManager.removeStatistic(STAT_EXI_BYTES_RECEIVED);
+        statisticsManager.removeStatistic(STAT_PLAIN_BYTES_SENT);
+        statisticsManager.removeStatistic(STAT_PLAIN_BYTES_RECEIVED);
+        statisticsManager.removeStatistic(STAT_COMPRESSION_RATIO);
+
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(METRICS_OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            final ObjectName vocabularyObjectName = new ObjectName(VOCABULARY_OBJECT_NAME);
+            if (mBeanServer.isRegistered(vocabularyObjectName)) {
+                mBeanServer.unregisterMBean(vocabularyObjectName);
+            }
+        } catch (JMException e) {
+            Log.warn("Unable to unregister EXI metrics from JMX.", e);
+        }
     }
 }
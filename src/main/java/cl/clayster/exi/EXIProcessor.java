@@ -26,31 +26,80 @@ import com.siemens.ct.exi.grammars.GrammarFactory;
 import com.siemens.ct.exi.main.api.sax.EXIResult;
 import com.siemens.ct.exi.main.api.sax.EXISource;
 import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+import org.apache.mina.core.buffer.CachedBufferAllocator;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.dom4j.DocumentException;
+import org.apache.mina.core.buffer.IoBufferAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.*;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.*;
 import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.util.function.Consumer;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class EXIProcessor
 {
     private static final Logger Log = LoggerFactory.getLogger(EXIProcessor.class);
 
+    private static final byte[] COOKIE = "$EXI".getBytes(US_ASCII);
+
+    private static final int INITIAL_BUFFER_CAPACITY = 512;
+
+    /**
+     * Provides the buffers into which stanzas are encoded. Released buffers are kept for reuse by the thread that
+     * released them.
+     */
+    private static final IoBufferAllocator bufferAllocator = new CachedBufferAllocator();
+
+    private static volatile boolean useDirectBuffers = false;
+
+    /**
+     * Defines if stanzas are encoded into direct (off-heap) buffers, rather than heap buffers.
+     *
+     * @param direct true to use direct buffers.
+     */
+    static void setUseDirectBuffers(boolean direct)
+    {
+        useDirectBuffers = direct;
+    }
+
+    /**
+     * Allocates an auto-expanding buffer from the pool that is used for encoded stanzas.
+     *
+     * @param capacity the initial capacity of the buffer.
+     * @return a buffer, to be released using {@link IoBuffer#free()}.
+     */
+    static IoBuffer allocateBuffer(int capacity)
+    {
+        return bufferAllocator.allocate(capacity, useDirectBuffers).setAutoExpand(true);
+    }
+
     protected EXIFactory exiFactory;
+
+    // The encoder and decoder are created when first needed, and can be released (see #release()) in between stanzas.
     protected EXIResult exiResult;
     protected SAXSource exiSource;
-    protected Transformer transformer;
     protected XMLReader exiReader, xmlReader;
 
+    /**
+     * Receives the SAX events of decoded documents, which removes the need for an identity Transformer per stanza.
+     */
+    private StanzaSerializer serializer;
+
+    /**
+     * When the whole stream is encoded as one EXI fragment, the encoder writes to this stream for as long as the session
+     * lasts. It forwards to the buffer of the stanza that is being encoded.
+     */
+    private final BufferOutputStream streamOutput = new BufferOutputStream();
+    private boolean streamStarted;
+
     /**
      * Constructs an EXI Processor using <b>xsdLocation</b> as the Canonical Schema
      * and the respective parameters in exiConfig for its configuration.
@@ -60,35 +109,110 @@ public class EXIProcessor
     public EXIProcessor(EXISetupConfiguration exiConfig) throws EXIException
     {
         if (exiConfig == null) exiConfig = new EXISetupConfiguration();
-        // create factory and EXI grammar for given schema
-        exiFactory = exiConfig;
+        // Grammars are immutable, and are shared by all processors that use the same canonical schema. Configurations
+        // are shared by sessions too (see ConfigurationRegistry), so the grammars are set on a (shallow) copy of the
+        // configuration that is used by this processor only.
+        Grammars g = GrammarsCache.getInstance().getGrammars(exiConfig.schemaId, exiConfig.getCanonicalSchemaLocation());
+        exiFactory = exiConfig.clone();
+        exiFactory.setGrammars(g);
+        GrammarsPrewarmer.getInstance().recordUsage(exiConfig.schemaId);
+
+        createEncoder();
+        createDecoder();
+    }
 
-        try {
-            GrammarFactory grammarFactory = GrammarFactory.newInstance();
-            Grammars g = grammarFactory.createGrammars(exiConfig.getCanonicalSchemaLocation().toString(), new SchemaResolver());
-            exiFactory.setGrammars(g);
-            TransformerFactory tf = TransformerFactory.newInstance();
-            transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    public EXIProcessor(EXIFactory ef)
+    {
+        exiFactory = ef;
+    }
 
+    /**
+     * Creates the SAX encoder, and the XML reader that feeds it, from the (shared) configuration and grammars.
+     */
+    private void createEncoder() throws EXIException
+    {
+        try {
             exiResult = new EXIResult(exiFactory);
             xmlReader = XMLReaderFactory.createXMLReader();
             xmlReader.setContentHandler(exiResult.getHandler());
-
-            exiSource = new EXISource(exiFactory);
-            exiReader = exiSource.getXMLReader();
-        } catch (IOException | ParserConfigurationException e) {
-            throw new EXIException("Error while creating Grammars.", e);
-        } catch (TransformerConfigurationException e) {
-            throw new EXIException("Error while creating Transformer.", e);
-        } catch (SAXException | DocumentException e) {
+            if (isStreaming()) {
+                // Stanzas are parsed as separate documents, but are encoded as elements of one fragment.
+                final XMLFilterImpl elements = new XMLFilterImpl()
+                {
+                    @Override
+                    public void startDocument() {}
+
+                    @Override
+                    public void endDocument() {}
+                };
+                elements.setContentHandler(exiResult.getHandler());
+                xmlReader.setContentHandler(elements);
+            }
+        } catch (SAXException e) {
             throw new EXIException("Error while creating XML reader.", e);
         }
     }
 
-    public EXIProcessor(EXIFactory ef)
+    /**
+     * Creates the SAX decoder, and the serializer that it feeds, from the (shared) configuration and grammars.
+     */
+    private void createDecoder() throws EXIException
     {
-        exiFactory = ef;
+        serializer = new StanzaSerializer();
+        exiSource = new EXISource(exiFactory);
+        exiReader = exiSource.getXMLReader();
+        exiReader.setContentHandler(serializer);
+    }
+
+    /**
+     * Releases the encoder and decoder, unless their state must be kept between stanzas (when session-wide buffers are
+     * used, or when the stream is one EXI fragment). Released parts are recreated when the next stanza is encoded or
+     * decoded. Callers must make sure that this instance is not in use while this is invoked.
+     *
+     * @return true when the encoder and decoder have been released.
+     */
+    boolean hibernate()
+    {
+        if (isSessionWideBuffers() || isStreaming()) {
+            return false;
+        }
+        release();
+        return true;
+    }
+
+    /**
+     * Releases the encoder and decoder, regardless of their state. Callers must make sure that this instance is not in
+     * use while this is invoked.
+     */
+    void release()
+    {
+        exiResult = null;
+        xmlReader = null;
+        exiSource = null;
+        exiReader = null;
+        serializer = null;
+    }
+
+    /**
+     * Checks if string tables are retained across the documents (stanzas) that are processed by this instance. When
+     * they are, every document must be encoded and decoded exactly once, and in the order in which it is sent.
+     *
+     * @return true when session-wide buffers are used.
+     */
+    boolean isSessionWideBuffers()
+    {
+        return exiFactory instanceof EXISetupConfiguration && ((EXISetupConfiguration) exiFactory).isSessionWideBuffers();
+    }
+
+    /**
+     * Checks if the whole stream is encoded as one EXI fragment, in which every stanza is a top-level element. The state
+     * of the encoder and decoder (including all string tables and learned grammars) then lasts as long as the session.
+     *
+     * @return true when the stream is one EXI fragment.
+     */
+    boolean isStreaming()
+    {
+        return exiFactory instanceof EXISetupConfiguration && ((EXISetupConfiguration) exiFactory).isStreaming();
     }
 
     /**
@@ -113,26 +237,8 @@ public class EXIProcessor
      */
     public static String decodeExiBodySchemaless(byte[] exi) throws TransformerException, EXIException, UnsupportedEncodingException
     {
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer transformer = tf.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-
-        EXIFactory factory = new EXISetupConfiguration();
-        factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX, true);
-
-        SAXSource exiSource = new SAXSource(new InputSource(new ByteArrayInputStream(exi)));
-        SAXDecoder saxDecoder = new SAXDecoder(factory);
-        try {
-            saxDecoder.setFeature(Constants.W3C_EXI_FEATURE_BODY_ONLY, true);
-        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
-            Log.warn("Exception while trying to decode EXI body using no schema files.", e);
-        }
-        exiSource.setXMLReader(saxDecoder);
-
-        ByteArrayOutputStream xmlDecoded = new ByteArrayOutputStream();
-        transformer.transform(exiSource, new StreamResult(xmlDecoded));
-
-        return xmlDecoded.toString(UTF_8.name());
+        final SchemalessCoders coders = SchemalessCoders.get();
+        return coders.decode(coders.bodyDecoder, exi);
     }
 
     /**
@@ -144,21 +250,15 @@ public class EXIProcessor
      */
     public static byte[] encodeSchemaless(String xml, boolean cookie) throws IOException, EXIException, SAXException
     {
+        final SchemalessCoders coders = SchemalessCoders.get();
         ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
-        // start encoding process
-        EXIFactory factory = new EXISetupConfiguration();
-        factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX, true);
-        if (cookie) factory.getEncodingOptions().setOption(EncodingOptions.INCLUDE_COOKIE);
-
-        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-        EXIResult exiResult = new EXIResult(factory);
-
-        exiResult.setOutputStream(osEXI);
-        xmlReader.setContentHandler(exiResult.getHandler());
-        xmlReader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);    // ignorar DTD externos
-
-        xmlReader.parse(new InputSource(new StringReader(xml)));
-
+        if (cookie) {
+            coders.cookieEncoder.setOutputStream(osEXI);
+            coders.cookieXmlReader.parse(new InputSource(new StringReader(xml)));
+        } else {
+            coders.encoder.setOutputStream(osEXI);
+            coders.xmlReader.parse(new InputSource(new StringReader(xml)));
+        }
         return osEXI.toByteArray();
     }
 
@@ -204,20 +304,8 @@ public class EXIProcessor
      */
     public static String decodeSchemaless(byte[] exi) throws TransformerException, EXIException, UnsupportedEncodingException
     {
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer transformer = tf.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-
-        EXIFactory factory = DefaultEXIFactory.newInstance();
-        if (!isEXI(exi[0])) factory.getEncodingOptions().setOption(EncodingOptions.INCLUDE_COOKIE);
-
-        SAXSource exiSource = new SAXSource(new InputSource(new ByteArrayInputStream(exi)));
-        exiSource.setXMLReader(new SAXDecoder(factory));
-
-        ByteArrayOutputStream xmlDecoded = new ByteArrayOutputStream();
-        transformer.transform(exiSource, new StreamResult(xmlDecoded));
-
-        return xmlDecoded.toString(UTF_8.name());
+        final SchemalessCoders coders = SchemalessCoders.get();
+        return coders.decode(isEXI(exi[0]) ? coders.decoder : coders.cookieDecoder, exi);
     }
 
     /**
@@ -242,21 +330,75 @@ public class EXIProcessor
 
     public IoBuffer encodeByteBuffer(String xml, boolean cookie) throws IOException, EXIException, SAXException
     {
-        // encoding
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        exiResult.setOutputStream(baos);
+        return encode(new InputSource(new StringReader(xml)), cookie, false);
+    }
 
-        xmlReader.parse(new InputSource(new StringReader(xml)));
+    /**
+     * Encodes the last element of the stream. When the whole stream is encoded as one EXI fragment, the fragment is
+     * ended as well, after which this instance can not encode anything else.
+     *
+     * @param xml the XML characters to be encoded (typically a 'streamEnd' element).
+     * @return a buffer containing the EXI bytes
+     */
+    public IoBuffer encodeStreamEnd(String xml) throws IOException, EXIException, SAXException
+    {
+        return encode(new InputSource(new StringReader(xml)), false, true);
+    }
+
+    /**
+     * Encodes UTF-8 encoded XML into EXI. The remaining bytes of the buffer are parsed as they are, which avoids
+     * decoding them into characters first.
+     *
+     * @param xml a buffer that contains UTF-8 encoded XML. Its position is advanced to its limit.
+     * @return a buffer containing the EXI bytes
+     */
+    public IoBuffer encodeByteBuffer(IoBuffer xml) throws IOException, EXIException, SAXException
+    {
+        final InputSource source = new InputSource(xml.asInputStream());
+        source.setEncoding(UTF_8.name());
+        return encode(source, false, false);
+    }
 
-        byte[] exi = baos.toByteArray();
+    /**
+     * Encodes XML directly into a pooled, auto-expanding buffer. Space for the EXI cookie is reserved up front, so that
+     * nothing needs to be copied after encoding. Callers that are done with the returned buffer (typically after it has
+     * been written) should release it, using {@link IoBuffer#free()}.
+     *
+     * When the stream is one EXI fragment, the header and start of the fragment are written along with the first
+     * element, and the end of the fragment is written along with the last one.
+     */
+    private IoBuffer encode(InputSource xml, boolean cookie, boolean last) throws IOException, EXIException, SAXException
+    {
+        if (exiResult == null) {
+            createEncoder();
+        }
+        final IoBuffer buffer = allocateBuffer(INITIAL_BUFFER_CAPACITY);
         if (cookie) {
-            byte[] c = "$EXI".getBytes();
-            byte[] aux = new byte[exi.length + c.length];
-            System.arraycopy(exi, 0, aux, c.length, exi.length);
-            System.arraycopy(c, 0, aux, 0, c.length);
-            exi = aux;
+            buffer.put(COOKIE);
+        }
+        try {
+            if (isStreaming()) {
+                streamOutput.target = buffer;
+                if (!streamStarted) {
+                    exiResult.setOutputStream(streamOutput);
+                    exiResult.getHandler().startDocument();
+                    streamStarted = true;
+                }
+                xmlReader.parse(xml);
+                if (last) {
+                    exiResult.getHandler().endDocument();
+                }
+            } else {
+                exiResult.setOutputStream(buffer.asOutputStream());
+                xmlReader.parse(xml);
+            }
+        } catch (IOException | SAXException | RuntimeException e) {
+            buffer.free();
+            throw e;
+        } finally {
+            streamOutput.target = null;
         }
-        return IoBuffer.wrap(exi);
+        return buffer.flip();
     }
 
     public IoBuffer encodeByteBuffer(String xml) throws IOException, EXIException, SAXException, TransformerException
@@ -269,18 +411,11 @@ public class EXIProcessor
      *
      * @param exiBytes The byte array to decode.
      * @return a character array containing the XML characters
-     * @throws EXIException if it is a not well-formed EXI document
+     * @throws TransformerException if it is a not well-formed (or incomplete) EXI document
      */
     protected String decodeByteArray(byte[] exiBytes) throws IOException, EXIException, TransformerException
     {
-        InputStream exiIS = new ByteArrayInputStream(exiBytes);
-        exiSource = new SAXSource(new InputSource(exiIS));
-        exiSource.setXMLReader(exiReader);
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        transformer.transform(exiSource, new StreamResult(baos));
-
-        return baos.toString(UTF_8.name());
+        return decode(new ByteArrayInputStream(exiBytes));
     }
 
     /**
@@ -288,17 +423,58 @@ public class EXIProcessor
      *
      * @param exiIS <code>InputStream</code> to read from.
      * @return a character array containing the XML characters
-     * @throws EXIException if it is a not well-formed EXI document
+     * @throws TransformerException if it is a not well-formed (or incomplete) EXI document
      */
     protected String decode(InputStream exiIS) throws IOException, EXIException, TransformerException
     {
-        exiSource = new SAXSource(new InputSource(exiIS));
-        exiSource.setXMLReader(exiReader);
+        parse(exiIS);
+        return serializer.getXML();
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        transformer.transform(exiSource, new StreamResult(baos));
+    /**
+     * Decodes a stanza from EXI to XML, identifying the stanza by the first start-element event that is decoded.
+     *
+     * @param exiIS <code>InputStream</code> to read from.
+     * @return the decoded XML characters and the name of the root element
+     * @throws TransformerException if it is a not well-formed (or incomplete) EXI document
+     */
+    DecodedStanza decodeStanza(InputStream exiIS) throws IOException, EXIException, TransformerException
+    {
+        if (!isSessionWideBuffers()) {
+            parse(exiIS);
+            return new DecodedStanza(serializer.getXML(), serializer.getRootElementName());
+        }
+        // What a document that can not be decoded added to the string table is undone, so that it can be retried.
+        boolean complete = false;
+        RetainedStringDecoder.beginDocument();
+        try {
+            parse(exiIS);
+            complete = true;
+        } finally {
+            RetainedStringDecoder.endDocument(complete);
+        }
+        return new DecodedStanza(serializer.getXML(), serializer.getRootElementName());
+    }
 
-        return baos.toString(UTF_8.name());
+    /**
+     * Decodes a stream that is one EXI fragment, until the end of the fragment. Every top-level element is passed to the
+     * consumer as soon as it has been decoded. This blocks while the input stream waits for more data.
+     *
+     * @param exiIS    <code>InputStream</code> to read from.
+     * @param consumer receives every stanza that is decoded.
+     * @throws TransformerException if the EXI data is not well-formed
+     */
+    void decodeStream(InputStream exiIS, Consumer<DecodedStanza> consumer) throws TransformerException
+    {
+        ensureDecoder();
+        final XMLReader reader = exiReader;
+        final StanzaSerializer documents = serializer;
+        reader.setContentHandler(new StanzaSplitter(documents, consumer));
+        try {
+            parse(exiIS);
+        } finally {
+            reader.setContentHandler(documents);
+        }
     }
 
     /**
@@ -306,16 +482,215 @@ public class EXIProcessor
      *
      * @param exiStream <code>InputStream</code> to read from.
      * @return a character array containing the XML characters
-     * @throws EXIException if it is a not well-formed EXI document
+     * @throws TransformerException if it is a not well-formed (or incomplete) EXI document
      */
     protected String decodeByteArray(ByteArrayInputStream exiStream) throws IOException, EXIException, TransformerException
     {
-        exiSource = new SAXSource(new InputSource(exiStream));
-        exiSource.setXMLReader(exiReader);
+        return decode(exiStream);
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        transformer.transform(exiSource, new StreamResult(baos));
+    /**
+     * Feeds the SAX events of one EXI document to the serializer. Failures are reported as a TransformerException, as
+     * callers have always relied on that to detect incomplete data.
+     */
+    private void parse(InputStream exiIS) throws TransformerException
+    {
+        ensureDecoder();
+        try {
+            exiReader.parse(new InputSource(exiIS));
+        } catch (SAXException | IOException e) {
+            throw new TransformerException(e);
+        }
+    }
 
-        return baos.toString(UTF_8.name());
+    private void ensureDecoder() throws TransformerException
+    {
+        if (exiReader == null) {
+            try {
+                createDecoder();
+            } catch (EXIException e) {
+                throw new TransformerException(e);
+            }
+        }
+    }
+
+    /**
+     * An output stream that writes into a buffer that can be replaced between writes.
+     */
+    private static final class BufferOutputStream extends OutputStream
+    {
+        IoBuffer target;
+
+        @Override
+        public void write(int b)
+        {
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            target.put(b, off, len);
+        }
+    }
+
+    /**
+     * Serializes every top-level element of an EXI fragment as a separate stanza.
+     */
+    private static final class StanzaSplitter extends DefaultHandler
+    {
+        private final StanzaSerializer serializer;
+        private final Consumer<DecodedStanza> consumer;
+        private int depth;
+        private boolean inStanza;
+
+        StanzaSplitter(StanzaSerializer serializer, Consumer<DecodedStanza> consumer)
+        {
+            this.serializer = serializer;
+            this.consumer = consumer;
+        }
+
+        private void begin()
+        {
+            if (!inStanza) {
+                serializer.startDocument();
+                inStanza = true;
+            }
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri)
+        {
+            begin();
+            serializer.startPrefixMapping(prefix, uri);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            begin();
+            depth++;
+            serializer.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        {
+            serializer.endElement(uri, localName, qName);
+            if (--depth == 0) {
+                inStanza = false;
+                consumer.accept(new DecodedStanza(serializer.getXML(), serializer.getRootElementName()));
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            if (depth > 0) {
+                serializer.characters(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length)
+        {
+            characters(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data)
+        {
+            if (depth > 0) {
+                serializer.processingInstruction(target, data);
+            }
+        }
+    }
+
+    /**
+     * Encoders and decoders used by the static schemaless methods. These are expensive to create, but can be reused
+     * for any number of documents, as long as that is done by one thread at a time. Each thread therefore gets its own
+     * instances. All of them share the same (immutable) schemaless grammars.
+     */
+    private static final class SchemalessCoders
+    {
+        private static final ThreadLocal<SchemalessCoders> instances = new ThreadLocal<>();
+
+        private static Grammars schemalessGrammars;
+
+        final EXIResult encoder, cookieEncoder;
+        final XMLReader xmlReader, cookieXmlReader;
+        final SAXDecoder decoder, cookieDecoder, bodyDecoder;
+        final StanzaSerializer serializer = new StanzaSerializer();
+
+        static SchemalessCoders get() throws EXIException
+        {
+            SchemalessCoders coders = instances.get();
+            if (coders == null) {
+                coders = new SchemalessCoders();
+                instances.set(coders);
+            }
+            return coders;
+        }
+
+        private static synchronized Grammars getSchemalessGrammars() throws EXIException
+        {
+            if (schemalessGrammars == null) {
+                schemalessGrammars = GrammarFactory.newInstance().createSchemaLessGrammars();
+            }
+            return schemalessGrammars;
+        }
+
+        private SchemalessCoders() throws EXIException
+        {
+            final Grammars grammars = getSchemalessGrammars();
+            try {
+                // The (prefix preserving) configuration is used to encode, and to decode EXI bodies.
+                encoder = new EXIResult(createFactory(new EXISetupConfiguration(), grammars, false));
+                xmlReader = createXMLReader(encoder);
+                cookieEncoder = new EXIResult(createFactory(new EXISetupConfiguration(), grammars, true));
+                cookieXmlReader = createXMLReader(cookieEncoder);
+
+                bodyDecoder = new SAXDecoder(createFactory(new EXISetupConfiguration(), grammars, false));
+                try {
+                    bodyDecoder.setFeature(Constants.W3C_EXI_FEATURE_BODY_ONLY, true);
+                } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+                    Log.warn("Exception while trying to decode EXI body using no schema files.", e);
+                }
+
+                // The default configuration is used to decode EXI documents.
+                decoder = new SAXDecoder(createFactory(DefaultEXIFactory.newInstance(), grammars, false));
+                cookieDecoder = new SAXDecoder(createFactory(DefaultEXIFactory.newInstance(), grammars, true));
+            } catch (SAXException e) {
+                throw new EXIException("Error while creating XML reader.", e);
+            }
+        }
+
+        private static EXIFactory createFactory(EXIFactory factory, Grammars grammars, boolean cookie) throws EXIException
+        {
+            factory.setGrammars(grammars);
+            if (cookie) {
+                factory.getEncodingOptions().setOption(EncodingOptions.INCLUDE_COOKIE);
+            }
+            return factory;
+        }
+
+        private static XMLReader createXMLReader(EXIResult exiResult) throws SAXException
+        {
+            final XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+            xmlReader.setContentHandler(exiResult.getHandler());
+            xmlReader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);    // ignorar DTD externos
+            return xmlReader;
+        }
+
+        String decode(SAXDecoder saxDecoder, byte[] exi) throws TransformerException
+        {
+            saxDecoder.setContentHandler(serializer);
+            try {
+                saxDecoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+            } catch (SAXException | IOException e) {
+                throw new TransformerException(e);
+            }
+            return serializer.getXML();
+        }
     }
 }
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The EXI state of one session, which is stored as one session attribute from the moment that EXI is negotiated, until
+ * the session is closed. This holds the negotiated configuration and processor, data of a negotiation message that was
+ * received incompletely, and the state of the EXI codec.
+ *
+ * Sessions that are idle for a while hibernate: the encoder and decoder of their processor are released, and are
+ * recreated from the shared configuration and grammars when the next stanza is encoded or decoded. This does not apply
+ * to processors that keep state between stanzas, nor to sessions from which part of a stanza has been received.
+ *
+ * The monitor of the processor guards encoding, as well as hibernation. Decoding is not done while holding that
+ * monitor (as it can block until more data has been received), but is marked using {@link #beginDecoding(EXIFrameDecoder.Listener)} and
+ * {@link #endDecoding()}, which prevents the processor from hibernating in the mean time.
+ */
+class EXISessionState
+{
+    private static final Logger Log = LoggerFactory.getLogger(EXISessionState.class);
+
+    static final Duration DEFAULT_HIBERNATION_DELAY = Duration.ofMinutes(1);
+
+    private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "exi-session-hibernation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile Duration hibernationDelay = DEFAULT_HIBERNATION_DELAY;
+
+    /**
+     * Defines for how long a session needs to be idle, before its encoder and decoder are released.
+     *
+     * @param delay the idle time, or zero to never release them.
+     */
+    static void setHibernationDelay(Duration delay)
+    {
+        hibernationDelay = delay;
+    }
+
+    /**
+     * Stops the thread that checks for idle sessions. Sessions no longer hibernate afterwards.
+     */
+    static void shutdown()
+    {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the state of a session, creating it when needed.
+     *
+     * @param session the session for which to return state.
+     * @return the state of the session (never null).
+     */
+    static EXISessionState get(IoSession session)
+    {
+        EXISessionState result = (EXISessionState) session.getAttribute(EXIUtils.EXI_SESSION_STATE);
+        if (result == null) {
+            synchronized (session) {
+                result = (EXISessionState) session.getAttribute(EXIUtils.EXI_SESSION_STATE);
+                if (result == null) {
+                    result = new EXISessionState(session);
+                    session.setAttribute(EXIUtils.EXI_SESSION_STATE, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the state of a session, if it has any.
+     */
+    static EXISessionState peek(IoSession session)
+    {
+        return (EXISessionState) session.getAttribute(EXIUtils.EXI_SESSION_STATE);
+    }
+
+    /**
+     * Removes the state of a session, and releases all of its resources.
+     *
+     * @return the state that was removed, or null when the session had none.
+     */
+    static EXISessionState remove(IoSession session)
+    {
+        final EXISessionState result = (EXISessionState) session.removeAttribute(EXIUtils.EXI_SESSION_STATE);
+        if (result != null) {
+            result.close();
+        }
+        return result;
+    }
+
+    private final IoSession session;
+    private final EXIMetrics.SessionMetrics metrics = new EXIMetrics.SessionMetrics();
+
+    // The fields below are set during negotiation, before the codec is used.
+    private volatile EXISetupConfiguration configuration;
+    private volatile EXIProcessor processor;
+    private final AtomicReference<AccumulationBuffer> negotiationData = new AtomicReference<>();
+
+    /**
+     * The number of events that wait for a codec thread (see {@link CodecExecutor}).
+     */
+    private final AtomicInteger queuedCodecEvents = new AtomicInteger();
+
+    /**
+     * The buffers that were allocated to hold encoded data that is being written, which are released once written.
+     */
+    private final Set<IoBuffer> encodedBuffers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    // All fields below are guarded by the monitor of 'processor'.
+    private EXIFrameDecoder frameDecoder;
+    private WriteCoalescer writeCoalescer;
+    private boolean decoding;
+    private boolean hibernated;
+    private boolean closed;
+
+    private volatile long lastActive;
+    private final AtomicBoolean hibernationCheckScheduled = new AtomicBoolean();
+
+    EXISessionState(IoSession session)
+    {
+        this.session = session;
+    }
+
+    /**
+     * Returns the configuration that was negotiated for the session, if any.
+     */
+    EXISetupConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
+    void setConfiguration(EXISetupConfiguration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the processor of the session, if one has been created.
+     */
+    EXIProcessor getProcessor()
+    {
+        return processor;
+    }
+
+    /**
+     * Defines the processor of the session. This can be replaced during negotiation, but not after the codec has been
+     * used.
+     */
+    void setProcessor(EXIProcessor processor)
+    {
+        this.processor = processor;
+    }
+
+    AtomicInteger getQueuedCodecEvents()
+    {
+        return queuedCodecEvents;
+    }
+
+    /**
+     * Records that a buffer was allocated to hold encoded data that is about to be written.
+     *
+     * @param buffer a buffer, allocated by {@link EXIProcessor#allocateBuffer(int)}.
+     * @return the provided buffer.
+     */
+    IoBuffer trackEncoded(IoBuffer buffer)
+    {
+        encodedBuffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Releases a message that has been written, when it is a buffer that was recorded by {@link #trackEncoded(IoBuffer)}.
+     * Any other message is left alone, as it is owned by whoever wrote it.
+     *
+     * @param message a message that has been written.
+     */
+    void releaseEncoded(Object message)
+    {
+        if (message instanceof IoBuffer && encodedBuffers.remove(message)) {
+            ((IoBuffer) message).free();
+        }
+    }
+
+    /**
+     * Returns the data of a negotiation message that was received incompletely, if any.
+     */
+    AccumulationBuffer getNegotiationData()
+    {
+        return negotiationData.get();
+    }
+
+    void setNegotiationData(AccumulationBuffer data)
+    {
+        final AccumulationBuffer previous = negotiationData.getAndSet(data);
+        if (previous != null && previous != data) {
+            previous.free();
+        }
+    }
+
+    /**
+     * Releases the data of a negotiation message that was received incompletely, if any.
+     */
+    void releaseNegotiationData()
+    {
+        setNegotiationData(null);
+    }
+
+    EXIMetrics.SessionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Records that the processor is being used, which rehydrates it when it has hibernated. This must be invoked while
+     * holding the monitor of the processor.
+     */
+    void markActive()
+    {
+        lastActive = System.nanoTime();
+        if (hibernated) {
+            hibernated = false;
+            Log.trace("Rehydrating the EXI processor of session {}", session.hashCode());
+            EXIMetrics.getInstance().recordSessionRehydrated();
+        }
+        scheduleHibernationCheck(hibernationDelay.toNanos());
+    }
+
+    /**
+     * Marks the start of decoding, which must be followed by {@link #endDecoding()}.
+     *
+     * @param listener receives documents that are decoded after waiting for a thread, when the frame decoder is created.
+     * @return the frame decoder of the session.
+     */
+    EXIFrameDecoder beginDecoding(EXIFrameDecoder.Listener listener)
+    {
+        synchronized (processor) {
+            decoding = true;
+            markActive();
+            if (frameDecoder == null) {
+                frameDecoder = new EXIFrameDecoder(processor, listener);
+            }
+            return frameDecoder;
+        }
+    }
+
+    void endDecoding()
+    {
+        synchronized (processor) {
+            decoding = false;
+        }
+    }
+
+    /**
+     * Returns the coalescer of the session, creating it when needed.
+     */
+    WriteCoalescer getWriteCoalescer(NextFilter nextFilter, Duration delay, int size)
+    {
+        synchronized (processor) {
+            if (writeCoalescer == null) {
+                writeCoalescer = new WriteCoalescer(nextFilter, session, delay, size);
+            }
+            return writeCoalescer;
+        }
+    }
+
+    /**
+     * Writes all EXI data that has been gathered by the coalescer of the session, if any.
+     */
+    void flushWrites()
+    {
+        final WriteCoalescer coalescer;
+        synchronized (processor) {
+            coalescer = writeCoalescer;
+        }
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+    }
+
+    private void close()
+    {
+        releaseNegotiationData();
+        if (processor == null) {
+            return;
+        }
+        final WriteCoalescer coalescer;
+        final EXIFrameDecoder decoder;
+        synchronized (processor) {
+            closed = true;
+            coalescer = writeCoalescer;
+            decoder = frameDecoder;
+            writeCoalescer = null;
+            frameDecoder = null;
+        }
+        if (coalescer != null) {
+            coalescer.discard();
+        }
+        if (decoder != null) {
+            decoder.close();
+        }
+        synchronized (processor) {
+            processor.release();
+        }
+    }
+
+    private void scheduleHibernationCheck(long delayNanos)
+    {
+        if (delayNanos > 0 && hibernationCheckScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::checkHibernation, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                Log.trace("Not scheduling a hibernation check, as the plugin is being destroyed.");
+                hibernationCheckScheduled.set(false);
+            }
+        }
+    }
+
+    private void checkHibernation()
+    {
+        hibernationCheckScheduled.set(false);
+        final long delay = hibernationDelay.toNanos();
+        if (delay <= 0) {
+            return;
+        }
+        synchronized (processor) {
+            if (closed || hibernated) {
+                return;
+            }
+            final long idle = System.nanoTime() - lastActive;
+            if (idle < delay) {
+                scheduleHibernationCheck(delay - idle);
+                return;
+            }
+            if (decoding || (frameDecoder != null && frameDecoder.hasPendingData())) {
+                scheduleHibernationCheck(delay);
+                return;
+            }
+            if (processor.hibernate()) {
+                hibernated = true;
+                Log.trace("EXI processor of session {} hibernates after being idle for {} ms", session.hashCode(), TimeUnit.NANOSECONDS.toMillis(idle));
+                EXIMetrics.getInstance().recordSessionHibernated();
+            }
+        }
+    }
+}
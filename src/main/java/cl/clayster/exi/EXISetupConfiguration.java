@@ -17,6 +17,8 @@ package cl.clayster.exi;
 
 import com.siemens.ct.exi.core.CodingMode;
 import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.coder.StringDecoder;
+import com.siemens.ct.exi.core.coder.StringEncoder;
 import com.siemens.ct.exi.core.exceptions.UnsupportedOption;
 import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
 import org.dom4j.Attribute;
@@ -27,6 +29,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
@@ -48,6 +52,7 @@ public class EXISetupConfiguration extends DefaultEXIFactory
     protected String configurationId;
     protected String schemaId;
     protected boolean sessionWideBuffers = false;
+    protected boolean streaming = false;
 
     /**
      * Constructs a new EXISetupConfigurations and initializes it with Default Values.
@@ -125,6 +130,67 @@ public class EXISetupConfiguration extends DefaultEXIFactory
         return this.sessionWideBuffers;
     }
 
+    /**
+     * Defines if the whole XMPP stream is encoded as one EXI fragment, in which every stanza is a top-level element,
+     * rather than as one EXI document per stanza. This is an extension to XEP-0322 that must be agreed on by both
+     * parties. It requires byte-packed alignment, so that every stanza ends on a byte boundary.
+     *
+     * @param streaming true to encode the stream as one fragment.
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+        setFragment(streaming);
+    }
+
+    public boolean isStreaming()
+    {
+        return this.streaming;
+    }
+
+    /**
+     * Creates the string table that is used by an encoder. When session-wide buffers are used, the table is not cleared
+     * at the start of every document, which allows values that were encoded in earlier stanzas of the session to be
+     * referred to as string table hits.
+     */
+    @Override
+    public StringEncoder createStringEncoder()
+    {
+        final StringEncoder encoder = super.createStringEncoder();
+        return sessionWideBuffers ? retainAcrossDocuments(StringEncoder.class, encoder) : encoder;
+    }
+
+    /**
+     * Creates the string table that is used by a decoder. When session-wide buffers are used, the table is not cleared
+     * at the start of every document, mirroring {@link #createStringEncoder()}. What a document that turns out to be
+     * incomplete added to the table can be undone (see {@link RetainedStringDecoder}).
+     */
+    @Override
+    public StringDecoder createStringDecoder()
+    {
+        final StringDecoder decoder = super.createStringDecoder();
+        return sessionWideBuffers ? RetainedStringDecoder.wrap(decoder, this) : decoder;
+    }
+
+    /**
+     * Wraps a string table in a proxy that ignores requests to clear it, which the EXI body coders issue at the start of
+     * every document. All other invocations are delegated.
+     */
+    private static <T> T retainAcrossDocuments(final Class<T> type, final T delegate)
+    {
+        final Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (instance, method, args) -> {
+            if ("clear".equals(method.getName()) && method.getParameterCount() == 0) {
+                return null;
+            }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+        return type.cast(proxy);
+    }
+
     public Path getCanonicalSchemaLocation()
     {
         if (schemaId != null) {
@@ -197,6 +263,9 @@ public class EXISetupConfiguration extends DefaultEXIFactory
         if (isSessionWideBuffers()) {
             sb.append(" sessionWideBuffers='true'");
         }
+        if (isStreaming()) {
+            sb.append(" streaming='true'");
+        }
         sb.append(">");
 
         sb.append("</setup>");
@@ -204,7 +273,8 @@ public class EXISetupConfiguration extends DefaultEXIFactory
     }
 
     /**
-     * Saves this EXI configuration to a file, unless the same configuration has been saved already
+     * Saves this EXI configuration to a file, unless the same configuration has been saved already. Saved
+     * configurations are registered with the {@link ConfigurationRegistry}, after which they must not be modified.
      *
      * @return true if this configuration is saved, false otherwise
      */
@@ -220,26 +290,44 @@ public class EXISetupConfiguration extends DefaultEXIFactory
             Log.warn("Exception while trying to save configuration.", e);
         }
 
+        // A configuration that is registered already has been saved before.
+        try {
+            if (ConfigurationRegistry.getInstance().get(configurationId) != null) {
+                return true;
+            }
+        } catch (DocumentException e) {
+            Log.debug("Unable to parse existing configuration '{}'. It will be overwritten.", configurationId, e);
+        }
+
         Path fileName = EXIUtils.getExiFolder().resolve(configurationId + ".xml");
-        if (Files.exists(fileName)) {
+        if (EXIUtils.writeFile(fileName, content)) {
+            ConfigurationRegistry.getInstance().intern(this);
             return true;
         } else {
-            if (EXIUtils.writeFile(fileName, content)) {
-                return true;
-            } else {
-                Log.warn("Error while trying to save the file. Configurations were not saved.");
-                return false;
-            }
+            Log.warn("Error while trying to save the file. Configurations were not saved.");
+            return false;
         }
     }
 
     /**
-     * Looks a saved EXI configuration with the given configuration ID
+     * Looks a saved EXI configuration with the given configuration ID. The returned instance is shared by all sessions
+     * that use the same configuration, and must not be modified.
      *
      * @param configId the configuration ID to look for
      * @return an EXISetupConfiguration instance if the configuration exists. <i>null</i> otherwise
      */
     public static EXISetupConfiguration parseQuickConfigId(String configId) throws DocumentException
+    {
+        return ConfigurationRegistry.getInstance().get(configId);
+    }
+
+    /**
+     * Reads and parses a saved EXI configuration from disk.
+     *
+     * @param configId the configuration ID to look for
+     * @return an EXISetupConfiguration instance if the configuration exists. <i>null</i> otherwise
+     */
+    static EXISetupConfiguration loadConfiguration(String configId) throws DocumentException
     {
         Path fileLocation = EXIUtils.getExiFolder().resolve(configId + ".xml");
         String content = EXIUtils.readFile(fileLocation);
@@ -272,6 +360,8 @@ public class EXISetupConfiguration extends DefaultEXIFactory
                 exiConfig.setValuePartitionCapacity(Integer.parseInt(att.getValue()));
             } else if (att.getName().equals("sessionWideBuffers")) {
                 exiConfig.setSessionWideBuffers(true);
+            } else if (att.getName().equals("streaming")) {
+                exiConfig.setStreaming(Boolean.parseBoolean(att.getValue()));
             } else if (att.getName().equals("strict")) {
                 if (Boolean.parseBoolean(att.getValue())) {
                     exiConfig.setFidelityOptions(FidelityOptions.createStrict());
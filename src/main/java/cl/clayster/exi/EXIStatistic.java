@@ -0,0 +1,71 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.jivesoftware.openfire.stats.i18nStatistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Exposes a value of {@link EXIMetrics} as an Openfire statistic. Names and descriptions are taken from the plugin's
+ * resource bundle ('stat.[key].name', 'stat.[key].desc' and 'stat.[key].units').
+ */
+class EXIStatistic extends i18nStatistic
+{
+    private final DoubleSupplier sampler;
+    private final boolean partialSample;
+
+    private EXIStatistic(String key, Type type, DoubleSupplier sampler, boolean partialSample)
+    {
+        super(key, "exi", type);
+        this.sampler = sampler;
+        this.partialSample = partialSample;
+    }
+
+    /**
+     * Creates a statistic of which each sample is the increase of a counter since the previous sample.
+     */
+    static EXIStatistic rate(String key, LongSupplier counter)
+    {
+        final AtomicLong previous = new AtomicLong(counter.getAsLong());
+        return new EXIStatistic(key, Type.rate, () -> {
+            final long current = counter.getAsLong();
+            return current - previous.getAndSet(current);
+        }, true);
+    }
+
+    /**
+     * Creates a statistic of which each sample is the current value of a metric.
+     */
+    static EXIStatistic count(String key, DoubleSupplier value)
+    {
+        return new EXIStatistic(key, Type.count, value, false);
+    }
+
+    @Override
+    public double sample()
+    {
+        return sampler.getAsDouble();
+    }
+
+    @Override
+    public boolean isPartialSample()
+    {
+        return partialSample;
+    }
+}
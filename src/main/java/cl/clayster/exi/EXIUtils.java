@@ -16,6 +16,8 @@
 package cl.clayster.exi;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
 import org.dom4j.*;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
@@ -28,11 +30,10 @@ import java.net.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Contains useful methods to execute EXI functions needed by {@link EXIFilter}
@@ -49,9 +50,8 @@ public class EXIUtils
     private static Path exiFolder;
     private static Path defaultCanonicalSchemaLocation;
     final static String CANONICAL_SCHEMA_LOCATION = "canonicalSchemaLocation";
-    final static String EXI_CONFIG = "exiConfig";
     final static String SCHEMA_ID = "schemaId";
-    final static String EXI_PROCESSOR = EXIProcessor.class.getName();
+    final static String EXI_SESSION_STATE = EXISessionState.class.getName();
 
     final protected static char[] hexArray = "0123456789abcdef".toCharArray();
 
@@ -67,6 +67,10 @@ public class EXIUtils
         schemasFileLocation = null;
         exiFolder = null;
         defaultCanonicalSchemaLocation = null;
+        SchemaRegistry.getInstance().clear();
+        ConfigurationRegistry.getInstance().clear();
+        EXIFilter.clearCanonicalSchemas();
+        OptionAdvisor.getInstance().clear();
     }
 
     synchronized static Path getSchemasFileLocation() {
@@ -120,6 +124,56 @@ public class EXIUtils
 	    /**/
     }
 
+    /**
+     * Checks if the remaining content of a buffer starts with the given bytes, without modifying the buffer.
+     *
+     * @param buffer the buffer to check
+     * @param prefix the bytes that are to be found at the current position of the buffer
+     * @return <b>true</b> if the buffer starts with the prefix, <b>false</b> otherwise
+     */
+    public static boolean startsWith(IoBuffer buffer, byte[] prefix)
+    {
+        if (buffer.remaining() < prefix.length) {
+            return false;
+        }
+        final int position = buffer.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the local name of the first element in a text, without parsing that text.
+     *
+     * @param xml the XML text of an element
+     * @return the local name of the element, or <b>null</b> if the text does not start with an element
+     */
+    public static String getRootElementName(String xml)
+    {
+        int start = 0;
+        while (start < xml.length() && Character.isWhitespace(xml.charAt(start))) {
+            start++;
+        }
+        if (start >= xml.length() - 1 || xml.charAt(start) != '<') {
+            return null;
+        }
+        start++;
+        int end = start;
+        while (end < xml.length()) {
+            final char c = xml.charAt(end);
+            if (c == ':') {
+                start = end + 1;
+            } else if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                break;
+            }
+            end++;
+        }
+        return end > start ? xml.substring(start, end) : null;
+    }
+
     public static String readFile(Path fileLocation)
     {
         try {
@@ -166,11 +220,50 @@ public class EXIUtils
     /***************** server only methods ****************/
     public static String downloadXml(String url)
     {
-        StringBuilder sb = new StringBuilder();
+        return downloadXml(url, 0, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Downloads an XML document.
+     *
+     * @param url            the location of the document (must use HTTP or HTTPS).
+     * @param connectTimeout the connect timeout, in milliseconds (zero for no timeout).
+     * @param readTimeout    the read timeout, in milliseconds (zero for no timeout).
+     * @param maximumSize    the maximum size of the document, in bytes.
+     * @return the document, or a (failed) downloadSchemaResponse element that describes why the download failed.
+     */
+    public static String downloadXml(String url, int connectTimeout, int readTimeout, int maximumSize)
+    {
+        return downloadXml(url, connectTimeout, readTimeout, 0, maximumSize);
+    }
+
+    /**
+     * Downloads an XML document.
+     *
+     * The read timeout applies to each read. A server that keeps sending data slowly enough never exceeds it, which is
+     * why the download as a whole can be limited too: it is abandoned once its data is still being read after the
+     * maximum duration (which is therefore exceeded by at most one read timeout).
+     *
+     * @param url             the location of the document (must use HTTP or HTTPS).
+     * @param connectTimeout  the connect timeout, in milliseconds (zero for no timeout).
+     * @param readTimeout     the read timeout, in milliseconds (zero for no timeout).
+     * @param maximumDuration the maximum duration of the whole download, in milliseconds (zero for no maximum).
+     * @param maximumSize     the maximum size of the document, in bytes.
+     * @return the document, or a (failed) downloadSchemaResponse element that describes why the download failed.
+     */
+    public static String downloadXml(String url, int connectTimeout, int readTimeout, int maximumDuration, int maximumSize)
+    {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maximumDuration);
         String responseContent = "<error message=''/>";
         URLConnection uConn = null;
         try {
-            uConn = new URL(url).openConnection();
+            final URL location = new URL(url);
+            if (!"http".equalsIgnoreCase(location.getProtocol()) && !"https".equalsIgnoreCase(location.getProtocol())) {
+                throw new MalformedURLException("Unsupported protocol: " + location.getProtocol());
+            }
+            uConn = location.openConnection();
+            uConn.setConnectTimeout(connectTimeout);
+            uConn.setReadTimeout(readTimeout);
             // look for errors
             switch (((HttpURLConnection) uConn).getResponseCode()) {
                 case -1:
@@ -189,25 +282,50 @@ public class EXIUtils
                     responseContent = "<httpError code='" + ((HttpURLConnection) uConn).getResponseCode() + "' message='Server Error'/>";
                     break;
                 default:    // SUCCESS!
-                    String inputLine;
-                    BufferedReader in = new BufferedReader(new InputStreamReader(uConn.getInputStream()));
-                    while ((inputLine = in.readLine()) != null) {
-                        sb.append(inputLine).append('\n');
+                    if (uConn.getContentLengthLong() > maximumSize) {
+                        responseContent = "<error message='Schema is too large.'/>";
+                        break;
                     }
-                    in.close();
-                    DocumentHelper.parseText(sb.toString());
-                    return sb.substring(0, sb.length());
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (final InputStream in = uConn.getInputStream()) {
+                        final byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            if (out.size() + read > maximumSize) {
+                                break;
+                            }
+                            out.write(buffer, 0, read);
+                            if (maximumDuration > 0 && System.nanoTime() - deadline > 0) {
+                                throw new SocketTimeoutException("Download did not complete within " + maximumDuration + " ms.");
+                            }
+                        }
+                        if (read != -1) {
+                            responseContent = "<error message='Schema is too large.'/>";
+                            break;
+                        }
+                    }
+                    final String content = out.toString("UTF-8");
+                    DocumentHelper.parseText(content);
+                    return content;
             }
         } catch (MalformedURLException e) {
             responseContent = "<invalidUrl message='Unrecognized schema.'/>";
         } catch (SocketTimeoutException e) {
             responseContent = "<timeout message='No response returned.'/>";
         } catch (DocumentException e) {
-            int sc = uConn.getContentType().indexOf(';');
-            String contentType = sc != -1 ? uConn.getContentType().substring(0, sc) : uConn.getContentType();
-            responseContent = "<invalidContentType contentTypeReturned='" + contentType + "'/>";
+            final String contentType = uConn.getContentType();
+            if (contentType == null) {
+                responseContent = "<invalidContentType contentTypeReturned=''/>";
+            } else {
+                int sc = contentType.indexOf(';');
+                responseContent = "<invalidContentType contentTypeReturned='" + (sc != -1 ? contentType.substring(0, sc) : contentType) + "'/>";
+            }
         } catch (Exception e) {
             responseContent = "<error message='No free space left.'/>";
+        } finally {
+            if (uConn instanceof HttpURLConnection) {
+                ((HttpURLConnection) uConn).disconnect();
+            }
         }
 
         return ("<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
@@ -259,63 +377,16 @@ public class EXIUtils
     }
 
     /**
-     * Looks for all schema files (*.xsd) in the given folder and creates two new files:
-     * a canonical schema file which imports all existing schema files;
-     * and an XML file called schema.xml which contains each schema namespace, file size in bytes and its md5Hash code
+     * Looks for all schema files (*.xsd) in the schemas folder, (re)builds the {@link SchemaRegistry} from them and
+     * writes an XML file called schema.xml which contains each schema namespace, file size in bytes and its md5Hash code
      */
     static void generateSchemasFile() throws IOException
     {
-        try {
-            Files.createDirectories(EXIUtils.getSchemasFolder());
-            Files.createDirectories(EXIUtils.getExiFolder());
-
-            // Read all XSDs
-            final Set<Path> xsds;
-            try (final Stream<Path> stream = Files.walk(EXIUtils.getSchemasFolder(), 1)) {
-                xsds = stream
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().endsWith(".xsd"))
-                    .collect(Collectors.toSet());
-            }
-
-            // Process each XSD.
-            final List<Element> schemaElements = new ArrayList<>();
-            for (final Path xsd : xsds) {
-                final byte[] data = Files.readAllBytes(xsd);
-                final String content = new String(data);
-                final org.dom4j.Document doc = DocumentHelper.parseText(content);
-
-                final byte[] hash = MessageDigest.getInstance("MD5").digest(data);
-                final String md5Hash = EXIUtils.bytesToHex(hash);
-                final String namespace = doc.getRootElement().attributeValue("targetNamespace");
-                final String fileLocation = xsd.toAbsolutePath().toString();
-
-                // schemasStanzas also contains schemaLocation to make it easier to generate a new canonicalSchema later.
-                final Element newSchema = DocumentHelper.createElement("schema")
-                    .addAttribute("ns", namespace)
-                    .addAttribute("bytes", String.valueOf(data.length))
-                    .addAttribute("md5Hash", md5Hash)
-                    .addAttribute("schemaLocation", fileLocation);
-                schemaElements.add(newSchema);
-            }
-
-            // XEP-0322 wants canonical schemas to be ordered by namespace.
-            schemaElements.sort(Comparator.comparing(element -> element.attributeValue("ns")));
+        Files.createDirectories(EXIUtils.getSchemasFolder());
+        Files.createDirectories(EXIUtils.getExiFolder());
 
-            // Write to file.
-            final Document schemasFile = DocumentHelper.createDocument();
-            final Element schemas = schemasFile.addElement("schemas");
-            schemaElements.forEach(schemas::add);
-
-            try (final FileWriter fileWriter = new FileWriter(EXIUtils.getSchemasFileLocation().toFile()))
-            {
-                final XMLWriter writer = new XMLWriter(fileWriter, OutputFormat.createPrettyPrint());
-                writer.write(schemasFile);
-                writer.close();
-            }
-        } catch (NoSuchAlgorithmException | DocumentException e) {
-            Log.warn("Exception while trying to generate schema files.", e);
-        }
+        SchemaRegistry.getInstance().refresh();
+        SchemaRegistry.getInstance().store();
     }
 
     /**
@@ -324,14 +395,10 @@ public class EXIUtils
     static void generateDefaultCanonicalSchema() throws IOException
     {
         String[] schemasNeeded = {"http://etherx.jabber.org/streams", "http://jabber.org/protocol/compress/exi"};
-        boolean[] schemasFound = {false, false};
-        Element setup;
-        try {
-            setup = DocumentHelper.parseText(EXIUtils.readFile(EXIUtils.getSchemasFileLocation())).getRootElement();
-        } catch (DocumentException e) {
-            Log.warn("Exception while trying to generate default canonical schema.", e);
-            return;
-        }
+        boolean[] schemasFound = {
+            SchemaRegistry.getInstance().getLocation(schemasNeeded[0]) != null,
+            SchemaRegistry.getInstance().getLocation(schemasNeeded[1]) != null
+        };
         StringBuilder sb = new StringBuilder();
         sb.append("<?xml version='1.0' encoding='UTF-8'?>"
             + "\n\n<xs:schema "
@@ -341,22 +408,6 @@ public class EXIUtils
             + "\n\ttargetNamespace='urn:xmpp:exi:default'"
             + "\n\telementFormDefault='qualified'>");
 
-        Element schema;
-        for (Iterator<Element> i = setup.elementIterator("schema"); i.hasNext(); ) {
-            schema = i.next();
-            String ns = schema.attributeValue("ns");
-            if (ns.equalsIgnoreCase(schemasNeeded[0])) {
-                schemasFound[0] = true;
-                if (schemasFound[1]) {
-                    break;
-                }
-            } else if (ns.equalsIgnoreCase(schemasNeeded[1])) {
-                schemasFound[1] = true;
-                if (schemasFound[0]) {
-                    break;
-                }
-            }
-        }
         if (schemasFound[0] && schemasFound[1]) {
             sb.append("\n\t<xs:import namespace='").append(schemasNeeded[0]).append("'/>");
             sb.append("\n\t<xs:import namespace='").append(schemasNeeded[1]).append("'/>");
@@ -436,6 +487,24 @@ public class EXIUtils
         return result;
     }
 
+    /**
+     * Sends a stream error to a session that uses EXI, ends the stream and closes the session once that is written.
+     *
+     * @param session   the session to close.
+     * @param condition the defined condition of the stream error (eg: 'policy-violation').
+     */
+    static void closeWithStreamError(IoSession session, String condition)
+    {
+        final String error = "<stream:error xmlns:stream='http://etherx.jabber.org/streams'><" + condition + " xmlns='urn:ietf:params:xml:ns:xmpp-streams'/></stream:error>";
+        session.write(IoBuffer.wrap(error.getBytes(UTF_8)));
+        if (session.getFilterChain().contains(EXIAlternativeBindingFilter.filterName)) {
+            session.write(IoBuffer.wrap("<streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>".getBytes(UTF_8)));
+        } else {
+            session.write(IoBuffer.wrap("</stream:stream>".getBytes(UTF_8)));
+        }
+        session.closeOnFlush();
+    }
+
     /**
      * Translates a 'streamStart' element to a corresponding 'stream' start element.
      *
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process-wide, bounded cache of EXI {@link Grammars}.
+ *
+ * Creating grammars from a canonical schema is expensive, as it requires all imported schemas to be parsed and compiled.
+ * Grammars are immutable once created, which allows the same instance to be shared by all sessions that use the same
+ * canonical schema. Entries are keyed by schema ID and the location of the canonical schema. Each entry records the
+ * {@link GrammarsSnapshot#fingerprint(Path) fingerprint} of the canonical schema and of all schemas that it imports, so
+ * that a schema that is rewritten on disk (including an imported one that is edited in place) does not lead to stale
+ * grammars being used. The fingerprint is calculated again only when the size or modification time of any of these
+ * files has changed.
+ *
+ * When multiple threads request grammars that are not cached yet, these are created only once. Grammars that are
+ * created are persisted as a {@link GrammarsSnapshot}, from which they are loaded (instead of being created again)
+ * after a restart.
+ */
+public class GrammarsCache
+{
+    private static final Logger Log = LoggerFactory.getLogger(GrammarsCache.class);
+
+    static final int DEFAULT_MAXIMUM_SIZE = 32;
+
+    private static final GrammarsCache INSTANCE = new GrammarsCache(DEFAULT_MAXIMUM_SIZE);
+
+    public static GrammarsCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile int maximumSize;
+
+    /**
+     * Grammars (or the tasks that are computing them), in least-recently-used order. Guarded by 'this'.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+            if (size() > maximumSize) {
+                Log.debug("Evicting grammars '{}' from the cache.", eldest.getKey());
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    GrammarsCache(int maximumSize)
+    {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Returns grammars for the canonical schema at the provided location, creating them if they're not cached yet.
+     *
+     * @param schemaId        the schema ID that is to be set on the grammars (can be null).
+     * @param canonicalSchema location of the canonical schema from which grammars are created.
+     * @return grammars (never null).
+     * @throws EXIException when the grammars could not be created.
+     */
+    public Grammars getGrammars(final String schemaId, final Path canonicalSchema) throws EXIException
+    {
+        final String key = schemaId + ':' + canonicalSchema.toAbsolutePath().normalize();
+        final Entry entry;
+        final boolean created;
+        try {
+            final Entry existing;
+            synchronized (this) {
+                existing = entries.get(key);
+            }
+            if (existing != null && existing.isUnchanged()) {
+                entry = existing;
+                created = false;
+            } else {
+                final Map<Path, BasicFileAttributes> schemas = new HashMap<>();
+                final String fingerprint = GrammarsSnapshot.fingerprint(canonicalSchema, schemas);
+                synchronized (this) {
+                    final Entry current = entries.get(key);
+                    if (current != null && current.fingerprint.equals(fingerprint)) {
+                        // The files were rewritten with the same content.
+                        current.setSchemas(schemas);
+                        entry = current;
+                        created = false;
+                    } else {
+                        entry = new Entry(fingerprint, schemas, new FutureTask<>(() -> createGrammars(schemaId, canonicalSchema, fingerprint)));
+                        entries.put(key, entry);
+                        created = true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new EXIException("Unable to read canonical schema: " + canonicalSchema, e);
+        }
+
+        final FutureTask<Grammars> task = entry.task;
+
+        if (created) {
+            misses.increment();
+            task.run();
+        } else {
+            hits.increment();
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EXIException("Interrupted while waiting for grammars to be created for: " + canonicalSchema, e);
+        } catch (ExecutionException e) {
+            // Do not cache failures: allow the next invocation to retry.
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof EXIException) {
+                throw (EXIException) cause;
+            }
+            throw new EXIException("Error while creating Grammars.", cause instanceof Exception ? (Exception) cause : e);
+        }
+    }
+
+    private static Grammars createGrammars(final String schemaId, final Path canonicalSchema, final String fingerprint) throws EXIException
+    {
+        Grammars result = null;
+        if (GrammarsSnapshot.isEnabled()) {
+            result = GrammarsSnapshot.load(canonicalSchema, fingerprint);
+        }
+
+        try {
+            if (result == null) {
+                Log.debug("Creating grammars for schema ID '{}' from: {}", schemaId, canonicalSchema);
+                final long start = System.nanoTime();
+                result = GrammarFactory.newInstance().createGrammars(canonicalSchema.toAbsolutePath().toString(), new SchemaResolver());
+                EXIMetrics.getInstance().recordGrammarsBuilt(System.nanoTime() - start);
+                if (GrammarsSnapshot.isEnabled()) {
+                    GrammarsSnapshot.store(canonicalSchema, fingerprint, result);
+                }
+            }
+            if (schemaId != null) {
+                result.setSchemaId(schemaId);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new EXIException("Error while creating Grammars.", e);
+        }
+    }
+
+    /**
+     * Grammars for a canonical schema, and the state of the files of that canonical schema and of the schemas that it
+     * imports, when the fingerprint was last calculated.
+     */
+    private static final class Entry
+    {
+        private final String fingerprint;
+        private final FutureTask<Grammars> task;
+
+        // Guarded by 'this'.
+        private Map<Path, BasicFileAttributes> schemas;
+
+        Entry(final String fingerprint, final Map<Path, BasicFileAttributes> schemas, final FutureTask<Grammars> task)
+        {
+            this.fingerprint = fingerprint;
+            this.task = task;
+            setSchemas(schemas);
+        }
+
+        synchronized boolean isUnchanged()
+        {
+            for (final Map.Entry<Path, BasicFileAttributes> schema : schemas.entrySet()) {
+                final BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(schema.getKey(), BasicFileAttributes.class);
+                } catch (IOException e) {
+                    return false;
+                }
+                if (attributes.size() != schema.getValue().size() || !attributes.lastModifiedTime().equals(schema.getValue().lastModifiedTime())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        synchronized void setSchemas(final Map<Path, BasicFileAttributes> schemas)
+        {
+            this.schemas = schemas;
+        }
+    }
+
+    /**
+     * Removes all cached grammars. This does not reset the statistics.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public synchronized void setMaximumSize(int maximumSize)
+    {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number, but was: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+
+        // Shrink immediately, least recently used first.
+        while (entries.size() > maximumSize) {
+            final String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions.increment();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+}
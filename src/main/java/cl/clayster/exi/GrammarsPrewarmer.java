@@ -0,0 +1,262 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Records how often grammars are used, and creates the most used grammars in the background when the plugin starts.
+ *
+ * Without this, the first session that uses particular grammars after a restart has to wait for those grammars to be
+ * created during its negotiation. Usage is persisted in a file in the EXI folder, so that it survives restarts.
+ *
+ * Grammars are created on a dedicated pool that uses half of the available processors, leaving the other half to the
+ * threads that service sessions.
+ */
+public class GrammarsPrewarmer
+{
+    private static final Logger Log = LoggerFactory.getLogger(GrammarsPrewarmer.class);
+
+    static final int DEFAULT_COUNT = 8;
+
+    static final String DEFAULT_SCHEMA_ID = "urn:xmpp:exi:default";
+
+    /**
+     * The maximum number of schema IDs for which usage is persisted.
+     */
+    private static final int MAXIMUM_PERSISTED = 1024;
+
+    private static final long STORE_INTERVAL_MINUTES = 10;
+
+    /**
+     * Schema IDs of canonical schemas, other than the default, are hashes.
+     */
+    private static final Pattern SCHEMA_ID = Pattern.compile("[0-9a-fA-F]{1,64}");
+
+    private static final GrammarsPrewarmer INSTANCE = new GrammarsPrewarmer();
+
+    public static GrammarsPrewarmer getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, LongAdder> usage = new ConcurrentHashMap<>();
+
+    /**
+     * Guarded by 'this'.
+     */
+    private ForkJoinPool pool;
+    private ScheduledThreadPoolExecutor storeExecutor;
+    private ScheduledFuture<?> periodicStore;
+
+    GrammarsPrewarmer()
+    {
+    }
+
+    /**
+     * Records that grammars for the provided schema ID are used.
+     *
+     * @param schemaId the schema ID, or null for the default canonical schema.
+     */
+    public void recordUsage(final String schemaId)
+    {
+        usage.computeIfAbsent(schemaId == null ? DEFAULT_SCHEMA_ID : schemaId, id -> new LongAdder()).increment();
+    }
+
+    public long getUsage(final String schemaId)
+    {
+        final LongAdder result = usage.get(schemaId == null ? DEFAULT_SCHEMA_ID : schemaId);
+        return result == null ? 0 : result.sum();
+    }
+
+    /**
+     * Returns the schema IDs that are used most, most used first.
+     *
+     * @param count the maximum number of schema IDs to return.
+     * @return schema IDs (never null).
+     */
+    public List<String> getMostUsed(final int count)
+    {
+        return usage.entrySet().stream()
+            .sorted(Map.Entry.<String, LongAdder>comparingByValue((a, b) -> Long.compare(b.sum(), a.sum())))
+            .limit(count)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Loads usage that was persisted earlier, starts creating the grammars that are used most (in the background) and
+     * starts persisting usage periodically.
+     *
+     * @param count the number of grammars to create.
+     */
+    public synchronized void start(final int count)
+    {
+        stop();
+        load();
+
+        final List<String> schemaIds = getMostUsed(count);
+        if (!schemaIds.isEmpty()) {
+            Log.debug("Creating grammars for the {} most used schema ID(s) in the background.", schemaIds.size());
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            for (final String schemaId : schemaIds) {
+                pool.execute(() -> prewarm(schemaId));
+            }
+            // Tasks that have been submitted are still executed.
+            pool.shutdown();
+        }
+
+        storeExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "exi-grammars-usage-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        periodicStore = storeExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                store();
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Unable to store grammars usage.", e);
+            }
+        }, STORE_INTERVAL_MINUTES, STORE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops creating grammars, and persists usage.
+     */
+    public synchronized void stop()
+    {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+        if (storeExecutor != null) {
+            periodicStore.cancel(false);
+            storeExecutor.shutdown();
+            storeExecutor = null;
+            periodicStore = null;
+            try {
+                store();
+            } catch (IOException e) {
+                Log.warn("Unable to store grammars usage.", e);
+            }
+        }
+    }
+
+    private static void prewarm(final String schemaId)
+    {
+        final String id;
+        final Path canonicalSchema;
+        if (DEFAULT_SCHEMA_ID.equals(schemaId)) {
+            // Processors use a null schema ID for the default canonical schema, which is part of the key of cached grammars.
+            id = null;
+            canonicalSchema = EXIUtils.getDefaultCanonicalSchemaLocation();
+        } else if (SCHEMA_ID.matcher(schemaId).matches()) {
+            id = schemaId;
+            canonicalSchema = EXIUtils.getExiFolder().resolve(schemaId + ".xsd");
+        } else {
+            Log.debug("Ignoring invalid schema ID: {}", schemaId);
+            return;
+        }
+        if (!Files.isRegularFile(canonicalSchema)) {
+            Log.debug("Canonical schema for schema ID '{}' no longer exists.", schemaId);
+            return;
+        }
+        try {
+            final long start = System.nanoTime();
+            GrammarsCache.getInstance().getGrammars(id, canonicalSchema);
+            Log.debug("Prepared grammars for schema ID '{}' in {} ms.", schemaId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (EXIException e) {
+            Log.warn("Unable to create grammars for schema ID '{}'.", schemaId, e);
+        }
+    }
+
+    private static Path getLocation()
+    {
+        return EXIUtils.getExiFolder().resolve("usage.properties");
+    }
+
+    private void load()
+    {
+        final Path location = getLocation();
+        if (!Files.isRegularFile(location)) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream in = Files.newInputStream(location)) {
+            properties.load(in);
+        } catch (IOException e) {
+            Log.warn("Unable to load grammars usage from: {}", location, e);
+            return;
+        }
+        for (final String schemaId : properties.stringPropertyNames()) {
+            try {
+                final long count = Long.parseLong(properties.getProperty(schemaId));
+                final LongAdder adder = usage.computeIfAbsent(schemaId, id -> new LongAdder());
+                // Only add what was persisted, if it was not loaded before.
+                final long missing = count - adder.sum();
+                if (missing > 0) {
+                    adder.add(missing);
+                }
+            } catch (NumberFormatException e) {
+                Log.debug("Ignoring invalid usage of schema ID '{}'.", schemaId);
+            }
+        }
+    }
+
+    /**
+     * Persists the usage of the most used grammars.
+     */
+    public void store() throws IOException
+    {
+        final Properties properties = new Properties();
+        for (final String schemaId : getMostUsed(MAXIMUM_PERSISTED)) {
+            properties.setProperty(schemaId, String.valueOf(getUsage(schemaId)));
+        }
+
+        final Path location = getLocation();
+        Files.createDirectories(location.getParent());
+        final Path temporary = Files.createTempFile(location.getParent(), location.getFileName().toString(), ".tmp");
+        try {
+            try (final OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, "Number of times that EXI grammars were used, by schema ID.");
+            }
+            Files.move(temporary, location, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.grammars.Grammars;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Persists compiled {@link Grammars} next to the canonical schema that they were created from, so that they can be
+ * loaded after a restart, rather than being compiled again.
+ *
+ * A snapshot is identified by a fingerprint of the canonical schema, and of all schemas that it (transitively) imports.
+ * A snapshot of which the fingerprint does not match is stale, and is not used.
+ */
+final class GrammarsSnapshot
+{
+    private static final Logger Log = LoggerFactory.getLogger(GrammarsSnapshot.class);
+
+    static final String FILE_EXTENSION = ".grammars";
+
+    /**
+     * Identifies the format of snapshot files. Increment when that format changes in an incompatible way.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static volatile boolean enabled = true;
+
+    /**
+     * Set once a failure to store a snapshot has been logged as a warning. Later failures are likely to have the same
+     * cause, and are logged at debug level only.
+     */
+    private static final AtomicBoolean storeFailureReported = new AtomicBoolean();
+
+    private GrammarsSnapshot()
+    {
+    }
+
+    static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled)
+    {
+        GrammarsSnapshot.enabled = enabled;
+    }
+
+    /**
+     * Returns the location of the snapshot of grammars created from the provided canonical schema.
+     */
+    static Path getLocation(final Path canonicalSchema)
+    {
+        final String fileName = canonicalSchema.getFileName().toString();
+        final String baseName = fileName.endsWith(".xsd") ? fileName.substring(0, fileName.length() - ".xsd".length()) : fileName;
+        return canonicalSchema.resolveSibling(baseName + FILE_EXTENSION);
+    }
+
+    /**
+     * Calculates a fingerprint of a canonical schema, and of all schemas that it imports. Imports are resolved in the
+     * same way as when grammars are created: by namespace (using the {@link SchemaRegistry}) or otherwise by location.
+     *
+     * @param canonicalSchema location of a canonical schema.
+     * @return a fingerprint (never null).
+     * @throws IOException when any of the schemas could not be read.
+     */
+    static String fingerprint(final Path canonicalSchema) throws IOException
+    {
+        return fingerprint(canonicalSchema, new HashMap<>());
+    }
+
+    /**
+     * Calculates a fingerprint of a canonical schema, and of all schemas that it imports. The attributes of every
+     * schema are recorded before it is read, so that a schema that changes afterwards can be detected as such.
+     *
+     * @param canonicalSchema location of a canonical schema.
+     * @param schemas         to which the (absolute) location and attributes of every schema are added.
+     * @return a fingerprint (never null).
+     * @throws IOException when any of the schemas could not be read.
+     */
+    static String fingerprint(final Path canonicalSchema, final Map<Path, BasicFileAttributes> schemas) throws IOException
+    {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is required to be supported by every implementation of the Java platform.", e);
+        }
+
+        final SAXReader reader = new SAXReader();
+        try {
+            reader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (SAXException e) {
+            Log.debug("Unable to disable loading of external DTDs.", e);
+        }
+
+        final Deque<Path> pending = new ArrayDeque<>();
+        pending.add(canonicalSchema);
+        while (!pending.isEmpty()) {
+            final Path schema = pending.poll().toAbsolutePath().normalize();
+            if (schemas.containsKey(schema)) {
+                continue;
+            }
+            schemas.put(schema, Files.readAttributes(schema, BasicFileAttributes.class));
+            final byte[] data = Files.readAllBytes(schema);
+            md.update(schema.toString().getBytes(UTF_8));
+            md.update(data);
+
+            final Document document;
+            try {
+                document = reader.read(new ByteArrayInputStream(data));
+            } catch (DocumentException e) {
+                throw new IOException("Unable to parse schema: " + schema, e);
+            }
+            for (final Element element : document.getRootElement().elements()) {
+                final String name = element.getName();
+                if (!"import".equals(name) && !"include".equals(name) && !"redefine".equals(name)) {
+                    continue;
+                }
+                final Path resolved = resolve(schema, element.attributeValue("namespace"), element.attributeValue("schemaLocation"));
+                if (resolved != null) {
+                    pending.add(resolved);
+                }
+            }
+        }
+        return EXIUtils.bytesToHex(md.digest());
+    }
+
+    private static Path resolve(final Path schema, final String namespace, final String schemaLocation) throws IOException
+    {
+        // Mirrors SchemaResolver, which does not resolve the namespace of canonical schemas.
+        if (namespace != null && !"urn:xmpp:exi:cs".equals(namespace)) {
+            final Path location = SchemaRegistry.getInstance().getLocation(namespace);
+            if (location != null) {
+                return location;
+            }
+        }
+        if (schemaLocation != null && !schemaLocation.contains(":/")) {
+            final Path location = schema.resolveSibling(schemaLocation);
+            if (Files.isRegularFile(location)) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads grammars from the snapshot of the provided canonical schema.
+     *
+     * @param canonicalSchema location of a canonical schema.
+     * @param fingerprint     the current fingerprint of the canonical schema.
+     * @return grammars, or null when no (current, readable) snapshot exists.
+     */
+    static Grammars load(final Path canonicalSchema, final String fingerprint)
+    {
+        final Path location = getLocation(canonicalSchema);
+        if (!Files.isRegularFile(location)) {
+            return null;
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(location)))) {
+            if (in.readInt() != FORMAT_VERSION || !fingerprint.equals(in.readUTF())) {
+                Log.debug("Ignoring stale grammars snapshot: {}", location);
+                return null;
+            }
+            final Object result = new GrammarsInputStream(in).readObject();
+            Log.debug("Loaded grammars from snapshot: {}", location);
+            return (Grammars) result;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Log.debug("Unable to load grammars from snapshot: {}", location, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of grammars created from the provided canonical schema. Failures are logged (the first one as a
+     * warning), but otherwise ignored: grammars are created from the canonical schema when no snapshot is available.
+     *
+     * @param canonicalSchema location of the canonical schema from which the grammars were created.
+     * @param fingerprint     the fingerprint of the canonical schema at the time the grammars were created.
+     * @param grammars        the grammars to persist.
+     */
+    static void store(final Path canonicalSchema, final String fingerprint, final Grammars grammars)
+    {
+        final Path location = getLocation(canonicalSchema);
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(location.getParent(), location.getFileName().toString(), ".tmp");
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(fingerprint);
+                final ObjectOutputStream objects = new ObjectOutputStream(out);
+                objects.writeObject(grammars);
+                objects.flush();
+            }
+            Files.move(temporary, location, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Log.debug("Stored grammars snapshot: {}", location);
+        } catch (IOException e) {
+            // Notably, NotSerializableException when grammars of this EXIficient version cannot be serialized.
+            if (storeFailureReported.compareAndSet(false, true)) {
+                Log.warn("Unable to store grammars snapshot: {}. Grammars will be created again after a restart. Further failures to store snapshots are logged at debug level.", location, e);
+            } else {
+                Log.debug("Unable to store grammars snapshot: {}", location, e);
+            }
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    Log.debug("Unable to remove temporary file: {}", temporary, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deserializes only classes that can be part of grammars, as a defense against tampered snapshot files.
+     */
+    private static final class GrammarsInputStream extends ObjectInputStream
+    {
+        GrammarsInputStream(final InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException
+        {
+            final String name = desc.getName().replaceFirst("^\\[+L?", "");
+            if (name.length() > 1 && !name.startsWith("com.siemens.ct.exi.") && !name.startsWith("java.") && !name.startsWith("javax.xml.")) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in a grammars snapshot.");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
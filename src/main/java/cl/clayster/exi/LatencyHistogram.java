@@ -0,0 +1,105 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, of which the buckets have power-of-two boundaries (in microseconds). Recording is
+ * lock-free, and cheap enough to be done for every stanza.
+ */
+public class LatencyHistogram
+{
+    static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the average of all recorded durations.
+     *
+     * @return a duration in microseconds (zero if nothing was recorded).
+     */
+    public double getMeanMicros()
+    {
+        final long c = count.sum();
+        return c == 0 ? 0 : totalNanos.sum() / 1000.0 / c;
+    }
+
+    /**
+     * Returns an upper bound of the duration below which the given fraction of recorded durations falls.
+     *
+     * @param fraction a value between 0 and 1, for example 0.99.
+     * @return a duration in microseconds, accurate to a power of two (zero if nothing was recorded).
+     */
+    public long getPercentileMicros(double fraction)
+    {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long threshold = (long) Math.ceil(total * fraction);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= threshold) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public void reset()
+    {
+        for (final LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+}
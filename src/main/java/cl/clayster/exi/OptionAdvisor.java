@@ -0,0 +1,345 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recommends EXI options, based on stanzas that are sampled from the traffic of EXI sessions.
+ *
+ * Clients choose their alignment and value partition settings without knowing what suits their traffic best. Sampled
+ * stanzas are encoded in the background, using a number of candidate configurations that differ from the one that was
+ * negotiated by the client in coding mode, and in value partition settings. Once enough stanzas have been sampled, the
+ * candidate that produces the least data (or, when the difference is negligible, uses the least CPU) is saved, and its
+ * configuration ID is published as the recommendation for all clients that use the same schemas, fidelity options,
+ * block size and buffer retention (the options that candidates do not vary). Clients learn about it from the setup
+ * response, and can use it for quick setup when they connect next.
+ */
+public class OptionAdvisor
+{
+    private static final Logger Log = LoggerFactory.getLogger(OptionAdvisor.class);
+
+    /**
+     * The number of samples after which a recommendation is (re)evaluated.
+     */
+    static final int SAMPLES_PER_EVALUATION = 50;
+
+    /**
+     * Candidates that produce less than this fraction more data than the smallest one are compared by CPU usage.
+     */
+    static final double SIZE_TOLERANCE = 0.05;
+
+    static final int MAXIMUM_PROFILES = 256;
+
+    private static final CodingMode[] CODING_MODES = { CodingMode.BIT_PACKED, CodingMode.BYTE_PACKED, CodingMode.PRE_COMPRESSION, CodingMode.COMPRESSION };
+
+    private static final OptionAdvisor INSTANCE = new OptionAdvisor();
+
+    public static OptionAdvisor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(256), runnable -> {
+        final Thread thread = new Thread(runnable, "exi-option-advisor");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private final AtomicLong stanzas = new AtomicLong();
+
+    private volatile int sampleRate = 0;
+
+    /**
+     * Recommended configuration IDs, by the options that are not varied.
+     */
+    private final Map<ProfileKey, String> recommendations = new ConcurrentHashMap<>();
+
+    /**
+     * Measurements, by the options that are not varied, in least-recently-used order. Guarded by 'this'.
+     */
+    private final Map<ProfileKey, Profile> profiles = new LinkedHashMap<ProfileKey, Profile>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ProfileKey, Profile> eldest)
+        {
+            return size() > MAXIMUM_PROFILES;
+        }
+    };
+
+    OptionAdvisor()
+    {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Defines how many stanzas are encoded for every stanza that is sampled.
+     *
+     * @param sampleRate one in this many stanzas is sampled, or zero to sample none.
+     */
+    public void setSampleRate(int sampleRate)
+    {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate must not be negative, but was: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Offers a stanza that is about to be encoded by a processor. A copy of some of the stanzas is analyzed in the
+     * background. The buffer is not modified.
+     *
+     * @param processor the processor of the session to which the stanza is sent.
+     * @param xml       a buffer that contains the UTF-8 encoded stanza.
+     */
+    void offer(final EXIProcessor processor, final IoBuffer xml)
+    {
+        final int rate = sampleRate;
+        if (rate == 0 || stanzas.incrementAndGet() % rate != 0) {
+            return;
+        }
+        if (!(processor.exiFactory instanceof EXISetupConfiguration)) {
+            return;
+        }
+        final EXISetupConfiguration configuration = (EXISetupConfiguration) processor.exiFactory;
+        if (configuration.isStreaming()) {
+            // The (byte-packed) alignment of these sessions is not open to change.
+            return;
+        }
+        final byte[] sample = new byte[xml.remaining()];
+        xml.duplicate().get(sample);
+        executor.execute(() -> analyze(configuration, sample));
+    }
+
+    /**
+     * Encodes a stanza using all candidate configurations for the provided configuration, and updates the
+     * recommendation when enough stanzas have been analyzed.
+     */
+    void analyze(final EXISetupConfiguration configuration, final byte[] stanza)
+    {
+        final ProfileKey key = new ProfileKey(configuration);
+        final Profile profile;
+        synchronized (this) {
+            profile = profiles.computeIfAbsent(key, k -> new Profile(configuration));
+        }
+
+        final String recommendation;
+        synchronized (profile) {
+            for (final Candidate candidate : profile.candidates) {
+                candidate.measure(stanza);
+            }
+            if (++profile.samples % SAMPLES_PER_EVALUATION != 0) {
+                return;
+            }
+            recommendation = profile.recommend();
+        }
+        if (recommendation != null) {
+            final String previous = recommendations.put(key, recommendation);
+            if (!recommendation.equals(previous)) {
+                Log.debug("Recommending EXI configuration '{}' to clients that use schema ID '{}'", recommendation, configuration.getSchemaId());
+            }
+        }
+    }
+
+    /**
+     * Returns the configuration that is recommended to clients that use the same schemas, fidelity options, block size
+     * and buffer retention as the provided configuration.
+     *
+     * @param configuration a negotiated configuration.
+     * @return a configuration ID, or null when there is no recommendation that differs from the provided configuration.
+     */
+    public String getRecommendation(final EXISetupConfiguration configuration)
+    {
+        final String result = recommendations.get(new ProfileKey(configuration));
+        return result == null || result.equals(configuration.getConfigurationId()) ? null : result;
+    }
+
+    public synchronized void clear()
+    {
+        profiles.clear();
+        recommendations.clear();
+    }
+
+    /**
+     * The options of a configuration that are the same for all of its candidates.
+     */
+    private static final class ProfileKey
+    {
+        private static final String[] FEATURES = { FidelityOptions.FEATURE_COMMENT, FidelityOptions.FEATURE_DTD, FidelityOptions.FEATURE_LEXICAL_VALUE, FidelityOptions.FEATURE_PI, FidelityOptions.FEATURE_PREFIX, FidelityOptions.FEATURE_SC };
+
+        private final String schemaId;
+        private final boolean strict;
+        private final List<String> features = new ArrayList<>();
+        private final int blockSize;
+        private final boolean sessionWideBuffers;
+
+        ProfileKey(final EXISetupConfiguration configuration)
+        {
+            // The fidelity options of a configuration can change, so these are copied.
+            final FidelityOptions fidelityOptions = configuration.getFidelityOptions();
+            for (final String feature : FEATURES) {
+                if (fidelityOptions.isFidelityEnabled(feature)) {
+                    features.add(feature);
+                }
+            }
+            this.schemaId = configuration.getSchemaId();
+            this.strict = fidelityOptions.isStrict();
+            this.blockSize = configuration.getBlockSize();
+            this.sessionWideBuffers = configuration.isSessionWideBuffers();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final ProfileKey that = (ProfileKey) o;
+            return strict == that.strict && blockSize == that.blockSize && sessionWideBuffers == that.sessionWideBuffers
+                && Objects.equals(schemaId, that.schemaId) && features.equals(that.features);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(schemaId, strict, features, blockSize, sessionWideBuffers);
+        }
+    }
+
+    /**
+     * Measurements of all candidate configurations for one set of options that are not varied. Guarded by itself.
+     */
+    private static final class Profile
+    {
+        private final EXISetupConfiguration base;
+        private final List<Candidate> candidates = new ArrayList<>();
+        private long samples;
+
+        Profile(final EXISetupConfiguration base)
+        {
+            this.base = base;
+            for (final CodingMode codingMode : CODING_MODES) {
+                candidates.add(new Candidate(base, codingMode, base.getValueMaxLength(), base.getValuePartitionCapacity()));
+                candidates.add(new Candidate(base, codingMode, -1, -1));
+            }
+        }
+
+        /**
+         * Saves the best candidate.
+         *
+         * @return the configuration ID of the best candidate, or null if it could not be saved.
+         */
+        String recommend()
+        {
+            long smallest = Long.MAX_VALUE;
+            for (final Candidate candidate : candidates) {
+                if (candidate.failed == 0) {
+                    smallest = Math.min(smallest, candidate.bytes);
+                }
+            }
+            Candidate best = null;
+            for (final Candidate candidate : candidates) {
+                if (candidate.failed == 0 && candidate.bytes <= smallest * (1 + SIZE_TOLERANCE) && (best == null || candidate.nanos < best.nanos)) {
+                    best = candidate;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+
+            final EXISetupConfiguration recommended = best.createConfiguration(base.isSessionWideBuffers());
+            try {
+                if (recommended.saveConfiguration()) {
+                    return ConfigurationRegistry.getInstance().intern(recommended).getConfigurationId();
+                }
+            } catch (IOException e) {
+                Log.warn("Unable to save a recommended EXI configuration for schema ID '{}'", base.getSchemaId(), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A configuration that is tried for sampled stanzas, and its measurements.
+     */
+    private static final class Candidate
+    {
+        private final EXISetupConfiguration base;
+        private final CodingMode codingMode;
+        private final int valueMaxLength;
+        private final int valuePartitionCapacity;
+        private EXIProcessor processor;
+        private long bytes;
+        private long nanos;
+        private long failed;
+
+        Candidate(final EXISetupConfiguration base, final CodingMode codingMode, final int valueMaxLength, final int valuePartitionCapacity)
+        {
+            this.base = base;
+            this.codingMode = codingMode;
+            this.valueMaxLength = valueMaxLength;
+            this.valuePartitionCapacity = valuePartitionCapacity;
+        }
+
+        EXISetupConfiguration createConfiguration(final boolean sessionWideBuffers)
+        {
+            final EXISetupConfiguration result = new EXISetupConfiguration();
+            result.setSchemaId(base.schemaId);
+            result.setFidelityOptions(base.getFidelityOptions());
+            result.setBlockSize(base.getBlockSize());
+            result.setCodingMode(codingMode);
+            result.setValueMaxLength(valueMaxLength);
+            result.setValuePartitionCapacity(valuePartitionCapacity);
+            result.setSessionWideBuffers(sessionWideBuffers);
+            return result;
+        }
+
+        void measure(final byte[] stanza)
+        {
+            try {
+                if (processor == null) {
+                    // String tables are not retained between samples, as those come from different sessions.
+                    processor = new EXIProcessor(createConfiguration(false));
+                }
+                final long start = System.nanoTime();
+                final IoBuffer encoded = processor.encodeByteBuffer(IoBuffer.wrap(stanza));
+                nanos += System.nanoTime() - start;
+                bytes += encoded.remaining();
+                encoded.free();
+            } catch (EXIException | IOException | SAXException | RuntimeException e) {
+                Log.trace("Unable to encode a sampled stanza using coding mode {}", codingMode, e);
+                failed++;
+            }
+        }
+    }
+}
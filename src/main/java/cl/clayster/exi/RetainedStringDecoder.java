@@ -0,0 +1,228 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.coder.StringDecoder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The string table of a decoder that is retained across documents, as is done when session-wide buffers are used.
+ *
+ * Requests to clear the table, which the EXI body decoder issues at the start of every document, are ignored. The
+ * values that are added while a document is being decoded can be undone, when that document turns out to be incomplete:
+ * the table is then cleared, after which the values that were added by earlier documents are added again, in their
+ * original order. This allows a document to be decoded straight from the data that has been received so far, and to be
+ * decoded again from its start once the rest of its data has arrived.
+ *
+ * A value that is read, and that is not (by identity) a value that is already in the table, has been added to the
+ * table by the decoder, unless the value options prevent that. Only as many values are remembered as the table can
+ * hold: when it is bounded by valuePartitionCapacity, values are replayed at the positions they had in the table.
+ *
+ * Documents are tracked per thread: {@link #beginDocument()} and {@link #endDocument(boolean)} must surround decoding
+ * of a document, on the thread that decodes it. Instances are not thread-safe.
+ */
+final class RetainedStringDecoder implements InvocationHandler
+{
+    /**
+     * The table that is used by the document that is being decoded on a thread, if any.
+     */
+    private static final ThreadLocal<RetainedStringDecoder[]> decoding = new ThreadLocal<>();
+
+    private static volatile Method addValue;
+
+    /**
+     * Wraps a string table of a decoder, so that it is retained across documents.
+     *
+     * @param delegate the table to wrap.
+     * @param options  the options that the table was created with.
+     * @return the wrapped table.
+     */
+    static StringDecoder wrap(StringDecoder delegate, EXIFactory options)
+    {
+        final RetainedStringDecoder handler = new RetainedStringDecoder(delegate, options.getValueMaxLength(), options.getValuePartitionCapacity(), options.isLocalValuePartitions());
+        return (StringDecoder) Proxy.newProxyInstance(StringDecoder.class.getClassLoader(), new Class<?>[] { StringDecoder.class }, handler);
+    }
+
+    /**
+     * Marks the start of decoding of a document by the current thread.
+     */
+    static void beginDocument()
+    {
+        decoding.set(new RetainedStringDecoder[1]);
+    }
+
+    /**
+     * Marks the end of decoding of a document by the current thread.
+     *
+     * @param complete true when the document was decoded, false when the values that it added are to be undone.
+     */
+    static void endDocument(boolean complete)
+    {
+        final RetainedStringDecoder[] used = decoding.get();
+        decoding.remove();
+        if (used == null || used[0] == null) {
+            return;
+        }
+        if (complete) {
+            used[0].commit();
+        } else {
+            used[0].rollback();
+        }
+    }
+
+    private final StringDecoder delegate;
+    private final int valueMaxLength;
+    private final int valuePartitionCapacity;
+
+    /**
+     * True when remembering the last values that fit in the table suffices to restore it (which is not the case when
+     * values are also removed from local partitions).
+     */
+    private final boolean trimmable;
+
+    /**
+     * Context and value of the values that are in the table, in the order in which they were added.
+     */
+    private final List<Object[]> values = new ArrayList<>();
+    private final Set<Object> known = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The number of values that have ever been added to the table.
+     */
+    private long added;
+
+    private int committedValues;
+    private long committedAdded;
+
+    private RetainedStringDecoder(StringDecoder delegate, int valueMaxLength, int valuePartitionCapacity, boolean localValuePartitions)
+    {
+        this.delegate = delegate;
+        this.valueMaxLength = valueMaxLength;
+        this.valuePartitionCapacity = valuePartitionCapacity;
+        this.trimmable = valuePartitionCapacity > 0 && !localValuePartitions;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        final RetainedStringDecoder[] used = decoding.get();
+        if (used != null) {
+            used[0] = this;
+        }
+        if ("clear".equals(method.getName()) && method.getParameterCount() == 0) {
+            return null;
+        }
+        final Object result;
+        try {
+            result = method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        if ("readValue".equals(method.getName()) && method.getParameterCount() == 2 && result != null && !known.contains(result) && isStored(result)) {
+            values.add(new Object[] { args[0], result });
+            known.add(result);
+            added++;
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a value that was not in the table, was added to it by the decoder (as opposed to being too long, or
+     * empty).
+     */
+    private boolean isStored(Object value)
+    {
+        final int length = value.toString().length();
+        return length > 0 && (valueMaxLength < 0 || length <= valueMaxLength) && valuePartitionCapacity != 0;
+    }
+
+    private void commit()
+    {
+        if (trimmable && values.size() >= 2 * valuePartitionCapacity) {
+            // Values before the last 'capacity' ones have been overwritten, and are no longer needed to restore the table.
+            final List<Object[]> overwritten = values.subList(0, values.size() - valuePartitionCapacity);
+            for (final Object[] value : overwritten) {
+                known.remove(value[1]);
+            }
+            overwritten.clear();
+        }
+        committedValues = values.size();
+        committedAdded = added;
+    }
+
+    private void rollback()
+    {
+        if (added == committedAdded) {
+            return;
+        }
+        final List<Object[]> undone = values.subList(committedValues, values.size());
+        for (final Object[] value : undone) {
+            known.remove(value[1]);
+        }
+        undone.clear();
+        added = committedAdded;
+
+        delegate.clear();
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            final Method add = getAddValue();
+            final long forgotten = added - values.size();
+            if (forgotten > 0) {
+                // The table has wrapped around. Placeholders make the remembered values end up at their original
+                // positions, and are themselves overwritten by those values.
+                final Object context = values.get(0)[0];
+                final Class<?> type = values.get(0)[1].getClass();
+                for (int i = 0; i < forgotten % valuePartitionCapacity; i++) {
+                    add.invoke(delegate, context, type.getConstructor(String.class).newInstance(String.valueOf((char) (0xE000 + i))));
+                }
+            }
+            for (final Object[] value : values) {
+                add.invoke(delegate, value[0], value[1]);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to restore the string table of an EXI decoder.", e);
+        }
+    }
+
+    private static Method getAddValue() throws NoSuchMethodException
+    {
+        Method result = addValue;
+        if (result == null) {
+            for (final Method method : StringDecoder.class.getMethods()) {
+                if ("addValue".equals(method.getName()) && method.getParameterCount() == 2) {
+                    result = method;
+                }
+            }
+            if (result == null) {
+                throw new NoSuchMethodException("StringDecoder.addValue");
+            }
+            addValue = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads schemas that clients ask the server to download, on behalf of all sessions.
+ *
+ * Downloads are executed by a small, bounded pool of threads, so that a slow server does not block the I/O thread of
+ * the session that asked for the download (nor any other session that is serviced by that thread). Concurrent requests
+ * for the same URL are collapsed into one download, and schemas that have been downloaded recently are returned from
+ * memory.
+ */
+public class SchemaDownloader
+{
+    private static final Logger Log = LoggerFactory.getLogger(SchemaDownloader.class);
+
+    static final int DEFAULT_MAXIMUM_DOWNLOADS = 4;
+    static final int DEFAULT_MAXIMUM_QUEUED = 64;
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    static final Duration DEFAULT_MAXIMUM_DURATION = Duration.ofSeconds(60);
+    static final int DEFAULT_MAXIMUM_SIZE = 4 * 1024 * 1024;
+    static final int DEFAULT_CACHE_SIZE = 64;
+    static final Duration DEFAULT_CACHE_EXPIRY = Duration.ofMinutes(10);
+
+    private static final SchemaDownloader INSTANCE = new SchemaDownloader();
+
+    public static SchemaDownloader getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_MAXIMUM_DOWNLOADS, DEFAULT_MAXIMUM_DOWNLOADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(DEFAULT_MAXIMUM_QUEUED), new ThreadPoolExecutor.AbortPolicy());
+
+    /**
+     * Downloads that are in progress, by URL.
+     */
+    private final ConcurrentMap<String, CompletableFuture<String>> inProgress = new ConcurrentHashMap<>();
+
+    /**
+     * Schemas that have been downloaded successfully, in least-recently-used order. Guarded by 'this'.
+     */
+    private final Map<String, CachedDownload> cache = new LinkedHashMap<String, CachedDownload>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedDownload> eldest)
+        {
+            return size() > DEFAULT_CACHE_SIZE;
+        }
+    };
+
+    private volatile int timeout = (int) DEFAULT_TIMEOUT.toMillis();
+    private volatile int maximumDuration = (int) DEFAULT_MAXIMUM_DURATION.toMillis();
+    private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    SchemaDownloader()
+    {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        executor.setThreadFactory(runnable -> {
+            final Thread thread = new Thread(runnable, "exi-schema-download-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Downloads the schema at the provided location.
+     *
+     * The returned future completes with the content of the schema, or with a (failed) downloadSchemaResponse element
+     * that describes why the download failed, as returned by {@link EXIUtils#downloadXml(String, int, int, int)}. It
+     * is completed by a download thread, unless the schema was downloaded recently.
+     *
+     * @param url the location of the schema.
+     * @return the result of the download (never completes exceptionally).
+     */
+    public CompletableFuture<String> download(final String url)
+    {
+        synchronized (this) {
+            final CachedDownload cached = cache.get(url);
+            if (cached != null) {
+                if (cached.expires - System.nanoTime() > 0) {
+                    Log.debug("Using recently downloaded schema from: {}", url);
+                    return CompletableFuture.completedFuture(cached.content);
+                }
+                cache.remove(url);
+            }
+        }
+
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final CompletableFuture<String> existing = inProgress.putIfAbsent(url, result);
+        if (existing != null) {
+            Log.debug("Waiting for download of schema that is already in progress: {}", url);
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                String content;
+                try {
+                    Log.debug("Downloading schema from: {}", url);
+                    content = EXIUtils.downloadXml(url, timeout, timeout, maximumDuration, maximumSize);
+                } catch (RuntimeException e) {
+                    Log.warn("Unexpected exception while downloading schema from: {}", url, e);
+                    content = failure(url, "<error message='Unable to download schema.'/>");
+                }
+                if (!content.startsWith("<downloadSchemaResponse ")) {
+                    synchronized (this) {
+                        cache.put(url, new CachedDownload(content, System.nanoTime() + DEFAULT_CACHE_EXPIRY.toNanos()));
+                    }
+                }
+                // Remove only after caching: a request that does not find this download any more finds its result.
+                inProgress.remove(url, result);
+                result.complete(content);
+            });
+        } catch (RejectedExecutionException e) {
+            Log.warn("Too many schema downloads are in progress. Rejecting download of: {}", url);
+            inProgress.remove(url, result);
+            result.complete(failure(url, "<error message='Too many downloads in progress.'/>"));
+        }
+        return result;
+    }
+
+    private static String failure(final String url, final String responseContent)
+    {
+        return "<downloadSchemaResponse xmlns='http://jabber.org/protocol/compress/exi' url='" + url
+            + "' result='false'>" + responseContent + "</downloadSchemaResponse>";
+    }
+
+    public synchronized void clear()
+    {
+        cache.clear();
+    }
+
+    public int getMaximumDownloads()
+    {
+        return executor.getMaximumPoolSize();
+    }
+
+    public synchronized void setMaximumDownloads(int maximumDownloads)
+    {
+        if (maximumDownloads < 1) {
+            throw new IllegalArgumentException("Maximum downloads must be a positive number, but was: " + maximumDownloads);
+        }
+        // The core size may never exceed the maximum size, which determines the order of these invocations.
+        if (maximumDownloads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maximumDownloads);
+            executor.setCorePoolSize(maximumDownloads);
+        } else {
+            executor.setCorePoolSize(maximumDownloads);
+            executor.setMaximumPoolSize(maximumDownloads);
+        }
+    }
+
+    public Duration getTimeout()
+    {
+        return Duration.ofMillis(timeout);
+    }
+
+    /**
+     * Sets the timeout that is used both to connect to, and to read from the server that hosts a schema.
+     */
+    public void setTimeout(Duration timeout)
+    {
+        this.timeout = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+    }
+
+    public Duration getMaximumDuration()
+    {
+        return Duration.ofMillis(maximumDuration);
+    }
+
+    /**
+     * Sets the maximum amount of time that the download of one schema can take as a whole.
+     */
+    public void setMaximumDuration(Duration maximumDuration)
+    {
+        this.maximumDuration = (int) Math.min(Integer.MAX_VALUE, maximumDuration.toMillis());
+    }
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum size (in bytes) of a schema that is downloaded.
+     */
+    public void setMaximumSize(int maximumSize)
+    {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number, but was: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    private static final class CachedDownload
+    {
+        private final String content;
+        private final long expires;
+
+        private CachedDownload(final String content, final long expires)
+        {
+            this.content = content;
+            this.expires = expires;
+        }
+    }
+}
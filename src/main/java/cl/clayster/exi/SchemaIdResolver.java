@@ -18,13 +18,9 @@ package cl.clayster.exi;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.Grammars;
 import com.siemens.ct.exi.grammars.GrammarFactory;
-import org.dom4j.DocumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -44,10 +40,8 @@ public class SchemaIdResolver implements com.siemens.ct.exi.core.SchemaIdResolve
         if (Files.exists(schemaIdPath)) {
             try {
                 Log.trace("Found schema file for schema ID '{}'. Using it to populate grammar.", schemaId);
-                final Grammars result = GrammarFactory.newInstance().createGrammars(schemaIdPath.toAbsolutePath().toString(), new SchemaResolver());
-                result.setSchemaId(schemaId);
-                return result;
-            } catch (IOException | ParserConfigurationException | SAXException | DocumentException e) {
+                return GrammarsCache.getInstance().getGrammars(schemaId, schemaIdPath);
+            } catch (EXIException e) {
                 Log.warn("Exception while trying to resolve schema ID '{}'.", schemaId, e);
             }
         } else {
@@ -0,0 +1,827 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * An in-memory index of all schemas that are available in the schemas folder.
+ *
+ * The index is built once, by reading all schema files. Afterwards, it is kept up-to-date incrementally: by
+ * registering schemas as they are uploaded or downloaded, and by watching the schemas folder for changes that are
+ * applied in any other way. This allows lookups (by namespace, or by the namespace, size and hash that are used
+ * in an EXI 'setup' negotiation) to be done without accessing the file system.
+ *
+ * The index is an immutable snapshot, that is replaced as a whole when schemas are added or removed. Lookups therefore
+ * never lock, and never observe a partially applied change.
+ *
+ * The content of this registry is persisted in the schemas file (see {@link EXIUtils#getSchemasFileLocation()}).
+ * Changes are written to that file in the background, shortly after they have been applied, so that a burst of
+ * changes leads to one write.
+ */
+public class SchemaRegistry
+{
+    private static final Logger Log = LoggerFactory.getLogger(SchemaRegistry.class);
+
+    private static final SchemaRegistry INSTANCE = new SchemaRegistry();
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{32}");
+
+    static final Duration DEFAULT_STORE_DELAY = Duration.ofSeconds(1);
+
+    private static final ScheduledThreadPoolExecutor storeExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "exi-schemas-file-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static SchemaRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * The currently loaded index, or null when the index is to be (re)built on next access.
+     */
+    private volatile Index index;
+
+    private Thread watcher;
+
+    /**
+     * A write of the schemas file that is scheduled but has not started yet, or null. Modified while holding 'this'.
+     */
+    private volatile ScheduledFuture<?> pendingStore;
+
+    SchemaRegistry()
+    {
+    }
+
+    /**
+     * Returns all known schemas, ordered by namespace (as XEP-0322 wants canonical schemas to be ordered by namespace).
+     *
+     * @return all known schemas.
+     */
+    public List<Schema> getSchemas() throws IOException
+    {
+        final List<Schema> result = new ArrayList<>(getIndex().byLocation.values());
+        result.sort(Comparator.comparing(Schema::getNamespace, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /**
+     * Finds a schema by the characteristics that identify it in an EXI 'setup' negotiation.
+     *
+     * @param ns      the target namespace of the schema
+     * @param bytes   the size of the schema, in bytes
+     * @param md5Hash the MD5 hash of the schema
+     * @return the schema, or null if no such schema is known.
+     */
+    public Schema find(String ns, String bytes, String md5Hash) throws IOException
+    {
+        return getIndex().byDigest.get(digestKey(ns, bytes, md5Hash));
+    }
+
+    /**
+     * Returns the location of the schema file that defines the provided namespace.
+     *
+     * @param namespace the target namespace of a schema.
+     * @return a file location, or null if no such schema is known.
+     */
+    public Path getLocation(String namespace) throws IOException
+    {
+        return getIndex().byNamespace.get(namespace);
+    }
+
+    /**
+     * Returns the schema that defines the provided namespace.
+     *
+     * @param namespace the target namespace of a schema.
+     * @return a schema, or null if no such schema is known.
+     */
+    public Schema getSchema(String namespace) throws IOException
+    {
+        final Index snapshot = getIndex();
+        final Path location = snapshot.byNamespace.get(namespace);
+        return location == null ? null : snapshot.byLocation.get(location);
+    }
+
+    /**
+     * Returns a mapping of all known namespaces to the location of the schema file that defines each namespace.
+     *
+     * @return An unmodifiable map.
+     */
+    public Map<String, Path> getLocationsByNamespace() throws IOException
+    {
+        return getIndex().byNamespace;
+    }
+
+    /**
+     * Adds a schema file to the registry, calculating its size and hash from the file content.
+     *
+     * @param location the location of a schema file.
+     * @return the schema as registered.
+     */
+    public Schema register(Path location) throws IOException, DocumentException
+    {
+        return register(location, null, null);
+    }
+
+    /**
+     * Adds a schema file to the registry. The schema is identified by the size and hash of the file content. When a
+     * size and hash are provided (as they are, for example, when a schema was uploaded in a compressed form) the schema
+     * can be identified by these too.
+     *
+     * Aliases of a schema that was registered at the same location before are kept, unless the content of the file
+     * has changed. This prevents a watcher event for a file that was just added from dropping the aliases it was added
+     * with.
+     *
+     * @param location the location of a schema file.
+     * @param md5Hash  MD5 hash to (also) identify the schema with, or null.
+     * @param bytes    size to (also) identify the schema with, or null to use the size of the file content.
+     * @return the schema as registered.
+     */
+    public Schema register(Path location, String md5Hash, String bytes) throws IOException, DocumentException
+    {
+        Schema schema = read(location);
+        if (md5Hash != null) {
+            schema = schema.withAliases(Collections.singleton(new Alias(md5Hash.toLowerCase(), bytes == null ? schema.getBytes() : bytes)));
+        }
+        synchronized (this) {
+            final Schema existing = getIndex().byLocation.get(schema.getLocation());
+            if (existing != null && existing.getMd5Hash().equals(schema.getMd5Hash())) {
+                schema = schema.withAliases(existing.getAliases());
+            }
+            index = getIndex().with(schema);
+        }
+        Log.debug("Registered schema for namespace '{}' from: {}", schema.getNamespace(), schema.getLocation());
+        return schema;
+    }
+
+    /**
+     * Returns a schema that was added to the registry by {@link #add(byte[], String, String)}.
+     *
+     * @param hash the hash of the content of the schema, or the hash that was provided when it was added.
+     * @return the schema, or null if no such schema is known.
+     */
+    public Schema getStored(String hash) throws IOException
+    {
+        if (hash == null || !HASH.matcher(hash.toLowerCase()).matches()) {
+            return null;
+        }
+        final Index current = getIndex();
+        final Schema result = current.byLocation.get(getStoredLocation(hash.toLowerCase()));
+        return result != null ? result : current.byHash.get(hash.toLowerCase());
+    }
+
+    /**
+     * Stores a schema in the schemas folder, and adds it to the registry.
+     *
+     * Schemas are stored under the hash of their content, as received. When a schema with the same content was stored
+     * before, the existing schema is returned, and no schema file is written. This keeps the number of files in the
+     * schemas folder proportional to the number of distinct schemas, no matter how often each schema is uploaded.
+     *
+     * A provided MD5 hash and size (as provided, for example, when a schema was uploaded in a compressed form) are not
+     * verified, as they describe the content before it was compressed. They are added to the schema as an alias (also
+     * when it was stored before), which identifies it in a 'setup' negotiation, and by which it can be looked up using
+     * {@link #getStored(String)}, but they never determine where it is stored. Aliases are persisted in the schemas file.
+     *
+     * @param content the content of the schema.
+     * @param md5Hash MD5 hash to identify the schema with, or null to calculate it from the content.
+     * @param bytes   size to identify the schema with, or null to calculate it from the content.
+     * @return the schema as registered.
+     */
+    public Schema add(byte[] content, String md5Hash, String bytes) throws IOException, DocumentException
+    {
+        if (md5Hash != null && !HASH.matcher(md5Hash.toLowerCase()).matches()) {
+            throw new IllegalArgumentException("Not a valid MD5 hash: " + md5Hash);
+        }
+        final String hash = md5(content);
+
+        final Path location = getStoredLocation(hash);
+        final Schema existing = getIndex().byLocation.get(location);
+        if (existing != null) {
+            Log.debug("Schema with hash '{}' is stored already.", hash);
+            if (md5Hash == null || existing.isIdentifiedBy(md5Hash.toLowerCase(), bytes == null ? existing.getBytes() : bytes)) {
+                return existing;
+            }
+            final Alias alias = new Alias(md5Hash.toLowerCase(), bytes == null ? existing.getBytes() : bytes);
+            final Schema updated;
+            synchronized (this) {
+                final Schema current = getIndex().byLocation.get(location);
+                updated = (current == null ? existing : current).withAliases(Collections.singleton(alias));
+                index = getIndex().with(updated);
+            }
+            storeLater();
+            return updated;
+        }
+
+        if (!Files.exists(location)) {
+            // Written to a file that is not recognized as a schema first, so that no partially written schema is ever read.
+            final Path temporary = Files.createTempFile(location.getParent(), hash, ".tmp");
+            try {
+                Files.write(temporary, content);
+                Files.move(temporary, location, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        final Schema result = register(location, md5Hash, bytes);
+        storeLater();
+        return result;
+    }
+
+    private static Path getStoredLocation(String hash)
+    {
+        return EXIUtils.getSchemasFolder().resolve(hash + ".xsd").toAbsolutePath();
+    }
+
+    /**
+     * Removes a schema file from the registry.
+     *
+     * @param location the location of a schema file.
+     */
+    public synchronized void unregister(Path location) throws IOException
+    {
+        final Path absolute = location.toAbsolutePath();
+        final Schema removed = getIndex().byLocation.get(absolute);
+        if (removed != null) {
+            index = getIndex().without(absolute);
+            Log.debug("Unregistered schema for namespace '{}' from: {}", removed.getNamespace(), removed.getLocation());
+        }
+    }
+
+    /**
+     * Rebuilds the registry by reading all schema files in the schemas folder.
+     */
+    public synchronized void refresh() throws IOException
+    {
+        index = load(index);
+    }
+
+    /**
+     * Discards the registry. It will be rebuilt on next access.
+     */
+    void clear()
+    {
+        // Not synchronized, as this is invoked while holding the lock on EXIUtils (which this registry acquires after its own).
+        index = null;
+        final ScheduledFuture<?> pending = pendingStore;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    private Index getIndex() throws IOException
+    {
+        Index result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = load(null);
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads all schema files in the schemas folder. Aliases are taken from the schemas file, and from the provided
+     * index (which can have aliases that have not been written to the schemas file yet), for every schema file of which
+     * the content has not changed since.
+     */
+    private static Index load(Index previous) throws IOException
+    {
+        final Path folder = EXIUtils.getSchemasFolder();
+        if (!Files.isDirectory(folder)) {
+            throw new IllegalStateException("Configured schema folder is not a directory: " + folder);
+        }
+
+        final Set<Path> xsds;
+        try (final Stream<Path> stream = Files.walk(folder, 1)) {
+            xsds = stream
+                .filter(Files::isRegularFile)
+                .filter(SchemaRegistry::isSchemaFile)
+                .collect(Collectors.toSet());
+        }
+
+        final Map<Path, Element> recorded = readSchemasFile();
+        final List<Schema> schemas = new ArrayList<>();
+        for (final Path xsd : xsds) {
+            try {
+                Schema schema = read(xsd);
+                final Element element = recorded.get(schema.getLocation());
+                if (element != null) {
+                    schema = schema.withAliases(readAliases(element, schema));
+                }
+                final Schema known = previous == null ? null : previous.byLocation.get(schema.getLocation());
+                if (known != null && known.getMd5Hash().equals(schema.getMd5Hash())) {
+                    schema = schema.withAliases(known.getAliases());
+                }
+                schemas.add(schema);
+            } catch (DocumentException e) {
+                Log.warn("Unable to parse schema file '{}'. It will not be used.", xsd, e);
+            }
+        }
+        final Index result = new Index(schemas);
+        Log.debug("Loaded {} schemas from: {}", result.byLocation.size(), folder);
+        return result;
+    }
+
+    /**
+     * Returns the 'schema' elements of the schemas file by the location of their schema file, or nothing when there
+     * is no (readable) schemas file.
+     */
+    private static Map<Path, Element> readSchemasFile()
+    {
+        final Map<Path, Element> result = new HashMap<>();
+        final Path location = EXIUtils.getSchemasFileLocation();
+        if (!Files.isRegularFile(location)) {
+            return result;
+        }
+        try {
+            final Document document = DocumentHelper.parseText(new String(Files.readAllBytes(location), StandardCharsets.UTF_8));
+            for (final Element element : document.getRootElement().elements("schema")) {
+                final String schemaLocation = element.attributeValue("schemaLocation");
+                if (schemaLocation != null) {
+                    result.put(Paths.get(schemaLocation).toAbsolutePath(), element);
+                }
+            }
+        } catch (IOException | DocumentException | InvalidPathException e) {
+            Log.warn("Unable to read aliases of schemas from the schemas file: {}", location, e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the aliases that the schemas file records for a schema, unless the content of the schema has changed
+     * since that file was written.
+     */
+    private static List<Alias> readAliases(Element element, Schema schema)
+    {
+        final List<Alias> result = new ArrayList<>();
+        final String md5Hash = element.attributeValue("md5Hash");
+        if (schema.getMd5Hash().equals(md5Hash)) {
+            for (final Element alias : element.elements("alias")) {
+                if (alias.attributeValue("md5Hash") != null && alias.attributeValue("bytes") != null) {
+                    result.add(new Alias(alias.attributeValue("md5Hash"), alias.attributeValue("bytes")));
+                }
+            }
+        } else if (md5Hash != null && element.attributeValue("bytes") != null && schema.getLocation().getFileName().toString().equals(md5Hash + ".xsd")) {
+            // Written by an earlier version, which stored uploaded schemas under (and identified them by) the provided hash.
+            result.add(new Alias(md5Hash, element.attributeValue("bytes")));
+        }
+        return result;
+    }
+
+    private static Schema read(Path location) throws IOException, DocumentException
+    {
+        final byte[] data = Files.readAllBytes(location);
+        final Document doc = DocumentHelper.parseText(new String(data));
+        final String namespace = doc.getRootElement().attributeValue("targetNamespace");
+        return new Schema(namespace,
+            String.valueOf(data.length),
+            md5(data),
+            location.toAbsolutePath(),
+            Files.getLastModifiedTime(location).toMillis(),
+            data.length,
+            Collections.emptyList());
+    }
+
+    static String md5(byte[] data)
+    {
+        try {
+            return EXIUtils.bytesToHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is required to be supported by every implementation of the Java platform.", e);
+        }
+    }
+
+    private static boolean isSchemaFile(Path path)
+    {
+        return path.getFileName().toString().endsWith(".xsd");
+    }
+
+    private static String digestKey(String ns, String bytes, String md5Hash)
+    {
+        return ns + '|' + bytes + '|' + md5Hash;
+    }
+
+    /**
+     * Writes the content of this registry to the schemas file.
+     *
+     * The file is replaced atomically, so that readers of the file never observe a partially written file.
+     */
+    public void store() throws IOException
+    {
+        final Document schemasFile = DocumentHelper.createDocument();
+        final Element root = schemasFile.addElement("schemas");
+        for (final Schema schema : getSchemas()) {
+            root.add(schema.asElement());
+        }
+
+        final Path location = EXIUtils.getSchemasFileLocation();
+        Files.createDirectories(location.getParent());
+        final Path temporary = Files.createTempFile(location.getParent(), location.getFileName().toString(), ".tmp");
+        try {
+            try (final Writer fileWriter = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                final XMLWriter writer = new XMLWriter(fileWriter, OutputFormat.createPrettyPrint());
+                writer.write(schemasFile);
+                writer.flush();
+            }
+            Files.move(temporary, location, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Schedules the content of this registry to be written to the schemas file. Changes that are applied before the
+     * write starts are included in that same write.
+     */
+    public synchronized void storeLater()
+    {
+        if (pendingStore != null && !pendingStore.isCancelled()) {
+            return;
+        }
+        try {
+            pendingStore = storeExecutor.schedule(() -> {
+                synchronized (this) {
+                    pendingStore = null;
+                }
+                storeNow();
+            }, DEFAULT_STORE_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The registry has been shut down: changes are no longer batched.
+            pendingStore = null;
+            storeNow();
+        }
+    }
+
+    private void storeNow()
+    {
+        try {
+            store();
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Unable to write schemas file: {}", EXIUtils.getSchemasFileLocation(), e);
+        }
+    }
+
+    /**
+     * Immediately writes the content of this registry to the schemas file, if a write is scheduled.
+     */
+    public void flush() throws IOException
+    {
+        synchronized (this) {
+            if (pendingStore == null || !pendingStore.cancel(false)) {
+                return;
+            }
+            pendingStore = null;
+        }
+        store();
+    }
+
+    /**
+     * Stops watching the schemas folder, writes any pending changes to the schemas file, and stops the thread that
+     * writes it. Changes that are applied afterwards are written immediately.
+     */
+    public void shutdown() throws IOException
+    {
+        stopWatching();
+        try {
+            flush();
+        } finally {
+            storeExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Starts watching the schemas folder for changes, keeping the registry (and schemas file) up-to-date with changes
+     * that are not applied through this registry.
+     */
+    public synchronized void startWatching() throws IOException
+    {
+        if (watcher != null) {
+            return;
+        }
+        final Path folder = EXIUtils.getSchemasFolder();
+        final WatchService watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+        watcher = new Thread(() -> watch(folder, watchService), "exi-schema-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        Log.debug("Started watching for schema changes in: {}", folder);
+    }
+
+    /**
+     * Stops watching the schemas folder for changes.
+     */
+    public synchronized void stopWatching()
+    {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    private void watch(final Path folder, final WatchService watchService)
+    {
+        try (final WatchService ws = watchService) {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = ws.take();
+                boolean changed = false;
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        if (event.kind() == OVERFLOW) {
+                            refresh();
+                            changed = true;
+                            continue;
+                        }
+                        final Path path = folder.resolve((Path) event.context());
+                        if (!isSchemaFile(path)) {
+                            continue;
+                        }
+                        if (event.kind() == ENTRY_DELETE) {
+                            unregister(path);
+                            changed = true;
+                        } else if (Files.isRegularFile(path) && isOutdated(path)) {
+                            register(path);
+                            changed = true;
+                        }
+                    } catch (IOException | DocumentException e) {
+                        // Files that are being written might not be parsable yet. A next event will cause a retry.
+                        Log.debug("Unable to process change to schema folder: {} {}", event.kind(), event.context(), e);
+                    }
+                }
+                if (changed) {
+                    storeLater();
+                }
+                if (!key.reset()) {
+                    Log.warn("Schema folder is no longer accessible. Stopped watching for changes in: {}", folder);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Log.debug("Stopped watching for schema changes in: {}", folder);
+        } catch (IOException e) {
+            Log.warn("Exception while watching for schema changes in: {}", folder, e);
+        }
+    }
+
+    /**
+     * Checks if the file at the provided location has been modified since it was registered. This prevents schemas
+     * that were registered with explicitly provided values (e.g. hashes of uploaded schemas) to be replaced by values
+     * calculated by the watcher, as a result of file system events caused by that same upload.
+     */
+    private boolean isOutdated(Path location) throws IOException
+    {
+        final Schema schema = getIndex().byLocation.get(location.toAbsolutePath());
+        return schema == null
+            || schema.lastModified != Files.getLastModifiedTime(location).toMillis()
+            || schema.fileSize != Files.size(location);
+    }
+
+    /**
+     * An immutable snapshot of all known schemas. Changes are applied by creating a new snapshot.
+     */
+    private static final class Index
+    {
+        final Map<Path, Schema> byLocation;
+        final Map<String, Schema> byDigest;
+        final Map<String, Schema> byHash;
+        final Map<String, Path> byNamespace;
+
+        Index(Collection<Schema> schemas)
+        {
+            final Map<Path, Schema> locations = new LinkedHashMap<>();
+            final Map<String, Schema> digests = new HashMap<>();
+            final Map<String, Schema> hashes = new HashMap<>();
+            final Map<String, Path> namespaces = new HashMap<>();
+            for (final Schema schema : schemas) {
+                locations.put(schema.getLocation(), schema);
+            }
+            for (final Schema schema : locations.values()) {
+                digests.put(digestKey(schema.getNamespace(), schema.getBytes(), schema.getMd5Hash()), schema);
+                hashes.put(schema.getMd5Hash(), schema);
+                for (final Alias alias : schema.getAliases()) {
+                    digests.put(digestKey(schema.getNamespace(), alias.bytes, alias.md5Hash), schema);
+                    hashes.putIfAbsent(alias.md5Hash, schema);
+                }
+                if (schema.getNamespace() != null) {
+                    namespaces.put(schema.getNamespace(), schema.getLocation());
+                }
+            }
+            this.byLocation = Collections.unmodifiableMap(locations);
+            this.byDigest = Collections.unmodifiableMap(digests);
+            this.byHash = Collections.unmodifiableMap(hashes);
+            this.byNamespace = Collections.unmodifiableMap(namespaces);
+        }
+
+        /**
+         * Returns a new snapshot that contains the provided schema, replacing any schema at the same location. The
+         * provided schema will define its namespace.
+         */
+        Index with(Schema schema)
+        {
+            final List<Schema> schemas = new ArrayList<>(byLocation.size() + 1);
+            for (final Schema existing : byLocation.values()) {
+                if (!existing.getLocation().equals(schema.getLocation())) {
+                    schemas.add(existing);
+                }
+            }
+            schemas.add(schema);
+            return new Index(schemas);
+        }
+
+        /**
+         * Returns a new snapshot that does not contain a schema at the provided location. Any other schema that
+         * defines the same namespace is used to define that namespace instead.
+         */
+        Index without(Path location)
+        {
+            final List<Schema> schemas = new ArrayList<>(byLocation.values());
+            schemas.removeIf(existing -> existing.getLocation().equals(location));
+            return new Index(schemas);
+        }
+    }
+
+    /**
+     * A size and MD5 hash by which a schema is also known, as provided when it was uploaded in a compressed form.
+     */
+    public static final class Alias
+    {
+        private final String md5Hash;
+        private final String bytes;
+
+        Alias(String md5Hash, String bytes)
+        {
+            this.md5Hash = md5Hash;
+            this.bytes = bytes;
+        }
+
+        public String getMd5Hash()
+        {
+            return md5Hash;
+        }
+
+        public String getBytes()
+        {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Alias alias = (Alias) o;
+            return md5Hash.equals(alias.md5Hash) && bytes.equals(alias.bytes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(md5Hash, bytes);
+        }
+    }
+
+    /**
+     * A schema that is known to the server, identified by its target namespace, and by the size and MD5 hash of its
+     * content or any of its aliases.
+     */
+    public static class Schema
+    {
+        private final String namespace;
+        private final String bytes;
+        private final String md5Hash;
+        private final Path location;
+        private final long lastModified;
+        private final long fileSize;
+        private final List<Alias> aliases;
+
+        Schema(String namespace, String bytes, String md5Hash, Path location, long lastModified, long fileSize, List<Alias> aliases)
+        {
+            this.namespace = namespace;
+            this.bytes = bytes;
+            this.md5Hash = md5Hash;
+            this.location = location;
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+            this.aliases = Collections.unmodifiableList(aliases);
+        }
+
+        /**
+         * Returns this schema with the provided aliases added to it (this instance, when it has all of them already).
+         */
+        Schema withAliases(Collection<Alias> additional)
+        {
+            final List<Alias> result = new ArrayList<>(aliases);
+            for (final Alias alias : additional) {
+                if (!isIdentifiedBy(alias.md5Hash, alias.bytes) && !result.contains(alias)) {
+                    result.add(alias);
+                }
+            }
+            return result.size() == aliases.size() ? this : new Schema(namespace, bytes, md5Hash, location, lastModified, fileSize, result);
+        }
+
+        /**
+         * Checks if this schema is identified by the provided hash and size, either as those of its content or as an alias.
+         */
+        public boolean isIdentifiedBy(String md5Hash, String bytes)
+        {
+            return (this.md5Hash.equals(md5Hash) && this.bytes.equals(bytes)) || aliases.contains(new Alias(md5Hash, bytes));
+        }
+
+        public List<Alias> getAliases()
+        {
+            return aliases;
+        }
+
+        public String getNamespace()
+        {
+            return namespace;
+        }
+
+        public String getBytes()
+        {
+            return bytes;
+        }
+
+        public String getMd5Hash()
+        {
+            return md5Hash;
+        }
+
+        public Path getLocation()
+        {
+            return location;
+        }
+
+        /**
+         * Returns a 'schema' element as used in the schemas file. Apart from what's used in a 'setup' negotiation,
+         * this also contains the schema location, to make it easier to generate a new canonical schema later.
+         *
+         * @return a 'schema' element.
+         */
+        public Element asElement()
+        {
+            final Element result = DocumentHelper.createElement("schema")
+                .addAttribute("ns", namespace)
+                .addAttribute("bytes", bytes)
+                .addAttribute("md5Hash", md5Hash)
+                .addAttribute("schemaLocation", location.toString());
+            for (final Alias alias : aliases) {
+                result.addElement("alias")
+                    .addAttribute("md5Hash", alias.md5Hash)
+                    .addAttribute("bytes", alias.bytes);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Schema{ns='" + namespace + "', bytes=" + bytes + ", md5Hash='" + md5Hash + "', location=" + location + ", aliases=" + aliases.size() + '}';
+        }
+    }
+}
@@ -19,21 +19,13 @@ import org.apache.xerces.xni.XMLResourceIdentifier;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.parser.XMLEntityResolver;
 import org.apache.xerces.xni.parser.XMLInputSource;
-import org.dom4j.DocumentException;
-import org.dom4j.DocumentHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class SchemaResolver implements XMLEntityResolver
 {
@@ -41,36 +33,15 @@ public class SchemaResolver implements XMLEntityResolver
 
     private final Map<String, Path> namespaceToPath;
 
-    public SchemaResolver() throws ParserConfigurationException, IOException, SAXException, DocumentException
+    public SchemaResolver() throws IOException
     {
-        namespaceToPath = new HashMap<>();
+        // Take a copy of the namespace-to-path mapping of all known schemas.
+        namespaceToPath = new HashMap<>(SchemaRegistry.getInstance().getLocationsByNamespace());
 
-        // Iterate over all files to record a namespace-to-path mapping.
-        if (!Files.isDirectory(EXIUtils.getSchemasFolder())) {
-            throw new IllegalStateException("Configured schema folder is not a directory: " + EXIUtils.getSchemasFolder());
-        }
-
-        final Set<Path> xsds;
-        try (final Stream<Path> stream = Files.walk(EXIUtils.getSchemasFolder(), 1)) {
-            xsds = stream
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().endsWith(".xsd"))
-                .collect(Collectors.toSet());
-        }
-
-        if (xsds.isEmpty()) {
+        if (namespaceToPath.isEmpty()) {
             throw new IllegalStateException("Configured schema folder contains no files: " + EXIUtils.getSchemasFolder());
         }
 
-        for (final Path xsd : xsds) {
-            final String content = String.join("", Files.readAllLines(xsd));
-            final org.dom4j.Document doc = DocumentHelper.parseText(content);
-            final String namespace = doc.getRootElement().attributeValue("targetNamespace");
-
-            Log.debug("Found namespace '{}' in file: {}", namespace, xsd);
-            this.namespaceToPath.put(namespace, xsd);
-        }
-
         // Do not use the schema that is defining the schema as content of the schema!
         namespaceToPath.remove("urn:xmpp:exi:cs");
 
@@ -33,6 +33,8 @@ public class SetupValues
     final static String VALUE_MAX_LENGTH = "valueMaxLength";
     final static String VALUE_PARTITION_CAPACITY = "valuePartitionCapacity";
     final static String WIDE_BUFFERS = "sessionWideBuffers";
+    final static String STREAMING = "streaming";
+    final static String RECOMMENDED_CONFIGURATION_ID = "recommendedConfigurationId";
 
     static CodingMode getCodingMode(String alignment)
     {
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes SAX events of one XML document (stanza) into text, without an XML declaration.
+ *
+ * This replaces an identity {@link javax.xml.transform.Transformer} on the decoding path: it writes directly into a
+ * reusable buffer, and records the name of the root element so that callers do not need to parse the result to find
+ * out what kind of document it is.
+ *
+ * Instances are not thread-safe, and are reused for every document that is serialized.
+ */
+class StanzaSerializer extends DefaultHandler
+{
+    /**
+     * Buffers that grew larger than this (while serializing an exceptionally large document) are not retained.
+     */
+    static final int MAXIMUM_RETAINED_CAPACITY = 16 * 1024;
+
+    private StringBuilder xml = new StringBuilder(1024);
+
+    /**
+     * Namespace declarations (pairs of prefix and URI) to be added to the next start tag.
+     */
+    private final List<String> pendingNamespaces = new ArrayList<>();
+
+    private boolean startTagOpen;
+    private int depth;
+    private String rootElementName;
+
+    /**
+     * Returns the local name of the root element of the last document that was serialized.
+     *
+     * @return an element name, or null if no element was serialized.
+     */
+    String getRootElementName()
+    {
+        return rootElementName;
+    }
+
+    /**
+     * Returns the text of the last document that was serialized.
+     *
+     * @return XML text.
+     */
+    String getXML()
+    {
+        return xml.toString();
+    }
+
+    @Override
+    public void startDocument()
+    {
+        if (xml.capacity() > MAXIMUM_RETAINED_CAPACITY) {
+            xml = new StringBuilder(1024);
+        } else {
+            xml.setLength(0);
+        }
+        pendingNamespaces.clear();
+        startTagOpen = false;
+        depth = 0;
+        rootElementName = null;
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+    {
+        pendingNamespaces.add(prefix == null ? "" : prefix);
+        pendingNamespaces.add(uri);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+    {
+        closeStartTag();
+        if (depth++ == 0) {
+            rootElementName = localName != null && !localName.isEmpty() ? localName : qName.substring(qName.indexOf(':') + 1);
+        }
+
+        xml.append('<').append(name(localName, qName));
+        for (int i = 0; i < pendingNamespaces.size(); i += 2) {
+            final String prefix = pendingNamespaces.get(i);
+            xml.append(" xmlns");
+            if (!prefix.isEmpty()) {
+                xml.append(':').append(prefix);
+            }
+            xml.append("=\"");
+            escape(pendingNamespaces.get(i + 1), true);
+            xml.append('"');
+        }
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final String attributeName = name(attributes.getLocalName(i), attributes.getQName(i));
+            if (isDeclared(attributeName)) {
+                continue;
+            }
+            xml.append(' ').append(attributeName).append("=\"");
+            escape(attributes.getValue(i), true);
+            xml.append('"');
+        }
+        pendingNamespaces.clear();
+        startTagOpen = true;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+    {
+        depth--;
+        if (startTagOpen) {
+            xml.append("/>");
+            startTagOpen = false;
+        } else {
+            xml.append("</").append(name(localName, qName)).append('>');
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+    {
+        if (length == 0) {
+            return;
+        }
+        closeStartTag();
+        for (int i = start; i < start + length; i++) {
+            escape(ch[i], false);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+    {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data)
+    {
+        closeStartTag();
+        xml.append("<?").append(target);
+        if (data != null && !data.isEmpty()) {
+            xml.append(' ').append(data);
+        }
+        xml.append("?>");
+    }
+
+    private void closeStartTag()
+    {
+        if (startTagOpen) {
+            xml.append('>');
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * Checks if an attribute is a namespace declaration that was already added from a prefix mapping.
+     */
+    private boolean isDeclared(String attributeName)
+    {
+        final String prefix;
+        if (attributeName.equals("xmlns")) {
+            prefix = "";
+        } else if (attributeName.startsWith("xmlns:")) {
+            prefix = attributeName.substring("xmlns:".length());
+        } else {
+            return false;
+        }
+        for (int i = 0; i < pendingNamespaces.size(); i += 2) {
+            if (pendingNamespaces.get(i).equals(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String name(String localName, String qName)
+    {
+        return qName != null && !qName.isEmpty() ? qName : localName;
+    }
+
+    private void escape(String value, boolean attribute)
+    {
+        for (int i = 0; i < value.length(); i++) {
+            escape(value.charAt(i), attribute);
+        }
+    }
+
+    private void escape(char c, boolean attribute)
+    {
+        switch (c) {
+            case '&':
+                xml.append("&amp;");
+                break;
+            case '<':
+                xml.append("&lt;");
+                break;
+            case '>':
+                xml.append("&gt;");
+                break;
+            case '"':
+                xml.append(attribute ? "&quot;" : "\"");
+                break;
+            case '\n':
+                xml.append(attribute ? "&#10;" : "\n");
+                break;
+            case '\r':
+                xml.append("&#13;");
+                break;
+            case '\t':
+                xml.append(attribute ? "&#9;" : "\t");
+                break;
+            default:
+                xml.append(c);
+        }
+    }
+}
@@ -23,13 +23,10 @@ import org.dom4j.DocumentException;
 import org.xml.sax.SAXException;
 import javax.xml.transform.TransformerException;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.CharBuffer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.Calendar;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -140,35 +137,46 @@ public class UploadSchemaFilter extends IoFilterAdapter
     void uploadCompressedMissingSchema(byte[] content, String contentType, String md5Hash, String bytes, IoSession session)
         throws IOException, NoSuchAlgorithmException, DocumentException, EXIException, SAXException, TransformerException
     {
-        Path filePath = EXIUtils.getSchemasFolder().resolve(Calendar.getInstance().getTimeInMillis() + ".xsd");
+        Path filePath = storeCompressedSchema(content, contentType, md5Hash, bytes);
+        EXIFilter.addNewSchemaToCanonicalSchema(filePath, session);
+        EXIMetrics.getInstance().recordSchemaUpload();
+    }
 
+    /**
+     * Stores a schema that was uploaded in a compressed form, unless a schema that was uploaded with the same hash and
+     * size is stored already (in which case the upload is not decompressed at all). The decompressed schema is stored
+     * under the hash of its content: the provided hash is only used to find it again.
+     *
+     * @return the location of the stored schema.
+     */
+    static Path storeCompressedSchema(byte[] content, String contentType, String md5Hash, String bytes)
+        throws IOException, DocumentException, EXIException, SAXException, TransformerException
+    {
         if (!"text".equals(contentType) && md5Hash != null && bytes != null) {
+            final SchemaRegistry.Schema existing = SchemaRegistry.getInstance().getStored(md5Hash);
+            if (existing != null && existing.isIdentifiedBy(md5Hash.toLowerCase(), bytes)) {
+                return existing.getLocation();
+            }
             String xml = "";
             if (contentType.equals("ExiDocument")) {
                 xml = EXIProcessor.decodeSchemaless(content);
             } else if (contentType.equals("ExiBody")) {
                 xml = EXIProcessor.decodeExiBodySchemaless(content);
             }
-            EXIUtils.writeFile(filePath, xml);
+            return EXIFilter.addNewSchemaToSchemasFile(xml.getBytes(UTF_8), md5Hash, bytes);
         }
-
-        EXIFilter.addNewSchemaToSchemasFile(filePath, md5Hash, bytes);
-        EXIFilter.addNewSchemaToCanonicalSchema(filePath, session);
+        return EXIFilter.addNewSchemaToSchemasFile(content, null, null);
     }
 
     void uploadMissingSchema(String content, IoSession session)
         throws IOException, NoSuchAlgorithmException, DocumentException, EXIException, SAXException, TransformerException
     {
-        Path filePath = EXIUtils.getSchemasFolder().resolve(Calendar.getInstance().getTimeInMillis() + ".xsd");
-        OutputStream out = Files.newOutputStream(filePath);
-
         String contentB64 = content.substring(content.indexOf('>') + 1, content.indexOf("</"));
 
         byte[] outputBytes = Base64.getDecoder().decode(contentB64);
-        out.write(outputBytes);
-        out.close();
 
-        EXIFilter.addNewSchemaToSchemasFile(filePath, null, null);
+        Path filePath = EXIFilter.addNewSchemaToSchemasFile(outputBytes, null, null);
         EXIFilter.addNewSchemaToCanonicalSchema(filePath, session);
+        EXIMetrics.getInstance().recordSchemaUpload();
     }
 }
@@ -0,0 +1,589 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates schemas for the vocabulary of recorded traffic that is not described by any registered schema.
+ *
+ * Elements in namespaces without a schema are encoded using built-in grammars, which means that their names, and the
+ * names and values of their attributes, are sent as strings. This class records a sample of the stanzas that are
+ * exchanged with EXI sessions. When asked to, it generates a schema for every unknown namespace that it observed,
+ * declaring all elements and attributes that were seen. It then projects the savings, by encoding the recorded stanzas
+ * with and without those schemas.
+ *
+ * When enabled, the values of attributes that have only a few distinct values are enumerated, which encodes them most
+ * compactly. This is optional, as the schemas then only allow the values that happened to be recorded: a client that
+ * uses the schemas can not send any other value for such an attribute.
+ *
+ * Schemas are only registered (in the same way as schemas that are uploaded by clients) after the report has been
+ * reviewed, and {@link #activate()} has been invoked. Analysis is triggered through JMX.
+ */
+public class VocabularyAnalyzer implements VocabularyAnalyzerMBean
+{
+    private static final Logger Log = LoggerFactory.getLogger(VocabularyAnalyzer.class);
+
+    static final int MAXIMUM_STANZAS = 10000;
+
+    /**
+     * Attributes with more distinct values than this are not enumerated.
+     */
+    static final int MAXIMUM_ENUMERATION_VALUES = 16;
+
+    /**
+     * Attributes that occur less often than this are not enumerated.
+     */
+    static final int MINIMUM_OCCURRENCES = 4;
+
+    private static final String XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
+    private static final Namespace XS = Namespace.get("xs", XML_SCHEMA);
+
+    private static final VocabularyAnalyzer INSTANCE = new VocabularyAnalyzer();
+
+    public static VocabularyAnalyzer getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final AtomicLong stanzas = new AtomicLong();
+
+    private volatile int sampleRate = 0;
+
+    private volatile boolean enumerateAttributes = false;
+
+    /**
+     * Recorded stanzas, oldest first. Guarded by itself.
+     */
+    private final Deque<String> recorded = new ArrayDeque<>();
+
+    private volatile Report lastReport;
+
+    VocabularyAnalyzer()
+    {
+    }
+
+    /**
+     * Defines how many stanzas are exchanged for every stanza that is recorded.
+     *
+     * @param sampleRate one in this many stanzas is recorded, or zero to record none.
+     */
+    public void setSampleRate(int sampleRate)
+    {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate must not be negative, but was: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Offers a stanza that is about to be encoded. The buffer is not modified.
+     *
+     * @param xml a buffer that contains the UTF-8 encoded stanza.
+     */
+    void offer(final IoBuffer xml)
+    {
+        if (shouldSample()) {
+            final byte[] stanza = new byte[xml.remaining()];
+            xml.duplicate().get(stanza);
+            record(new String(stanza, UTF_8));
+        }
+    }
+
+    /**
+     * Offers a stanza that has been decoded.
+     *
+     * @param xml the stanza.
+     */
+    void offer(final String xml)
+    {
+        if (shouldSample()) {
+            record(xml);
+        }
+    }
+
+    private boolean shouldSample()
+    {
+        final int rate = sampleRate;
+        return rate != 0 && stanzas.incrementAndGet() % rate == 0;
+    }
+
+    void record(final String stanza)
+    {
+        synchronized (recorded) {
+            recorded.addLast(stanza);
+            while (recorded.size() > MAXIMUM_STANZAS) {
+                recorded.removeFirst();
+            }
+        }
+    }
+
+    @Override
+    public int getRecordedStanzas()
+    {
+        synchronized (recorded) {
+            return recorded.size();
+        }
+    }
+
+    @Override
+    public void clearRecording()
+    {
+        synchronized (recorded) {
+            recorded.clear();
+        }
+        lastReport = null;
+    }
+
+    @Override
+    public String analyze()
+    {
+        final List<String> stanzas;
+        synchronized (recorded) {
+            stanzas = new ArrayList<>(recorded);
+        }
+        try {
+            return analyze(stanzas).toString();
+        } catch (IOException | EXIException e) {
+            Log.warn("Unable to analyze {} recorded stanzas.", stanzas.size(), e);
+            return "Unable to analyze the recorded stanzas: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Defines if the values of attributes that have only a few distinct values are enumerated in generated schemas.
+     *
+     * @param enumerateAttributes true to enumerate attribute values.
+     */
+    public void setEnumerateAttributes(boolean enumerateAttributes)
+    {
+        this.enumerateAttributes = enumerateAttributes;
+    }
+
+    /**
+     * Generates schemas for the vocabulary of the provided stanzas, and projects the savings.
+     *
+     * @param stanzas the stanzas to analyze.
+     * @return a report, which is retained until the next analysis, or until it is activated.
+     */
+    Report analyze(final List<String> stanzas) throws IOException, EXIException
+    {
+        final Vocabulary vocabulary = new Vocabulary();
+        final XMLReader reader = createParser(vocabulary);
+        for (final String stanza : stanzas) {
+            try {
+                reader.parse(new InputSource(new StringReader(stanza)));
+            } catch (SAXException e) {
+                Log.debug("Skipping a recorded stanza that could not be parsed.", e);
+            } finally {
+                vocabulary.reset();
+            }
+        }
+
+        final boolean enumerate = enumerateAttributes;
+        final Map<String, String> schemas = new TreeMap<>();
+        for (final Map.Entry<String, Map<String, ElementVocabulary>> entry : vocabulary.unknown.entrySet()) {
+            schemas.put(entry.getKey(), generateSchema(entry.getKey(), entry.getValue().values(), enumerate));
+        }
+
+        final Report report;
+        if (schemas.isEmpty()) {
+            report = new Report(stanzas.size(), schemas, enumerate, 0, 0);
+        } else {
+            final long[] sizes = project(stanzas, vocabulary.known, schemas);
+            report = new Report(stanzas.size(), schemas, enumerate, sizes[0], sizes[1]);
+        }
+        lastReport = report;
+        return report;
+    }
+
+    @Override
+    public String activate()
+    {
+        final Report report = lastReport;
+        if (report == null || report.schemas.isEmpty()) {
+            return "There are no schemas to activate. Analyze recorded stanzas first.";
+        }
+        final StringBuilder result = new StringBuilder();
+        try {
+            for (final Map.Entry<String, String> entry : report.schemas.entrySet()) {
+                final Path location = EXIFilter.addNewSchemaToSchemasFile(entry.getValue().getBytes(UTF_8), null, null);
+                Log.info("Registered a schema for namespace '{}', generated from recorded traffic: {}", entry.getKey(), location);
+                result.append(entry.getKey()).append(": ").append(location).append('\n');
+            }
+        } catch (IOException | DocumentException e) {
+            Log.warn("Unable to register the schemas that were generated from recorded traffic.", e);
+            return "Unable to register the schemas: " + e.getMessage();
+        }
+        lastReport = null;
+        return result.toString();
+    }
+
+    private static XMLReader createParser(final DefaultHandler handler) throws IOException
+    {
+        try {
+            final SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            final XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setContentHandler(handler);
+            return reader;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unable to create an XML parser.", e);
+        }
+    }
+
+    /**
+     * Generates a schema that declares the observed elements of one namespace.
+     *
+     * @param enumerate true to enumerate the values of attributes that have only a few distinct values.
+     */
+    static String generateSchema(final String namespace, final Iterable<ElementVocabulary> elements, final boolean enumerate) throws IOException
+    {
+        final Document document = DocumentHelper.createDocument();
+        final Element root = document.addElement(QName.get("schema", XS));
+        root.addNamespace("tns", namespace);
+        root.addAttribute("targetNamespace", namespace);
+        root.addAttribute("elementFormDefault", "qualified");
+
+        for (final ElementVocabulary element : elements) {
+            final Element declaration = root.addElement(QName.get("element", XS)).addAttribute("name", element.name);
+            final Element complexType = declaration.addElement(QName.get("complexType", XS));
+            if (element.text) {
+                complexType.addAttribute("mixed", "true");
+            }
+            final Element choice = complexType.addElement(QName.get("choice", XS))
+                .addAttribute("minOccurs", "0")
+                .addAttribute("maxOccurs", "unbounded");
+            for (final String child : element.children) {
+                choice.addElement(QName.get("element", XS)).addAttribute("ref", "tns:" + child);
+            }
+            choice.addElement(QName.get("any", XS))
+                .addAttribute("namespace", "##other")
+                .addAttribute("processContents", "lax");
+
+            for (final Map.Entry<String, Map<String, Integer>> attribute : element.attributes.entrySet()) {
+                final Element attributeDeclaration = complexType.addElement(QName.get("attribute", XS)).addAttribute("name", attribute.getKey());
+                final Map<String, Integer> values = attribute.getValue();
+                if (enumerate && isEnumerable(values)) {
+                    final Element restriction = attributeDeclaration.addElement(QName.get("simpleType", XS))
+                        .addElement(QName.get("restriction", XS))
+                        .addAttribute("base", "xs:string");
+                    for (final String value : values.keySet()) {
+                        restriction.addElement(QName.get("enumeration", XS)).addAttribute("value", value);
+                    }
+                } else {
+                    attributeDeclaration.addAttribute("type", "xs:string");
+                }
+            }
+            complexType.addElement(QName.get("anyAttribute", XS)).addAttribute("processContents", "lax");
+        }
+
+        final StringWriter result = new StringWriter();
+        final XMLWriter writer = new XMLWriter(result, OutputFormat.createPrettyPrint());
+        writer.write(document);
+        writer.flush();
+        return result.toString();
+    }
+
+    /**
+     * Checks if the values of an attribute repeat often enough, and are few enough, to be enumerated.
+     */
+    private static boolean isEnumerable(final Map<String, Integer> values)
+    {
+        if (values.isEmpty() || values.size() > MAXIMUM_ENUMERATION_VALUES) {
+            return false;
+        }
+        int occurrences = 0;
+        for (final int count : values.values()) {
+            occurrences += count;
+        }
+        return occurrences >= MINIMUM_OCCURRENCES && occurrences >= 2 * values.size();
+    }
+
+    /**
+     * Encodes the stanzas with and without the generated schemas.
+     *
+     * @return the total number of bytes without, and with the generated schemas.
+     */
+    private static long[] project(final List<String> stanzas, final Set<String> known, final Map<String, String> schemas) throws IOException, EXIException
+    {
+        final Path directory = Files.createTempDirectory("exi-vocabulary-");
+        try {
+            final Map<String, Path> generated = new TreeMap<>();
+            for (final Map.Entry<String, String> entry : schemas.entrySet()) {
+                final Path location = directory.resolve("vocabulary-" + generated.size() + ".xsd");
+                Files.write(location, entry.getValue().getBytes(UTF_8));
+                generated.put(entry.getKey(), location);
+            }
+
+            final Set<String> namespaces = new TreeSet<>(known);
+            namespaces.add("http://etherx.jabber.org/streams");
+            namespaces.add("http://jabber.org/protocol/compress/exi");
+            final SizeEncoder before = new SizeEncoder(createGrammars(directory.resolve("before.xsd"), namespaces, Collections.emptyMap()));
+            final SizeEncoder after = new SizeEncoder(createGrammars(directory.resolve("after.xsd"), namespaces, generated));
+
+            long bytesBefore = 0;
+            long bytesAfter = 0;
+            for (final String stanza : stanzas) {
+                try {
+                    final long size = before.size(stanza);
+                    bytesAfter += after.size(stanza);
+                    bytesBefore += size;
+                } catch (IOException | SAXException e) {
+                    Log.debug("Skipping a recorded stanza that could not be encoded.", e);
+                }
+            }
+            return new long[] { bytesBefore, bytesAfter };
+        } finally {
+            try (final Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        Log.debug("Unable to delete temporary file: {}", file, e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Creates grammars for a canonical schema that imports the provided namespaces. Registered schemas are resolved by
+     * namespace, others by their location.
+     */
+    private static Grammars createGrammars(final Path canonicalSchema, final Set<String> namespaces, final Map<String, Path> locations) throws IOException, EXIException
+    {
+        final Document document = DocumentHelper.createDocument();
+        final Element root = document.addElement(QName.get("schema", XS));
+        root.addAttribute("targetNamespace", "urn:xmpp:exi:cs");
+        root.addAttribute("elementFormDefault", "qualified");
+        for (final String namespace : namespaces) {
+            root.addElement(QName.get("import", XS)).addAttribute("namespace", namespace);
+        }
+        for (final Map.Entry<String, Path> entry : locations.entrySet()) {
+            root.addElement(QName.get("import", XS))
+                .addAttribute("namespace", entry.getKey())
+                .addAttribute("schemaLocation", entry.getValue().toUri().toString());
+        }
+        Files.write(canonicalSchema, document.asXML().getBytes(UTF_8));
+        return GrammarFactory.newInstance().createGrammars(canonicalSchema.toAbsolutePath().toString(), new SchemaResolver());
+    }
+
+    /**
+     * Measures the size of stanzas, encoded with specific grammars and the default options.
+     */
+    private static final class SizeEncoder
+    {
+        private final EXIResult result;
+        private final XMLReader reader;
+
+        SizeEncoder(final Grammars grammars) throws EXIException
+        {
+            final EXISetupConfiguration configuration = new EXISetupConfiguration();
+            configuration.setGrammars(grammars);
+            result = new EXIResult(configuration);
+            try {
+                reader = XMLReaderFactory.createXMLReader();
+            } catch (SAXException e) {
+                throw new EXIException("Error while creating XML reader.", e);
+            }
+            reader.setContentHandler(result.getHandler());
+        }
+
+        long size(final String stanza) throws IOException, SAXException
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            result.setOutputStream(out);
+            reader.parse(new InputSource(new StringReader(stanza)));
+            return out.size();
+        }
+    }
+
+    /**
+     * The outcome of an analysis.
+     */
+    static final class Report
+    {
+        final int stanzas;
+        final Map<String, String> schemas;
+        final boolean enumerated;
+        final long bytesBefore;
+        final long bytesAfter;
+
+        Report(final int stanzas, final Map<String, String> schemas, final boolean enumerated, final long bytesBefore, final long bytesAfter)
+        {
+            this.stanzas = stanzas;
+            this.schemas = Collections.unmodifiableMap(schemas);
+            this.enumerated = enumerated;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (schemas.isEmpty()) {
+                return "Analyzed " + stanzas + " stanzas. All namespaces that were observed are described by registered schemas.";
+            }
+            final double savings = bytesBefore == 0 ? 0 : 100.0 * (bytesBefore - bytesAfter) / bytesBefore;
+            return "Analyzed " + stanzas + " stanzas. Generated schemas for " + schemas.size() + " namespace(s): " + schemas.keySet()
+                + ". Encoded size is " + bytesBefore + " bytes now, and would be " + bytesAfter + " bytes with the generated schemas ("
+                + String.format("%.1f", savings) + "% smaller). "
+                + (enumerated
+                    ? "Attributes with few distinct values are enumerated: clients that use the schemas can only send the values that were recorded for those. "
+                    : "Attribute values are not enumerated (see plugin.exi.vocabulary.enumerate). ")
+                + "Activate to register the schemas.";
+        }
+    }
+
+    /**
+     * The observed elements and attributes of a namespace that is not described by a registered schema.
+     */
+    static final class ElementVocabulary
+    {
+        final String name;
+        final SortedSet<String> children = new TreeSet<>();
+        final Map<String, Map<String, Integer>> attributes = new TreeMap<>();
+        boolean text;
+
+        ElementVocabulary(final String name)
+        {
+            this.name = name;
+        }
+
+        void addAttribute(final String name, final String value)
+        {
+            final Map<String, Integer> values = attributes.computeIfAbsent(name, key -> new TreeMap<>());
+            // Beyond the limit, values are not enumerated: there is no need to keep track of more of them.
+            if (values.size() <= MAXIMUM_ENUMERATION_VALUES || values.containsKey(value)) {
+                values.merge(value, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Collects the vocabulary of parsed stanzas.
+     */
+    private static final class Vocabulary extends DefaultHandler
+    {
+        private final SchemaRegistry registry = SchemaRegistry.getInstance();
+        private final Map<String, Map<String, ElementVocabulary>> unknown = new TreeMap<>();
+        private final Set<String> known = new TreeSet<>();
+        private final List<String> namespaces = new ArrayList<>();
+        private final List<ElementVocabulary> elements = new ArrayList<>();
+
+        void reset()
+        {
+            namespaces.clear();
+            elements.clear();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            ElementVocabulary element = null;
+            if (!uri.isEmpty()) {
+                if (registry.getLocation(uri) != null) {
+                    known.add(uri);
+                } else {
+                    element = unknown.computeIfAbsent(uri, key -> new TreeMap<>()).computeIfAbsent(localName, ElementVocabulary::new);
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        if (attributes.getURI(i).isEmpty()) {
+                            element.addAttribute(attributes.getLocalName(i), attributes.getValue(i));
+                        }
+                    }
+                }
+            }
+
+            final int parent = elements.size() - 1;
+            if (parent >= 0 && elements.get(parent) != null && element != null && namespaces.get(parent).equals(uri)) {
+                elements.get(parent).children.add(localName);
+            }
+            namespaces.add(uri);
+            elements.add(element);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        {
+            namespaces.remove(namespaces.size() - 1);
+            elements.remove(elements.size() - 1);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            if (elements.isEmpty()) {
+                return;
+            }
+            final ElementVocabulary element = elements.get(elements.size() - 1);
+            if (element == null || element.text) {
+                return;
+            }
+            for (int i = start; i < start + length; i++) {
+                if (!Character.isWhitespace(ch[i])) {
+                    element.text = true;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+/**
+ * Management interface of {@link VocabularyAnalyzer}, exposed through JMX.
+ */
+public interface VocabularyAnalyzerMBean
+{
+    int getRecordedStanzas();
+
+    /**
+     * Analyzes the recorded stanzas, and generates schemas for the vocabulary that was observed.
+     *
+     * @return a report that describes the schemas, and the projected savings.
+     */
+    String analyze();
+
+    /**
+     * Registers the schemas of the last analysis, so that clients can use them.
+     *
+     * @return a description of the registered schemas.
+     */
+    String activate();
+
+    void clearRecording();
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.core.write.WriteToClosedSessionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the EXI data of stanzas that are written to one session in quick succession, so that it is written as one
+ * buffer. Data is written when the oldest stanza has waited for the configured delay, or as soon as the configured
+ * size is reached, whichever comes first.
+ *
+ * The write requests of the stanzas that are gathered are not passed on. They are completed (and reported as sent)
+ * when the buffer that contains their data has been written.
+ */
+class WriteCoalescer
+{
+    private static final Logger Log = LoggerFactory.getLogger(WriteCoalescer.class);
+
+    private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "exi-write-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Coalescers for which a flush is scheduled.
+     */
+    private static final Set<WriteCoalescer> scheduled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Writes all data that is gathered by any coalescer, and stops the thread that writes it after the delay.
+     * Coalescers that are used afterwards write data as soon as it is added.
+     */
+    static void shutdown()
+    {
+        scheduler.shutdownNow();
+        for (final WriteCoalescer coalescer : scheduled) {
+            coalescer.flush();
+        }
+    }
+
+    private final NextFilter nextFilter;
+    private final IoSession session;
+    private final long delayNanos;
+    private final int maximumSize;
+
+    // All fields below are guarded by 'this'.
+    private IoBuffer pending;
+    private final List<WriteRequest> requests = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    WriteCoalescer(NextFilter nextFilter, IoSession session, Duration delay, int maximumSize)
+    {
+        this.nextFilter = nextFilter;
+        this.session = session;
+        this.delayNanos = delay.toNanos();
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Adds the EXI data of a stanza. The buffer that contains the data is released.
+     *
+     * @param request the write request of the stanza.
+     * @param exi     the EXI data of the stanza.
+     */
+    synchronized void add(WriteRequest request, IoBuffer exi)
+    {
+        if (pending == null) {
+            pending = EXIProcessor.allocateBuffer(Math.max(exi.remaining(), 1024));
+        }
+        pending.put(exi);
+        exi.free();
+        requests.add(request);
+
+        if (pending.position() >= maximumSize) {
+            flush();
+        } else if (scheduledFlush == null) {
+            // Registered before scheduling, so that a shutdown either flushes this coalescer or rejects the schedule.
+            scheduled.add(this);
+            try {
+                scheduledFlush = scheduler.schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes all data that has been gathered, if any.
+     */
+    synchronized void flush()
+    {
+        scheduled.remove(this);
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending == null) {
+            return;
+        }
+        Log.trace("Writing the EXI data of {} stanzas as {} bytes to session {}", requests.size(), pending.position(), session.hashCode());
+        final CoalescedWriteRequest combined = new CoalescedWriteRequest(session, pending.flip(), new ArrayList<>(requests));
+        pending = null;
+        requests.clear();
+        nextFilter.filterWrite(session, combined);
+    }
+
+    /**
+     * Drops all data that has been gathered. The write requests of the stanzas are completed with an exception.
+     */
+    synchronized void discard()
+    {
+        scheduled.remove(this);
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending != null) {
+            pending.free();
+            pending = null;
+        }
+        for (final WriteRequest request : requests) {
+            request.getFuture().setException(new WriteToClosedSessionException(request));
+        }
+        requests.clear();
+    }
+
+    /**
+     * A write request that contains the data of several others.
+     */
+    static final class CoalescedWriteRequest extends DefaultWriteRequest
+    {
+        private final List<WriteRequest> requests;
+
+        CoalescedWriteRequest(IoSession session, IoBuffer data, List<WriteRequest> requests)
+        {
+            super(data, new DefaultWriteFuture(session));
+            this.requests = requests;
+            getFuture().addListener(future -> {
+                final WriteFuture written = (WriteFuture) future;
+                for (final WriteRequest request : requests) {
+                    if (written.isWritten()) {
+                        request.getFuture().setWritten();
+                    } else {
+                        final Throwable cause = written.getException();
+                        request.getFuture().setException(cause != null ? cause : new IOException("Unable to write coalesced EXI data."));
+                    }
+                }
+            });
+        }
+
+        List<WriteRequest> getRequests()
+        {
+            return Collections.unmodifiableList(requests);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link AccumulationBuffer}.
+ */
+public class AccumulationBufferTest
+{
+    @After
+    public void restoreDefaults()
+    {
+        AccumulationBuffer.setMaximumSize(AccumulationBuffer.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Asserts that data that is appended in segments that do not align with chunks is read back unmodified.
+     */
+    @Test
+    public void testReadAcrossChunks() throws Exception
+    {
+        // Setup test fixture.
+        final byte[] data = new byte[AccumulationBuffer.CHUNK_SIZE * 3 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final AccumulationBuffer buffer = new AccumulationBuffer(null);
+
+        // Execute system under test.
+        for (int offset = 0; offset < data.length; offset += 700) {
+            buffer.append(IoBuffer.wrap(data, offset, Math.min(700, data.length - offset)));
+        }
+        final byte[] result = readAll(buffer.asInputStream());
+
+        // Verify results.
+        assertArrayEquals(data, result);
+        assertEquals(0, buffer.remaining());
+        buffer.free();
+    }
+
+    /**
+     * Asserts that reading can be retried from the mark, and that data before the mark is released.
+     */
+    @Test
+    public void testMarkAndReset() throws Exception
+    {
+        // Setup test fixture.
+        final byte[] data = new byte[AccumulationBuffer.CHUNK_SIZE * 2];
+        Arrays.fill(data, 0, AccumulationBuffer.CHUNK_SIZE + 10, (byte) 1);
+        Arrays.fill(data, AccumulationBuffer.CHUNK_SIZE + 10, data.length, (byte) 2);
+        final AccumulationBuffer buffer = new AccumulationBuffer(null);
+        buffer.append(IoBuffer.wrap(data));
+        final InputStream in = buffer.asInputStream();
+
+        // Execute system under test.
+        assertEquals(AccumulationBuffer.CHUNK_SIZE + 10, in.read(new byte[AccumulationBuffer.CHUNK_SIZE + 10]));
+        buffer.mark();
+        final int first = in.read();
+        buffer.reset();
+        final int retried = in.read();
+
+        // Verify results.
+        assertEquals(2, first);
+        assertEquals(2, retried);
+        assertEquals(data.length - AccumulationBuffer.CHUNK_SIZE - 10, buffer.size());
+        assertTrue(buffer.startsWith(new byte[] { 2, 2 }));
+        buffer.free();
+        assertTrue(buffer.isEmpty());
+    }
+
+    /**
+     * Asserts that data that exceeds the maximum size is refused, without anything being appended.
+     */
+    @Test
+    public void testMaximumSize() throws Exception
+    {
+        // Setup test fixture.
+        AccumulationBuffer.setMaximumSize(100);
+        final AccumulationBuffer buffer = new AccumulationBuffer(null);
+        buffer.append(IoBuffer.wrap(new byte[60]));
+
+        // Execute system under test.
+        try {
+            buffer.append(IoBuffer.wrap(new byte[60]));
+            fail("Expected the maximum size to be enforced.");
+        } catch (AccumulationBuffer.SizeLimitExceededException e) {
+            // Expected.
+        }
+
+        // Verify results.
+        assertEquals(60, buffer.size());
+        buffer.free();
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[333];
+        int count;
+        while ((count = in.read(chunk)) != -1) {
+            result.write(chunk, 0, count);
+        }
+        return result.toByteArray();
+    }
+}
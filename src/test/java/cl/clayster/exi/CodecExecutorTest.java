@@ -0,0 +1,173 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests that verify the implementation of {@link CodecExecutor}.
+ */
+public class CodecExecutorTest
+{
+    @Before
+    public void enable()
+    {
+        CodecExecutor.setEnabled(true);
+    }
+
+    @After
+    public void reset()
+    {
+        CodecExecutor.setEnabled(false);
+        CodecExecutor.setMaximumQueuedEvents(CodecExecutor.DEFAULT_MAXIMUM_QUEUED_EVENTS);
+    }
+
+    /**
+     * Asserts that received data, writes and the closing of a session reach the codec filter in the order in which
+     * they occurred, when both executor filters are in place.
+     */
+    @Test
+    public void testEventsOfSessionAreOrdered() throws Exception
+    {
+        // Setup test fixture.
+        final RecordingFilter codec = new RecordingFilter(null);
+        final IoSession ioSession = new DummySession();
+        ioSession.getFilterChain().addLast(EXICodecFilter.filterName, codec);
+        CodecExecutor.addTo(ioSession.getFilterChain(), EXICodecFilter.filterName);
+
+        // Execute system under test.
+        ioSession.getFilterChain().fireMessageReceived(buffer("r1"));
+        ioSession.write(buffer("w1"));
+        ioSession.getFilterChain().fireMessageReceived(buffer("r2"));
+        ioSession.write(buffer("w2"));
+        ioSession.getFilterChain().fireMessageReceived(buffer("r3"));
+        ioSession.closeNow();
+
+        // Verify results.
+        assertTrue(codec.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("received r1", "write w1", "received r2", "write w2", "received r3", "close", "closed"), codec.events);
+    }
+
+    /**
+     * Asserts that a session is closed, rather than queueing an unbounded number of events, when its events are not
+     * processed as fast as they arrive.
+     */
+    @Test
+    public void testSessionExceedingQueueIsClosed() throws Exception
+    {
+        // Setup test fixture.
+        CodecExecutor.setMaximumQueuedEvents(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingFilter codec = new RecordingFilter(release);
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession);
+        ioSession.getFilterChain().addLast(EXICodecFilter.filterName, codec);
+        CodecExecutor.addTo(ioSession.getFilterChain(), EXICodecFilter.filterName);
+
+        // Execute system under test.
+        try {
+            for (int i = 0; i < 10; i++) {
+                ioSession.getFilterChain().fireMessageReceived(buffer("r" + i));
+            }
+        } finally {
+            release.countDown();
+        }
+
+        // Verify results.
+        assertTrue(ioSession.isClosing());
+        assertTrue(codec.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(codec.events.size() < 10 + 2);
+        assertEquals("closed", codec.events.get(codec.events.size() - 1));
+    }
+
+    private static IoBuffer buffer(String text)
+    {
+        return IoBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stands in for the codec filter, recording the events that reach it.
+     */
+    private static class RecordingFilter extends IoFilterAdapter
+    {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        private RecordingFilter(CountDownLatch release)
+        {
+            this.release = release;
+        }
+
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+        {
+            if (release != null) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            // Give events that are handed off out of order a chance to overtake this one.
+            Thread.sleep(10);
+            events.add("received " + text(message));
+            nextFilter.messageReceived(session, message);
+        }
+
+        @Override
+        public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+        {
+            events.add("write " + text(writeRequest.getMessage()));
+            nextFilter.filterWrite(session, writeRequest);
+        }
+
+        @Override
+        public void filterClose(NextFilter nextFilter, IoSession session) throws Exception
+        {
+            events.add("close");
+            nextFilter.filterClose(session);
+        }
+
+        @Override
+        public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception
+        {
+            events.add("closed");
+            closed.countDown();
+            nextFilter.sessionClosed(session);
+        }
+
+        private static String text(Object message)
+        {
+            final IoBuffer buffer = (IoBuffer) message;
+            return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.CodingMode;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link ConfigurationRegistry}.
+ */
+public class ConfigurationRegistryTest
+{
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    @Before
+    public void clearRegistry() {
+        ConfigurationRegistry.getInstance().clear();
+    }
+
+    /**
+     * Asserts that a configuration that is saved is shared with sessions that use quick setup.
+     */
+    @Test
+    public void testSavedConfigurationIsShared() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(CodingMode.BYTE_PACKED);
+        configuration.saveConfiguration();
+
+        // Execute system under test.
+        final EXISetupConfiguration result = EXISetupConfiguration.parseQuickConfigId(configuration.getConfigurationId());
+
+        // Verify results.
+        assertSame(configuration, result);
+    }
+
+    /**
+     * Asserts that a configuration that is not in memory is loaded from disk once, and shared thereafter.
+     */
+    @Test
+    public void testConfigurationIsLoadedFromDisk() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(CodingMode.COMPRESSION);
+        configuration.saveConfiguration();
+        ConfigurationRegistry.getInstance().clear();
+
+        // Execute system under test.
+        final EXISetupConfiguration first = EXISetupConfiguration.parseQuickConfigId(configuration.getConfigurationId());
+        final EXISetupConfiguration second = EXISetupConfiguration.parseQuickConfigId(configuration.getConfigurationId());
+
+        // Verify results.
+        assertNotNull(first);
+        assertNotSame(configuration, first);
+        assertSame(first, second);
+        assertEquals(CodingMode.COMPRESSION, first.getCodingMode());
+    }
+
+    /**
+     * Asserts that a configuration ID that is not a hash does not lead to files being read.
+     */
+    @Test
+    public void testInvalidConfigurationId() throws Exception
+    {
+        // Execute system under test.
+        final EXISetupConfiguration result = EXISetupConfiguration.parseQuickConfigId("../schemas");
+
+        // Verify results.
+        assertNull(result);
+        assertEquals(0, ConfigurationRegistry.getInstance().size());
+    }
+}
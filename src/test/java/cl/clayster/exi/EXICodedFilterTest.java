@@ -15,15 +15,16 @@
  */
 package cl.clayster.exi;
 
+import com.siemens.ct.exi.core.CodingMode;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.session.DummySession;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.filter.FilterEvent;
-import org.junit.AfterClass;
-import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
@@ -31,14 +32,17 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.xmpp.packet.JID;
 import org.xmpp.packet.Message;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests that verify the implementation of EXICodecFilter.
@@ -48,30 +52,8 @@ import static org.junit.Assert.assertNotNull;
 @RunWith(MockitoJUnitRunner.class)
 public class EXICodedFilterTest
 {
-    @BeforeClass
-    public static void mockFolders() throws Exception {
-        EXIUtils.setSchemasFolder( Files.createTempDirectory("unit-test-classes-") );
-
-        // Copy all content to temp folder
-        try (final Stream<Path> stream = Files.walk(Paths.get("classes"))) {
-            stream.forEach(source -> {
-                Path destination = EXIUtils.getSchemasFolder().resolve(source.getFileName());
-                try {
-                    Files.copy(source, destination);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-        }
-
-        EXIUtils.generateSchemasFile();
-        EXIUtils.generateDefaultCanonicalSchema();
-    }
-
-    @AfterClass
-    public static void restoreFolders() {
-        EXIUtils.setSchemasFolder(null);
-    }
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
 
     /**
      * Asserts that a stanza that is first going out of the filter (being EXI-encoded in the process) and then flows
@@ -95,7 +77,9 @@ public class EXICodedFilterTest
         final WriteRequest writeRequest = new DefaultWriteRequest(IoBuffer.wrap(testData.getBytes()));
         final TestNextFilter nextFilter = new TestNextFilter();
         final IoSession ioSession = Mockito.mock(IoSession.class);
-        Mockito.when(ioSession.getAttribute(EXIUtils.EXI_PROCESSOR)).thenReturn(exiProcessor);
+        final EXISessionState state = new EXISessionState(ioSession);
+        state.setProcessor(exiProcessor);
+        Mockito.when(ioSession.getAttribute(EXIUtils.EXI_SESSION_STATE)).thenReturn(state);
 
         // Execute system under test.
         filter.filterWrite(nextFilter, ioSession, writeRequest);
@@ -106,9 +90,485 @@ public class EXICodedFilterTest
         assertEquals(testData, nextFilter.getMessageReceived());
     }
 
+    /**
+     * Asserts that a stanza that is received in many small segments is decoded once all segments have been received.
+     */
+    @Test
+    public void testRoundTripInSegments() throws Exception
+    {
+        // Setup test fixture.
+        final EXIProcessor exiProcessor = new EXIProcessor(new EXISetupConfiguration());
+
+        final Message stanza = new Message();
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("Line ").append(i).append(" of a message used by unit testing as implemented by ").append(EXICodedFilterTest.class).append('\n');
+        }
+        stanza.setBody(body.toString());
+        stanza.setFrom(new JID("john", "example.org", "mobile"));
+        stanza.setTo(new JID("jane", "example.com", "desktop"));
+
+        final String testData = stanza.toXML();
+        final IoBuffer encoded = exiProcessor.encodeByteBuffer(testData);
+        final byte[] exi = new byte[encoded.remaining()];
+        encoded.get(exi);
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(exiProcessor);
+
+        // Execute system under test.
+        final int segmentSize = 16;
+        for (int offset = 0; offset < exi.length; offset += segmentSize) {
+            final IoBuffer segment = IoBuffer.wrap(exi, offset, Math.min(segmentSize, exi.length - offset));
+            filter.messageReceived(nextFilter, ioSession, segment);
+        }
+
+        // Verify results.
+        assertEquals(testData, nextFilter.getMessageReceived());
+        assertEquals(1, nextFilter.getMessagesReceived().size());
+        filter.sessionClosed(nextFilter, ioSession);
+    }
+
+    /**
+     * Asserts that all stanzas are decoded, when several of them are received in one segment.
+     */
+    @Test
+    public void testMultipleStanzasInOneSegment() throws Exception
+    {
+        // Setup test fixture.
+        final EXIProcessor exiProcessor = new EXIProcessor(new EXISetupConfiguration());
+
+        final Message first = new Message();
+        first.setBody("First message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        final Message second = new Message();
+        second.setBody("Second message used by unit testing as implemented by " + EXICodedFilterTest.class);
+
+        final IoBuffer segment = IoBuffer.allocate(256).setAutoExpand(true);
+        segment.put(exiProcessor.encodeByteBuffer(first.toXML()));
+        segment.put(exiProcessor.encodeByteBuffer(second.toXML()));
+        segment.flip();
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(exiProcessor);
+
+        // Execute system under test.
+        filter.messageReceived(nextFilter, ioSession, segment);
+
+        // Verify results.
+        assertEquals(Arrays.asList(first.toXML(), second.toXML()), nextFilter.getMessagesReceived());
+    }
+
+    /**
+     * Asserts that when session-wide buffers are used, strings that were sent in an earlier stanza are not sent again,
+     * and that stanzas that refer to such strings can be decoded, also when received in small segments.
+     */
+    @Test
+    public void testRoundTripWithSessionWideBuffers() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration exiSetupConfiguration = new EXISetupConfiguration();
+        exiSetupConfiguration.setSessionWideBuffers(true);
+        final EXIProcessor sender = new EXIProcessor(exiSetupConfiguration);
+        final EXIProcessor receiver = new EXIProcessor(exiSetupConfiguration);
+
+        final Message stanza = new Message();
+        stanza.setBody("A message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        stanza.setFrom(new JID("john", "example.org", "mobile"));
+        stanza.setTo(new JID("jane", "example.com", "desktop"));
+        final String testData = stanza.toXML();
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(receiver);
+
+        // Execute system under test.
+        final IoBuffer first = sender.encodeByteBuffer(testData);
+        final IoBuffer second = sender.encodeByteBuffer(testData);
+        final int firstSize = first.remaining();
+        final int secondSize = second.remaining();
+        final IoBuffer both = IoBuffer.allocate(firstSize + secondSize).put(first).put(second).flip();
+        while (both.hasRemaining()) {
+            final IoBuffer segment = both.getSlice(Math.min(7, both.remaining()));
+            filter.messageReceived(nextFilter, ioSession, segment);
+        }
+
+        // Verify results.
+        assertTrue(secondSize < firstSize);
+        assertEquals(Arrays.asList(testData, testData), nextFilter.getMessagesReceived());
+        filter.sessionClosed(nextFilter, ioSession);
+    }
+
+    /**
+     * Asserts that when session-wide buffers are used, stanzas that are received in segments that do not align with
+     * stanzas are decoded correctly, also after the string table has wrapped around (which happens when more values are
+     * added than its capacity).
+     */
+    @Test
+    public void testSessionWideBuffersAfterTableWrapsAround() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration exiSetupConfiguration = new EXISetupConfiguration();
+        exiSetupConfiguration.setSessionWideBuffers(true);
+        final EXIProcessor sender = new EXIProcessor(exiSetupConfiguration);
+        final EXIProcessor receiver = new EXIProcessor(exiSetupConfiguration);
+
+        final List<String> testData = new ArrayList<>();
+        final IoBuffer all = IoBuffer.allocate(1024).setAutoExpand(true);
+        for (int i = 0; i < 3 * exiSetupConfiguration.getValuePartitionCapacity(); i++) {
+            final Message stanza = new Message();
+            stanza.setID("id-" + i);
+            stanza.setBody("Message " + (i % 10) + " used by unit testing");
+            stanza.setTo(new JID("jane", "example.com", "desktop"));
+            testData.add(stanza.toXML());
+            all.put(sender.encodeByteBuffer(stanza.toXML()));
+        }
+        all.flip();
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(receiver);
+
+        // Execute system under test.
+        while (all.hasRemaining()) {
+            filter.messageReceived(nextFilter, ioSession, all.getSlice(Math.min(11, all.remaining())));
+        }
+
+        // Verify results.
+        assertEquals(testData, nextFilter.getMessagesReceived());
+        filter.sessionClosed(nextFilter, ioSession);
+    }
+
+    /**
+     * Asserts that when the whole stream is encoded as one EXI fragment, stanzas that are received in small segments are
+     * each decoded as soon as they are complete, and that the end of the stream is recognized.
+     */
+    @Test
+    public void testRoundTripAsOneFragment() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration exiSetupConfiguration = new EXISetupConfiguration();
+        exiSetupConfiguration.setCodingMode(CodingMode.BYTE_PACKED);
+        exiSetupConfiguration.setStreaming(true);
+        final EXIProcessor sender = new EXIProcessor(exiSetupConfiguration);
+        final EXIProcessor receiver = new EXIProcessor(exiSetupConfiguration);
+
+        final Message stanza = new Message();
+        stanza.setBody("A message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        stanza.setFrom(new JID("john", "example.org", "mobile"));
+        stanza.setTo(new JID("jane", "example.com", "desktop"));
+        final String testData = stanza.toXML();
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(receiver);
+
+        // Execute system under test.
+        final List<IoBuffer> encoded = Arrays.asList(
+            sender.encodeByteBuffer(testData),
+            sender.encodeByteBuffer(testData),
+            sender.encodeStreamEnd("<exi:streamEnd xmlns:exi='http://jabber.org/protocol/compress/exi'/>"));
+        for (final IoBuffer exi : encoded) {
+            while (exi.hasRemaining()) {
+                filter.messageReceived(nextFilter, ioSession, exi.getSlice(Math.min(5, exi.remaining())));
+            }
+        }
+
+        // Verify results.
+        assertTrue(encoded.get(1).position() < encoded.get(0).position());
+        assertEquals(Arrays.asList(testData, testData, "</stream:stream>"), nextFilter.getMessagesReceived());
+        filter.sessionClosed(nextFilter, ioSession);
+    }
+
+    /**
+     * Asserts that data of a session that encodes the whole stream as one EXI fragment is not decoded, when the maximum
+     * number of such sessions has been reached.
+     */
+    @Test
+    public void testStreamingBeyondMaximumIsRefused() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration exiSetupConfiguration = new EXISetupConfiguration();
+        exiSetupConfiguration.setCodingMode(CodingMode.BYTE_PACKED);
+        exiSetupConfiguration.setStreaming(true);
+        final EXIProcessor sender = new EXIProcessor(exiSetupConfiguration);
+
+        final Message stanza = new Message();
+        stanza.setBody("A message used by unit testing as implemented by " + EXICodedFilterTest.class);
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(new EXIProcessor(exiSetupConfiguration));
+
+        EXIFrameDecoder.setMaximumStreamingSessions(0);
+        try {
+            // Execute system under test.
+            final boolean available = EXIFrameDecoder.hasStreamingCapacity();
+            filter.messageReceived(nextFilter, ioSession, sender.encodeByteBuffer(stanza.toXML()));
+
+            // Verify results.
+            assertFalse(available);
+            assertTrue(nextFilter.getMessagesReceived().isEmpty());
+        } finally {
+            EXIFrameDecoder.setMaximumStreamingSessions(EXIFrameDecoder.DEFAULT_MAXIMUM_STREAMING_SESSIONS);
+            filter.sessionClosed(nextFilter, ioSession);
+        }
+    }
+
+    /**
+     * Asserts that a stanza that is received in segments while no thread is available to continue decoding it, is
+     * decoded and passed on once a thread becomes available, without the data being decoded on the calling thread.
+     */
+    @Test
+    public void testIncompleteStanzaWaitsForThread() throws Exception
+    {
+        // Setup test fixture.
+        final EXIProcessor exiProcessor = new EXIProcessor(new EXISetupConfiguration());
+        final Message first = new Message();
+        first.setBody("First message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        final Message second = new Message();
+        second.setBody("Second message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        final IoBuffer firstExi = exiProcessor.encodeByteBuffer(first.toXML());
+        final IoBuffer secondExi = exiProcessor.encodeByteBuffer(second.toXML());
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter firstNextFilter = new TestNextFilter();
+        final IoSession firstSession = new DummySession();
+        EXISessionState.get(firstSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+        final TestNextFilter secondNextFilter = new TestNextFilter();
+        final IoSession secondSession = new DummySession();
+        EXISessionState.get(secondSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (EXIFrameDecoder.getRunningContinuations() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        EXIFrameDecoder.setMaximumContinuations(1);
+        try {
+            // Execute system under test.
+            filter.messageReceived(firstNextFilter, firstSession, firstExi.getSlice(firstExi.remaining() / 2));
+            while (secondExi.hasRemaining()) {
+                filter.messageReceived(secondNextFilter, secondSession, secondExi.getSlice(Math.min(7, secondExi.remaining())));
+            }
+            final List<Object> beforeThreadAvailable = new ArrayList<>(secondNextFilter.getMessagesReceived());
+            filter.messageReceived(firstNextFilter, firstSession, firstExi.getSlice(firstExi.remaining()));
+            while (secondNextFilter.getMessagesReceived().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Verify results.
+            assertTrue(beforeThreadAvailable.isEmpty());
+            assertEquals(Arrays.asList(first.toXML()), firstNextFilter.getMessagesReceived());
+            assertEquals(Arrays.asList(second.toXML()), secondNextFilter.getMessagesReceived());
+        } finally {
+            EXIFrameDecoder.setMaximumContinuations(EXIFrameDecoder.DEFAULT_MAXIMUM_CONTINUATIONS);
+            filter.sessionClosed(firstNextFilter, firstSession);
+            filter.sessionClosed(secondNextFilter, secondSession);
+        }
+    }
+
+    /**
+     * Asserts that a stanza that stops receiving data gives up its thread to a stanza of another session that waits for
+     * one, and is decoded once the rest of its data arrives, without either session being closed.
+     */
+    @Test
+    public void testStalledStanzaYieldsThread() throws Exception
+    {
+        // Setup test fixture.
+        final EXIProcessor exiProcessor = new EXIProcessor(new EXISetupConfiguration());
+        final Message first = new Message();
+        first.setBody("First message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        final Message second = new Message();
+        second.setBody("Second message used by unit testing as implemented by " + EXICodedFilterTest.class);
+        final IoBuffer firstExi = exiProcessor.encodeByteBuffer(first.toXML());
+        final IoBuffer secondExi = exiProcessor.encodeByteBuffer(second.toXML());
+
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter firstNextFilter = new TestNextFilter();
+        final IoSession firstSession = new DummySession();
+        EXISessionState.get(firstSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+        final TestNextFilter secondNextFilter = new TestNextFilter();
+        final IoSession secondSession = new DummySession();
+        EXISessionState.get(secondSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+
+        final long deadline = System.currentTimeMillis() + 5000 + EXIFrameDecoder.YIELD_DELAY.toMillis();
+        while (EXIFrameDecoder.getRunningContinuations() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        EXIFrameDecoder.setMaximumContinuations(1);
+        try {
+            // Execute system under test.
+            filter.messageReceived(firstNextFilter, firstSession, firstExi.getSlice(firstExi.remaining() / 2));
+            while (secondExi.hasRemaining()) {
+                filter.messageReceived(secondNextFilter, secondSession, secondExi.getSlice(Math.min(7, secondExi.remaining())));
+            }
+            while (secondNextFilter.getMessagesReceived().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            final List<Object> beforeCompleted = new ArrayList<>(firstNextFilter.getMessagesReceived());
+            filter.messageReceived(firstNextFilter, firstSession, firstExi.getSlice(firstExi.remaining()));
+            while (firstNextFilter.getMessagesReceived().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Verify results.
+            assertTrue(beforeCompleted.isEmpty());
+            assertEquals(Arrays.asList(second.toXML()), secondNextFilter.getMessagesReceived());
+            assertEquals(Arrays.asList(first.toXML()), firstNextFilter.getMessagesReceived());
+            assertFalse(firstSession.isClosing());
+            assertFalse(secondSession.isClosing());
+        } finally {
+            EXIFrameDecoder.setMaximumContinuations(EXIFrameDecoder.DEFAULT_MAXIMUM_CONTINUATIONS);
+            filter.sessionClosed(firstNextFilter, firstSession);
+            filter.sessionClosed(secondNextFilter, secondSession);
+        }
+    }
+
+    /**
+     * Asserts that data that is written after the codec has been added to a session that negotiated EXI using the
+     * alternative binding, but before the alternative binding filter has been removed, is not encoded by the latter.
+     */
+    @Test
+    public void testAlternativeBindingPassesOnWritesAfterCodecIsAdded() throws Exception
+    {
+        // Setup test fixture.
+        final IoSession ioSession = new DummySession();
+        EXISessionState.get(ioSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+        ioSession.getFilterChain().addLast(EXICodecFilter.filterName, new EXICodecFilter());
+        final EXIAlternativeBindingFilter filter = new EXIAlternativeBindingFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoBuffer encoded = IoBuffer.wrap(new byte[] { (byte) 0x80, 0x40, 0x01 });
+        final WriteRequest writeRequest = new DefaultWriteRequest(encoded);
+
+        // Execute system under test.
+        filter.filterWrite(nextFilter, ioSession, writeRequest);
+
+        // Verify results.
+        assertEquals(1, nextFilter.getWritesRequested().size());
+        assertSame(encoded, nextFilter.getWritesRequested().get(0).getMessage());
+        EXISessionState.remove(ioSession);
+    }
+
+    /**
+     * Asserts that when coalescing is enabled, stanzas are written as one buffer, which contains all of them.
+     */
+    @Test
+    public void testWritesAreCoalesced() throws Exception
+    {
+        // Setup test fixture.
+        EXICodecFilter.setCoalescingDelay(Duration.ofHours(1));
+        try {
+            final Message first = new Message();
+            first.setBody("First message used by unit testing as implemented by " + EXICodedFilterTest.class);
+            final Message second = new Message();
+            second.setBody("Second message used by unit testing as implemented by " + EXICodedFilterTest.class);
+
+            final EXICodecFilter filter = new EXICodecFilter();
+            final TestNextFilter nextFilter = new TestNextFilter();
+            final IoSession ioSession = new DummySession();
+            EXISessionState.get(ioSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+
+            // Execute system under test.
+            filter.filterWrite(nextFilter, ioSession, new DefaultWriteRequest(IoBuffer.wrap(first.toXML().getBytes())));
+            filter.filterWrite(nextFilter, ioSession, new DefaultWriteRequest(IoBuffer.wrap(second.toXML().getBytes())));
+            final int writesBeforeClose = nextFilter.getWritesRequested().size();
+            filter.filterClose(nextFilter, ioSession);
+
+            // Verify results.
+            assertEquals(0, writesBeforeClose);
+            assertEquals(1, nextFilter.getWritesRequested().size());
+
+            final TestNextFilter receiverNextFilter = new TestNextFilter();
+            final IoSession receiverSession = new DummySession();
+            EXISessionState.get(receiverSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+            filter.messageReceived(receiverNextFilter, receiverSession, nextFilter.getWritesRequested().get(0).getMessage());
+            assertEquals(Arrays.asList(first.toXML(), second.toXML()), receiverNextFilter.getMessagesReceived());
+            filter.sessionClosed(nextFilter, ioSession);
+        } finally {
+            EXICodecFilter.setCoalescingDelay(Duration.ZERO);
+        }
+    }
+
+    /**
+     * Asserts that a session of which the processor has hibernated (after being idle) can still encode and decode.
+     */
+    @Test
+    public void testRoundTripAfterHibernation() throws Exception
+    {
+        // Setup test fixture.
+        EXISessionState.setHibernationDelay(Duration.ofMillis(10));
+        try {
+            final Message stanza = new Message();
+            stanza.setBody("A message used by unit testing as implemented by " + EXICodedFilterTest.class);
+            final String testData = stanza.toXML();
+
+            final EXICodecFilter filter = new EXICodecFilter();
+            final TestNextFilter nextFilter = new TestNextFilter();
+            final IoSession ioSession = new DummySession();
+            EXISessionState.get(ioSession).setProcessor(new EXIProcessor(new EXISetupConfiguration()));
+            final long hibernatedBefore = EXIMetrics.getInstance().getSessionsHibernated();
+            filter.filterWrite(nextFilter, ioSession, new DefaultWriteRequest(IoBuffer.wrap(testData.getBytes())));
+
+            // Execute system under test.
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (EXIMetrics.getInstance().getSessionsHibernated() == hibernatedBefore && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            final long hibernatedAfter = EXIMetrics.getInstance().getSessionsHibernated();
+            final WriteRequest writeRequest = new DefaultWriteRequest(IoBuffer.wrap(testData.getBytes()));
+            filter.filterWrite(nextFilter, ioSession, writeRequest);
+            filter.messageReceived(nextFilter, ioSession, writeRequest.getMessage());
+
+            // Verify results.
+            assertTrue(hibernatedAfter > hibernatedBefore);
+            assertEquals(testData, nextFilter.getMessageReceived());
+            filter.sessionClosed(nextFilter, ioSession);
+        } finally {
+            EXISessionState.setHibernationDelay(EXISessionState.DEFAULT_HIBERNATION_DELAY);
+        }
+    }
+
+    /**
+     * Asserts that once data has been written, only the buffers that were allocated by the filter are released, and not
+     * buffers that replaced the original message elsewhere.
+     */
+    @Test
+    public void testOnlyEncodedBuffersAreReleased() throws Exception
+    {
+        // Setup test fixture.
+        final EXICodecFilter filter = new EXICodecFilter();
+        final TestNextFilter nextFilter = new TestNextFilter();
+        final IoSession ioSession = new DummySession();
+        final EXISessionState state = EXISessionState.get(ioSession);
+        final IoBuffer encoded = state.trackEncoded(Mockito.mock(IoBuffer.class));
+        final IoBuffer replaced = Mockito.mock(IoBuffer.class);
+        final WriteRequest encodedRequest = new DefaultWriteRequest(IoBuffer.allocate(1));
+        encodedRequest.setMessage(encoded);
+        final WriteRequest replacedRequest = new DefaultWriteRequest(IoBuffer.allocate(1));
+        replacedRequest.setMessage(replaced);
+
+        // Execute system under test.
+        filter.messageSent(nextFilter, ioSession, encodedRequest);
+        filter.messageSent(nextFilter, ioSession, replacedRequest);
+        filter.messageSent(nextFilter, ioSession, encodedRequest);
+
+        // Verify results.
+        Mockito.verify(encoded, Mockito.times(1)).free();
+        Mockito.verify(replaced, Mockito.never()).free();
+    }
+
     public static class TestNextFilter implements IoFilter.NextFilter
     {
         private Object messageReceived;
+        private final List<Object> messagesReceived = Collections.synchronizedList(new ArrayList<>());
+        private final List<WriteRequest> writesRequested = new ArrayList<>();
 
         @Override public void sessionCreated(IoSession session) {}
 
@@ -124,15 +584,35 @@ public class EXICodedFilterTest
 
         @Override public void messageReceived(IoSession session, Object message) {
             this.messageReceived = message;
+            if (!(message instanceof IoBuffer)) {
+                messagesReceived.add(message);
+            }
         }
 
         public Object getMessageReceived() {
             return messageReceived;
         }
 
+        /**
+         * Returns all messages (other than raw data) that have been received.
+         */
+        public List<Object> getMessagesReceived() {
+            return messagesReceived;
+        }
+
         @Override public void messageSent(IoSession session, WriteRequest writeRequest) {}
 
-        @Override public void filterWrite(IoSession session, WriteRequest writeRequest) {}
+        @Override public void filterWrite(IoSession session, WriteRequest writeRequest) {
+            writesRequested.add(writeRequest);
+        }
+
+        /**
+         * Returns all write requests that have been passed on.
+         */
+        public List<WriteRequest> getWritesRequested() {
+            return writesRequested;
+        }
+
         @Override public void filterClose(IoSession session) {}
 
         @Override public void event(IoSession session, FilterEvent event) {}
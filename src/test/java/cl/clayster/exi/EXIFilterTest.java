@@ -0,0 +1,129 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests that verify the implementation of {@link EXIFilter}.
+ */
+public class EXIFilterTest
+{
+    @Rule
+    public final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    /**
+     * Asserts that setups that list the same schemas in a different order share one canonical schema, which is written
+     * only by the first of these setups.
+     */
+    @Test
+    public void testSchemaOrderDoesNotMatter() throws Exception
+    {
+        // Setup test fixture.
+        final List<SchemaRegistry.Schema> schemas = getSchemas(3);
+        final List<SchemaRegistry.Schema> reversed = new ArrayList<>(schemas);
+        Collections.reverse(reversed);
+        final EXIFilter filter = new EXIFilter();
+        final IoSession firstSession = new DummySession();
+        final IoSession secondSession = new DummySession();
+        assertNotNull(filter.setupResponse(setup(schemas), firstSession));
+        final Map<Path, Long> filesBefore = listExiFolder();
+
+        // Execute system under test.
+        final String response = filter.setupResponse(setup(reversed), secondSession);
+
+        // Verify results.
+        assertTrue(response.contains("agreement=\"true\""));
+        assertEquals(firstSession.getAttribute(EXIUtils.SCHEMA_ID), secondSession.getAttribute(EXIUtils.SCHEMA_ID));
+        assertEquals(filesBefore, listExiFolder());
+    }
+
+    /**
+     * Asserts that a canonical schema that has been removed after it was created, is created again when it is needed.
+     */
+    @Test
+    public void testRemovedCanonicalSchemaIsRecreated() throws Exception
+    {
+        // Setup test fixture.
+        final List<SchemaRegistry.Schema> schemas = getSchemas(2);
+        final EXIFilter filter = new EXIFilter();
+        final IoSession firstSession = new DummySession();
+        filter.setupResponse(setup(schemas), firstSession);
+        final Path canonicalSchema = EXIUtils.getExiFolder().resolve(firstSession.getAttribute(EXIUtils.SCHEMA_ID) + ".xsd");
+        Files.delete(canonicalSchema);
+
+        // Execute system under test.
+        final IoSession secondSession = new DummySession();
+        filter.setupResponse(setup(schemas), secondSession);
+
+        // Verify results.
+        assertEquals(firstSession.getAttribute(EXIUtils.SCHEMA_ID), secondSession.getAttribute(EXIUtils.SCHEMA_ID));
+        assertTrue(Files.exists(canonicalSchema));
+    }
+
+    private static List<SchemaRegistry.Schema> getSchemas(int count) throws Exception
+    {
+        final List<SchemaRegistry.Schema> result = SchemaRegistry.getInstance().getSchemas().stream()
+            .filter(schema -> schema.getNamespace() != null)
+            .limit(count)
+            .collect(Collectors.toList());
+        assertEquals(count, result.size());
+        return result;
+    }
+
+    private static Element setup(List<SchemaRegistry.Schema> schemas)
+    {
+        final Element setup = DocumentHelper.createElement("setup");
+        setup.addNamespace("", "http://jabber.org/protocol/compress/exi");
+        for (final SchemaRegistry.Schema schema : schemas) {
+            setup.addElement("schema")
+                .addAttribute("ns", schema.getNamespace())
+                .addAttribute("bytes", schema.getBytes())
+                .addAttribute("md5Hash", schema.getMd5Hash());
+        }
+        return setup;
+    }
+
+    private static Map<Path, Long> listExiFolder() throws Exception
+    {
+        final Map<Path, Long> result = new HashMap<>();
+        try (final Stream<Path> stream = Files.list(EXIUtils.getExiFolder())) {
+            for (final Path path : stream.collect(Collectors.toList())) {
+                result.put(path, Files.getLastModifiedTime(path).toMillis());
+            }
+        }
+        return result;
+    }
+}
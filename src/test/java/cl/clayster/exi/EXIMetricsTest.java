@@ -0,0 +1,104 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests that verify the implementation of {@link EXIMetrics}.
+ */
+public class EXIMetricsTest
+{
+    /**
+     * Asserts that data volumes are accumulated, and that the compression ratio is calculated from those.
+     */
+    @Test
+    public void testCompressionRatio() throws Exception
+    {
+        // Setup test fixture.
+        final EXIMetrics metrics = new EXIMetrics();
+
+        // Execute system under test.
+        metrics.recordEncode(100, 20, 1000);
+        metrics.recordEncode(300, 60, 1000);
+
+        // Verify results.
+        assertEquals(400, metrics.getPlainBytesSent());
+        assertEquals(80, metrics.getExiBytesSent());
+        assertEquals(0.2, metrics.getCompressionRatioSent(), 0.0001);
+        assertEquals(0, metrics.getCompressionRatioReceived(), 0.0001);
+        assertEquals(2, metrics.getEncodeCount());
+    }
+
+    /**
+     * Asserts that latency percentiles are reported with an upper bound that is accurate to a power of two.
+     */
+    @Test
+    public void testLatencyPercentile() throws Exception
+    {
+        // Setup test fixture.
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        // Execute system under test.
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        // Verify results.
+        assertEquals(128, histogram.getPercentileMicros(0.99));
+        assertEquals(16384, histogram.getPercentileMicros(1.0));
+        assertEquals((99 * 100 + 10000) / 100.0, histogram.getMeanMicros(), 0.0001);
+    }
+
+    /**
+     * Asserts that the depth of the codec queue is a gauge, of which the peak is retained until the metrics are reset.
+     */
+    @Test
+    public void testCodecQueueDepth() throws Exception
+    {
+        // Setup test fixture.
+        final EXIMetrics metrics = new EXIMetrics();
+
+        // Execute system under test.
+        metrics.recordCodecTaskQueued();
+        metrics.recordCodecTaskQueued();
+        metrics.recordCodecTaskStarted();
+
+        // Verify results.
+        assertEquals(2, metrics.getCodecTasks());
+        assertEquals(1, metrics.getCodecQueueDepth());
+        assertEquals(2, metrics.getCodecQueueDepthMax());
+        metrics.reset();
+        assertEquals(1, metrics.getCodecQueueDepth());
+        assertEquals(1, metrics.getCodecQueueDepthMax());
+    }
+
+    /**
+     * Asserts that the UTF-8 length of text is calculated without encoding it.
+     */
+    @Test
+    public void testUtf8Length() throws Exception
+    {
+        final String text = "caf\u00e9 \u2603 \ud83d\ude00";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, EXIMetrics.utf8Length(text));
+    }
+}
@@ -25,6 +25,7 @@ import java.nio.file.Path;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Unit tests that verify the functionality as implemented by {@link EXIUtils}.
@@ -177,4 +178,17 @@ public class EXIUtilsTest
         // If this fails, first read https://github.com/xmlunit/user-guide/wiki/XMLUnit-with-Java-9-and-above
         assertThat(EXIUtils.readFile(canonicalSchema), CompareMatcher.isIdenticalTo(expectedXML).ignoreWhitespace());
     }
+
+    /**
+     * Asserts that the local name of the root element is found, with or without a namespace prefix.
+     */
+    @Test
+    public void testGetRootElementName() throws Exception
+    {
+        assertEquals("setup", EXIUtils.getRootElementName("<setup xmlns='http://jabber.org/protocol/compress/exi'/>"));
+        assertEquals("compress", EXIUtils.getRootElementName("<compress xmlns='http://jabber.org/protocol/compress'><method>exi</method></compress>"));
+        assertEquals("streamEnd", EXIUtils.getRootElementName("  <exi:streamEnd/>"));
+        assertEquals("message", EXIUtils.getRootElementName("<message>"));
+        assertNull(EXIUtils.getRootElementName("text"));
+    }
 }
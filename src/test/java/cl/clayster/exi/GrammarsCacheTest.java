@@ -0,0 +1,141 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.grammars.Grammars;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link GrammarsCache}.
+ */
+public class GrammarsCacheTest
+{
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    /**
+     * Asserts that grammars for the same canonical schema are created once, and shared thereafter.
+     */
+    @Test
+    public void testSameInstanceIsShared() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsCache cache = new GrammarsCache(2);
+
+        // Execute system under test.
+        final Grammars first = cache.getGrammars(null, EXIUtils.getDefaultCanonicalSchemaLocation());
+        final Grammars second = cache.getGrammars(null, EXIUtils.getDefaultCanonicalSchemaLocation());
+
+        // Verify results.
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * Asserts that a canonical schema of which the content is modified does not lead to stale grammars being used.
+     */
+    @Test
+    public void testModifiedSchemaIsNotStale() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsCache cache = new GrammarsCache(2);
+        final Path canonicalSchema = EXIUtils.getExiFolder().resolve("unit-test-modified.xsd");
+        Files.copy(EXIUtils.getDefaultCanonicalSchemaLocation(), canonicalSchema);
+        final Grammars first = cache.getGrammars("unit-test-modified", canonicalSchema);
+
+        // Execute system under test.
+        Files.write(canonicalSchema, "\n".getBytes(), StandardOpenOption.APPEND);
+        final Grammars second = cache.getGrammars("unit-test-modified", canonicalSchema);
+
+        // Verify results.
+        assertNotSame(first, second);
+        assertEquals("unit-test-modified", second.getSchemaId());
+        assertEquals(2, cache.getMisses());
+    }
+
+    /**
+     * Asserts that a schema that is imported by a canonical schema, of which the content is modified in place, does not
+     * lead to stale grammars being used.
+     */
+    @Test
+    public void testModifiedImportIsNotStale() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsCache cache = new GrammarsCache(2);
+        final Path canonicalSchema = EXIUtils.getExiFolder().resolve("unit-test-modified-import.xsd");
+        Files.copy(EXIUtils.getDefaultCanonicalSchemaLocation(), canonicalSchema);
+        final Grammars first = cache.getGrammars("unit-test-modified-import", canonicalSchema);
+
+        // Execute system under test.
+        Files.write(SchemaRegistry.getInstance().getLocation("http://etherx.jabber.org/streams"), "\n".getBytes(), StandardOpenOption.APPEND);
+        final Grammars second = cache.getGrammars("unit-test-modified-import", canonicalSchema);
+
+        // Verify results.
+        assertNotSame(first, second);
+        assertEquals(2, cache.getMisses());
+    }
+
+    /**
+     * Asserts that a canonical schema that is rewritten with the same content does not lead to grammars being created
+     * again.
+     */
+    @Test
+    public void testRewrittenSchemaWithSameContentIsShared() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsCache cache = new GrammarsCache(2);
+        final Path canonicalSchema = EXIUtils.getExiFolder().resolve("unit-test-rewritten.xsd");
+        Files.copy(EXIUtils.getDefaultCanonicalSchemaLocation(), canonicalSchema);
+        final Grammars first = cache.getGrammars("unit-test-rewritten", canonicalSchema);
+
+        // Execute system under test.
+        Files.setLastModifiedTime(canonicalSchema, FileTime.fromMillis(Files.getLastModifiedTime(canonicalSchema).toMillis() + 60_000));
+        final Grammars second = cache.getGrammars("unit-test-rewritten", canonicalSchema);
+
+        // Verify results.
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Asserts that the cache does not grow beyond its maximum size.
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsCache cache = new GrammarsCache(1);
+        final Path canonicalSchema = EXIUtils.getExiFolder().resolve("unit-test-eviction.xsd");
+        Files.copy(EXIUtils.getDefaultCanonicalSchemaLocation(), canonicalSchema);
+
+        // Execute system under test.
+        cache.getGrammars(null, EXIUtils.getDefaultCanonicalSchemaLocation());
+        cache.getGrammars("unit-test-eviction", canonicalSchema);
+
+        // Verify results.
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link GrammarsPrewarmer}.
+ */
+public class GrammarsPrewarmerTest
+{
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.empty();
+
+    /**
+     * Asserts that schema IDs are ordered by usage, most used first.
+     */
+    @Test
+    public void testMostUsed() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsPrewarmer prewarmer = new GrammarsPrewarmer();
+        prewarmer.recordUsage("aaaa");
+        prewarmer.recordUsage("bbbb");
+        prewarmer.recordUsage("bbbb");
+        prewarmer.recordUsage(null);
+        prewarmer.recordUsage(null);
+        prewarmer.recordUsage(null);
+
+        // Execute system under test.
+        final Object result = prewarmer.getMostUsed(2);
+
+        // Verify results.
+        assertEquals(Arrays.asList(GrammarsPrewarmer.DEFAULT_SCHEMA_ID, "bbbb"), result);
+    }
+
+    /**
+     * Asserts that usage that is stored is loaded again on the next start.
+     */
+    @Test
+    public void testUsageIsPersisted() throws Exception
+    {
+        // Setup test fixture.
+        final GrammarsPrewarmer before = new GrammarsPrewarmer();
+        before.recordUsage("cccc");
+        before.recordUsage("cccc");
+        before.store();
+
+        // Execute system under test.
+        final GrammarsPrewarmer after = new GrammarsPrewarmer();
+        after.start(0);
+        after.stop();
+
+        // Verify results.
+        assertEquals(2, after.getUsage("cccc"));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link GrammarsSnapshot}.
+ */
+public class GrammarsSnapshotTest
+{
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    /**
+     * Asserts that the fingerprint of a canonical schema changes when a schema that it (indirectly) imports changes.
+     */
+    @Test
+    public void testFingerprintCoversImports() throws Exception
+    {
+        // Setup test fixture.
+        final Path canonicalSchema = EXIUtils.getDefaultCanonicalSchemaLocation();
+        final String before = GrammarsSnapshot.fingerprint(canonicalSchema);
+
+        // Execute system under test.
+        Files.write(SchemaRegistry.getInstance().getLocation("http://etherx.jabber.org/streams"), "\n".getBytes(), StandardOpenOption.APPEND);
+        final String after = GrammarsSnapshot.fingerprint(canonicalSchema);
+
+        // Verify results.
+        assertNotEquals(before, after);
+    }
+
+    /**
+     * Asserts that grammars that are stored in a snapshot can be loaded again, and can be used to encode and decode a
+     * stanza.
+     */
+    @Test
+    public void testSnapshotRoundTrip() throws Exception
+    {
+        // Setup test fixture.
+        final Path canonicalSchema = EXIUtils.getDefaultCanonicalSchemaLocation();
+        final String fingerprint = GrammarsSnapshot.fingerprint(canonicalSchema);
+        GrammarsSnapshot.store(canonicalSchema, fingerprint, GrammarsCache.getInstance().getGrammars(null, canonicalSchema));
+
+        final Message stanza = new Message();
+        stanza.setBody("A message used by unit testing as implemented by " + GrammarsSnapshotTest.class);
+        stanza.setFrom(new JID("john", "example.org", "mobile"));
+        stanza.setTo(new JID("jane", "example.com", "desktop"));
+
+        // Execute system under test.
+        final Grammars result = GrammarsSnapshot.load(canonicalSchema, fingerprint);
+
+        // Verify results.
+        assertNotNull(result);
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setGrammars(result);
+        final EXIProcessor processor = new EXIProcessor((EXIFactory) configuration);
+        final IoBuffer encoded = processor.encodeByteBuffer(stanza.toXML());
+        assertEquals(stanza.toXML(), processor.decode(encoded.asInputStream()));
+    }
+
+    /**
+     * Asserts that a snapshot of which the fingerprint does not match is not used.
+     */
+    @Test
+    public void testStaleSnapshotIsNotLoaded() throws Exception
+    {
+        // Setup test fixture.
+        final Path canonicalSchema = EXIUtils.getDefaultCanonicalSchemaLocation();
+        GrammarsSnapshot.store(canonicalSchema, "stale", GrammarsCache.getInstance().getGrammars(null, canonicalSchema));
+
+        // Execute system under test.
+        final Object result = GrammarsSnapshot.load(canonicalSchema, GrammarsSnapshot.fingerprint(canonicalSchema));
+
+        // Verify results.
+        assertNull(result);
+    }
+}
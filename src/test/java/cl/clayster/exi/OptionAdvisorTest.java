@@ -0,0 +1,123 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.siemens.ct.exi.core.CodingMode;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Presence;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link OptionAdvisor}.
+ */
+public class OptionAdvisorTest
+{
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    @Before
+    public void clearAdvisor() {
+        OptionAdvisor.getInstance().clear();
+    }
+
+    /**
+     * Asserts that nothing is recommended before enough stanzas have been analyzed.
+     */
+    @Test
+    public void testNoRecommendationWithoutSamples() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.saveConfiguration();
+        final OptionAdvisor advisor = new OptionAdvisor();
+
+        // Execute system under test.
+        advisor.analyze(configuration, presence().getBytes(UTF_8));
+        final String result = advisor.getRecommendation(configuration);
+
+        // Verify results.
+        assertNull(result);
+    }
+
+    /**
+     * Asserts that clients that compress tiny stanzas are recommended a configuration that does not compress.
+     */
+    @Test
+    public void testTinyStanzasAreNotCompressed() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(CodingMode.COMPRESSION);
+        configuration.saveConfiguration();
+        final OptionAdvisor advisor = new OptionAdvisor();
+        final byte[] stanza = presence().getBytes(UTF_8);
+
+        // Execute system under test.
+        for (int i = 0; i < OptionAdvisor.SAMPLES_PER_EVALUATION; i++) {
+            advisor.analyze(configuration, stanza);
+        }
+        final String result = advisor.getRecommendation(configuration);
+
+        // Verify results.
+        assertNotNull(result);
+        final EXISetupConfiguration recommended = EXISetupConfiguration.parseQuickConfigId(result);
+        assertNotNull(recommended);
+        assertNotEquals(CodingMode.COMPRESSION, recommended.getCodingMode());
+        assertEquals(configuration.getSchemaId(), recommended.getSchemaId());
+    }
+
+    /**
+     * Asserts that a recommendation is not made to clients that use the same schemas, but options that the candidate
+     * configurations do not vary.
+     */
+    @Test
+    public void testNoRecommendationForOtherBlockSize() throws Exception
+    {
+        // Setup test fixture.
+        final EXISetupConfiguration configuration = new EXISetupConfiguration();
+        configuration.setCodingMode(CodingMode.COMPRESSION);
+        configuration.saveConfiguration();
+        final EXISetupConfiguration other = new EXISetupConfiguration();
+        other.setCodingMode(CodingMode.COMPRESSION);
+        other.setBlockSize(configuration.getBlockSize() / 2);
+        other.saveConfiguration();
+        final OptionAdvisor advisor = new OptionAdvisor();
+        final byte[] stanza = presence().getBytes(UTF_8);
+
+        // Execute system under test.
+        for (int i = 0; i < OptionAdvisor.SAMPLES_PER_EVALUATION; i++) {
+            advisor.analyze(configuration, stanza);
+        }
+        final String result = advisor.getRecommendation(other);
+
+        // Verify results.
+        assertNotNull(advisor.getRecommendation(configuration));
+        assertNull(result);
+    }
+
+    private static String presence()
+    {
+        final Presence presence = new Presence();
+        presence.setFrom(new JID("sensor", "example.org", "device"));
+        presence.setTo(new JID("hub", "example.org", "desktop"));
+        return presence.toXML();
+    }
+}
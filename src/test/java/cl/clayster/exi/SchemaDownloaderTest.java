@@ -0,0 +1,179 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link SchemaDownloader}, using a local HTTP server.
+ */
+public class SchemaDownloaderTest
+{
+    private static final String SCHEMA = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:unit-test'/>";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/schema.xsd", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body = SCHEMA.getBytes(UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow.xsd", exchange -> {
+            // Sends data steadily, but slowly: no read ever takes long.
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, 0);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 100; i++) {
+                    out.write("<!-- slowly -->".getBytes(UTF_8));
+                    out.flush();
+                    Thread.sleep(50);
+                }
+                out.write(SCHEMA.getBytes(UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The client has given up.
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private String url()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/schema.xsd";
+    }
+
+    /**
+     * Asserts that concurrent downloads of the same schema result in one request, and that the result is reused.
+     */
+    @Test
+    public void testConcurrentDownloadsAreCollapsed() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaDownloader downloader = new SchemaDownloader();
+
+        // Execute system under test.
+        final CompletableFuture<String> first = downloader.download(url());
+        final CompletableFuture<String> second = downloader.download(url());
+        release.countDown();
+        final String firstResult = first.get(10, TimeUnit.SECONDS);
+        final String secondResult = second.get(10, TimeUnit.SECONDS);
+        final String cachedResult = downloader.download(url()).get(10, TimeUnit.SECONDS);
+
+        // Verify results.
+        assertEquals(SCHEMA, firstResult);
+        assertEquals(SCHEMA, secondResult);
+        assertEquals(SCHEMA, cachedResult);
+        assertEquals(1, requests.get());
+    }
+
+    /**
+     * Asserts that a download that takes longer than the timeout fails, without blocking the caller.
+     */
+    @Test
+    public void testTimeout() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaDownloader downloader = new SchemaDownloader();
+        downloader.setTimeout(Duration.ofMillis(100));
+
+        // Execute system under test.
+        final String result = downloader.download(url()).get(10, TimeUnit.SECONDS);
+
+        // Verify results.
+        assertTrue(result.startsWith("<downloadSchemaResponse "));
+        assertTrue(result.contains("<timeout "));
+    }
+
+    /**
+     * Asserts that a download that takes longer than the maximum duration fails, even when each of its reads is quick.
+     */
+    @Test
+    public void testMaximumDuration() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaDownloader downloader = new SchemaDownloader();
+        downloader.setTimeout(Duration.ofSeconds(1));
+        downloader.setMaximumDuration(Duration.ofMillis(300));
+        final String url = url().replace("/schema.xsd", "/slow.xsd");
+
+        // Execute system under test.
+        final long start = System.nanoTime();
+        final String result = downloader.download(url).get(10, TimeUnit.SECONDS);
+
+        // Verify results.
+        assertTrue(result.startsWith("<downloadSchemaResponse "));
+        assertTrue(result.contains("<timeout "));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    /**
+     * Asserts that a schema that exceeds the maximum size is not accepted.
+     */
+    @Test
+    public void testMaximumSize() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaDownloader downloader = new SchemaDownloader();
+        downloader.setMaximumSize(SCHEMA.length() - 1);
+        release.countDown();
+
+        // Execute system under test.
+        final String result = downloader.download(url()).get(10, TimeUnit.SECONDS);
+
+        // Verify results.
+        assertTrue(result.startsWith("<downloadSchemaResponse "));
+        assertTrue(result.contains("too large"));
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link SchemaRegistry}.
+ */
+public class SchemaRegistryTest
+{
+    private static final String NEW_SCHEMA = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+        "<xs:schema \n" +
+        "    xmlns:xs='http://www.w3.org/2001/XMLSchema'\n" +
+        "    targetNamespace='http://example.org/unit-test/new-schema'\n" +
+        "    elementFormDefault='qualified'>\n" +
+        "</xs:schema>";
+
+    @Rule
+    public final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withBundledSchemas();
+
+    /**
+     * Asserts that schemas that are in the schemas folder can be found by the values used in a 'setup' negotiation.
+     */
+    @Test
+    public void testFindExisting() throws Exception
+    {
+        // Setup test fixture.
+        final Path location = EXIUtils.getSchemasFolder().resolve("jabber-client.xsd");
+        final byte[] data = Files.readAllBytes(location);
+
+        // Execute system under test.
+        final SchemaRegistry.Schema result = SchemaRegistry.getInstance().find("jabber:client", String.valueOf(data.length), SchemaRegistry.md5(data));
+
+        // Verify results.
+        assertNotNull(result);
+        assertEquals(location.toAbsolutePath(), result.getLocation());
+        assertEquals(location.toAbsolutePath(), SchemaRegistry.getInstance().getLocation("jabber:client"));
+    }
+
+    /**
+     * Asserts that a schema with an unrecognized hash is not found.
+     */
+    @Test
+    public void testFindWrongHash() throws Exception
+    {
+        // Setup test fixture.
+        final Path location = EXIUtils.getSchemasFolder().resolve("jabber-client.xsd");
+        final byte[] data = Files.readAllBytes(location);
+
+        // Execute system under test.
+        final SchemaRegistry.Schema result = SchemaRegistry.getInstance().find("jabber:client", String.valueOf(data.length), "0123456789abcdef0123456789abcdef");
+
+        // Verify results.
+        assertNull(result);
+    }
+
+    /**
+     * Asserts that a schema that is added is immediately available, and is persisted in the schemas file.
+     */
+    @Test
+    public void testRegister() throws Exception
+    {
+        // Setup test fixture.
+        final String md5Hash = "0123456789abcdef0123456789abcdef";
+
+        // Execute system under test.
+        final Path location = EXIFilter.addNewSchemaToSchemasFile(NEW_SCHEMA.getBytes(), md5Hash, "123");
+        SchemaRegistry.getInstance().flush();
+
+        // Verify results.
+        assertEquals(SchemaRegistry.md5(NEW_SCHEMA.getBytes()) + ".xsd", location.getFileName().toString());
+        assertNotNull(SchemaRegistry.getInstance().find("http://example.org/unit-test/new-schema", "123", md5Hash));
+        assertEquals(location, SchemaRegistry.getInstance().getStored(md5Hash).getLocation());
+        assertEquals(location, SchemaRegistry.getInstance().getLocation("http://example.org/unit-test/new-schema"));
+        assertTrue(EXIUtils.readFile(EXIUtils.getSchemasFileLocation()).contains("http://example.org/unit-test/new-schema"));
+    }
+
+    /**
+     * Asserts that a schema that is added more than once is stored only once.
+     */
+    @Test
+    public void testAddIsDeduplicated() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaRegistry.Schema first = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), null, null);
+        final long filesBefore;
+        try (final Stream<Path> stream = Files.list(EXIUtils.getSchemasFolder())) {
+            filesBefore = stream.count();
+        }
+
+        // Execute system under test.
+        final SchemaRegistry.Schema second = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), null, null);
+
+        // Verify results.
+        assertSame(first, second);
+        assertEquals(SchemaRegistry.md5(NEW_SCHEMA.getBytes()) + ".xsd", second.getLocation().getFileName().toString());
+        try (final Stream<Path> stream = Files.list(EXIUtils.getSchemasFolder())) {
+            assertEquals(filesBefore, stream.count());
+        }
+    }
+
+    /**
+     * Asserts that a schema that is added with the hash of another, stored schema does not replace that schema.
+     */
+    @Test
+    public void testAddWithHashOfOtherSchema() throws Exception
+    {
+        // Setup test fixture.
+        final SchemaRegistry.Schema stored = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), null, null);
+        final String other = NEW_SCHEMA.replace("new-schema", "other-schema");
+
+        // Execute system under test.
+        final SchemaRegistry.Schema result = SchemaRegistry.getInstance().add(other.getBytes(), stored.getMd5Hash(), "123");
+
+        // Verify results.
+        assertEquals(SchemaRegistry.md5(other.getBytes()) + ".xsd", result.getLocation().getFileName().toString());
+        assertEquals(NEW_SCHEMA, new String(Files.readAllBytes(stored.getLocation())));
+        assertEquals(stored.getLocation(), SchemaRegistry.getInstance().getStored(stored.getMd5Hash()).getLocation());
+    }
+
+    /**
+     * Asserts that the hash with which a schema is uploaded again is recorded as an alias, which is still known after
+     * the registry has been rebuilt from the schemas folder and the schemas file (as happens after a restart).
+     */
+    @Test
+    public void testAliasOfStoredSchemaIsPersisted() throws Exception
+    {
+        // Setup test fixture.
+        final String md5Hash = "0123456789abcdef0123456789abcdef";
+        final SchemaRegistry.Schema stored = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), null, null);
+
+        // Execute system under test.
+        final SchemaRegistry.Schema result = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), md5Hash, "123");
+        SchemaRegistry.getInstance().flush();
+        SchemaRegistry.getInstance().clear();
+
+        // Verify results.
+        assertEquals(stored.getLocation(), result.getLocation());
+        final SchemaRegistry.Schema found = SchemaRegistry.getInstance().find("http://example.org/unit-test/new-schema", "123", md5Hash);
+        assertNotNull(found);
+        assertEquals(stored.getLocation(), found.getLocation());
+        assertEquals(stored.getLocation(), SchemaRegistry.getInstance().getStored(md5Hash).getLocation());
+    }
+
+    /**
+     * Asserts that registering a schema again (as the watcher does after a file was added) keeps its aliases.
+     */
+    @Test
+    public void testRegisterKeepsAliases() throws Exception
+    {
+        // Setup test fixture.
+        final String md5Hash = "0123456789abcdef0123456789abcdef";
+        final SchemaRegistry.Schema stored = SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), md5Hash, "123");
+
+        // Execute system under test.
+        SchemaRegistry.getInstance().register(stored.getLocation());
+
+        // Verify results.
+        assertNotNull(SchemaRegistry.getInstance().find("http://example.org/unit-test/new-schema", "123", md5Hash));
+    }
+
+    /**
+     * Asserts that a snapshot that was obtained before a schema was added is not modified by that addition.
+     */
+    @Test
+    public void testSnapshotIsImmutable() throws Exception
+    {
+        // Setup test fixture.
+        final Map<String, Path> before = SchemaRegistry.getInstance().getLocationsByNamespace();
+        final int sizeBefore = before.size();
+
+        // Execute system under test.
+        SchemaRegistry.getInstance().add(NEW_SCHEMA.getBytes(), null, null);
+
+        // Verify results.
+        assertEquals(sizeBefore, before.size());
+        assertFalse(before.containsKey("http://example.org/unit-test/new-schema"));
+        assertTrue(SchemaRegistry.getInstance().getLocationsByNamespace().containsKey("http://example.org/unit-test/new-schema"));
+    }
+
+    /**
+     * Asserts that a schema that is removed can no longer be found.
+     */
+    @Test
+    public void testUnregister() throws Exception
+    {
+        // Setup test fixture.
+        final Path location = EXIUtils.getSchemasFolder().resolve("new-schema.xsd");
+        Files.write(location, NEW_SCHEMA.getBytes());
+        final SchemaRegistry.Schema schema = SchemaRegistry.getInstance().register(location);
+
+        // Execute system under test.
+        SchemaRegistry.getInstance().unregister(location);
+
+        // Verify results.
+        assertNull(SchemaRegistry.getInstance().find(schema.getNamespace(), schema.getBytes(), schema.getMd5Hash()));
+        assertNull(SchemaRegistry.getInstance().getLocation("http://example.org/unit-test/new-schema"));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests that verify the implementation of {@link StanzaSerializer}.
+ */
+public class StanzaSerializerTest
+{
+    /**
+     * Asserts that elements, namespace declarations, attributes and text are serialized, and that the name of the root
+     * element is recorded.
+     */
+    @Test
+    public void testSerialize() throws Exception
+    {
+        // Setup test fixture.
+        final StanzaSerializer serializer = new StanzaSerializer();
+        final AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "to", "to", "CDATA", "juliet@example.com");
+        final String body = "Art thou not Romeo & a Montague?";
+
+        // Execute system under test.
+        serializer.startDocument();
+        serializer.startPrefixMapping("", "jabber:client");
+        serializer.startElement("jabber:client", "message", "message", attributes);
+        serializer.startElement("jabber:client", "body", "body", new AttributesImpl());
+        serializer.characters(body.toCharArray(), 0, body.length());
+        serializer.endElement("jabber:client", "body", "body");
+        serializer.startElement("jabber:client", "thread", "thread", new AttributesImpl());
+        serializer.endElement("jabber:client", "thread", "thread");
+        serializer.endElement("jabber:client", "message", "message");
+        serializer.endDocument();
+
+        // Verify results.
+        assertEquals("message", serializer.getRootElementName());
+        assertEquals("<message xmlns=\"jabber:client\" to=\"juliet@example.com\"><body>Art thou not Romeo &amp; a Montague?</body><thread/></message>", serializer.getXML());
+    }
+
+    /**
+     * Asserts that characters that are not allowed in attribute values are escaped.
+     */
+    @Test
+    public void testEscapeAttribute() throws Exception
+    {
+        // Setup test fixture.
+        final StanzaSerializer serializer = new StanzaSerializer();
+        final AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "id", "id", "CDATA", "<\"a\" & 'b'>");
+
+        // Execute system under test.
+        serializer.startDocument();
+        serializer.startPrefixMapping("exi", "http://jabber.org/protocol/compress/exi");
+        serializer.startElement("http://jabber.org/protocol/compress/exi", "streamEnd", "exi:streamEnd", attributes);
+        serializer.endElement("http://jabber.org/protocol/compress/exi", "streamEnd", "exi:streamEnd");
+        serializer.endDocument();
+
+        // Verify results.
+        assertEquals("streamEnd", serializer.getRootElementName());
+        assertEquals("<exi:streamEnd xmlns:exi=\"http://jabber.org/protocol/compress/exi\" id=\"&lt;&quot;a&quot; &amp; 'b'&gt;\"/>", serializer.getXML());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Points the plugin to a temporary schemas folder for the duration of a test (or of all tests of a class, when used as
+ * a class rule), and deletes that folder afterwards.
+ */
+public class TemporarySchemasFolder extends ExternalResource
+{
+    private final boolean bundledSchemas;
+    private final boolean defaultCanonicalSchema;
+
+    private Path folder;
+
+    private TemporarySchemasFolder(boolean bundledSchemas, boolean defaultCanonicalSchema)
+    {
+        this.bundledSchemas = bundledSchemas;
+        this.defaultCanonicalSchema = defaultCanonicalSchema;
+    }
+
+    /**
+     * A folder that contains a copy of the bundled schemas, the schemas file and the default canonical schema.
+     */
+    public static TemporarySchemasFolder withDefaultCanonicalSchema()
+    {
+        return new TemporarySchemasFolder(true, true);
+    }
+
+    /**
+     * A folder that contains a copy of the bundled schemas and the schemas file.
+     */
+    public static TemporarySchemasFolder withBundledSchemas()
+    {
+        return new TemporarySchemasFolder(true, false);
+    }
+
+    /**
+     * A folder that contains nothing but an (empty) EXI folder.
+     */
+    public static TemporarySchemasFolder empty()
+    {
+        return new TemporarySchemasFolder(false, false);
+    }
+
+    @Override
+    protected void before() throws Throwable
+    {
+        folder = Files.createTempDirectory("unit-test-classes-");
+        EXIUtils.setSchemasFolder(folder);
+        if (!bundledSchemas) {
+            Files.createDirectories(EXIUtils.getExiFolder());
+            return;
+        }
+
+        // Copy all content to temp folder
+        try (final Stream<Path> stream = Files.walk(Paths.get("classes"))) {
+            stream.forEach(source -> {
+                Path destination = folder.resolve(source.getFileName());
+                try {
+                    Files.copy(source, destination);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        EXIUtils.generateSchemasFile();
+        if (defaultCanonicalSchema) {
+            EXIUtils.generateDefaultCanonicalSchema();
+        }
+    }
+
+    @Override
+    protected void after()
+    {
+        EXIUtils.setSchemasFolder(null);
+        try (final Stream<Path> stream = Files.walk(folder)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2026 Ignite Realtime Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.clayster.exi;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the implementation of {@link VocabularyAnalyzer}.
+ */
+public class VocabularyAnalyzerTest
+{
+    private static final String NAMESPACE = "urn:example:sensor";
+
+    @ClassRule
+    public static final TemporarySchemasFolder schemasFolder = TemporarySchemasFolder.withDefaultCanonicalSchema();
+
+    /**
+     * Asserts that a schema is generated for a namespace that is not described by a registered schema, and that it
+     * enumerates the values of attributes that repeat, when enabled.
+     */
+    @Test
+    public void testSchemaIsGeneratedForUnknownNamespace() throws Exception
+    {
+        // Setup test fixture.
+        final VocabularyAnalyzer analyzer = new VocabularyAnalyzer();
+        analyzer.setEnumerateAttributes(true);
+
+        // Execute system under test.
+        final VocabularyAnalyzer.Report result = analyzer.analyze(readings(20));
+
+        // Verify results.
+        assertEquals(Collections.singleton(NAMESPACE), result.schemas.keySet());
+        final String schema = result.schemas.get(NAMESPACE);
+        assertTrue(schema.contains("name=\"reading\""));
+        assertTrue(schema.contains("ref=\"tns:value\""));
+        assertTrue(schema.contains("<xs:enumeration value=\"celsius\"/>"));
+        assertFalse(schema.contains("<xs:enumeration value=\"21.0\"/>"));
+    }
+
+    /**
+     * Asserts that attribute values are not enumerated unless that is enabled, and that the report says so.
+     */
+    @Test
+    public void testAttributesAreNotEnumeratedByDefault() throws Exception
+    {
+        // Setup test fixture.
+        final VocabularyAnalyzer analyzer = new VocabularyAnalyzer();
+
+        // Execute system under test.
+        final VocabularyAnalyzer.Report result = analyzer.analyze(readings(20));
+
+        // Verify results.
+        assertFalse(result.schemas.get(NAMESPACE).contains("xs:enumeration"));
+        assertTrue(result.toString().contains("not enumerated"));
+    }
+
+    /**
+     * Asserts that the projected size of stanzas that use the generated schemas is smaller.
+     */
+    @Test
+    public void testSavingsAreProjected() throws Exception
+    {
+        // Setup test fixture.
+        final VocabularyAnalyzer analyzer = new VocabularyAnalyzer();
+
+        // Execute system under test.
+        final VocabularyAnalyzer.Report result = analyzer.analyze(readings(20));
+
+        // Verify results.
+        assertTrue(result.bytesBefore > 0);
+        assertTrue(result.bytesAfter < result.bytesBefore);
+    }
+
+    /**
+     * Asserts that nothing is generated for namespaces that are described by registered schemas.
+     */
+    @Test
+    public void testKnownNamespacesAreIgnored() throws Exception
+    {
+        // Setup test fixture.
+        final VocabularyAnalyzer analyzer = new VocabularyAnalyzer();
+
+        // Execute system under test.
+        final VocabularyAnalyzer.Report result = analyzer.analyze(Collections.singletonList("<message xmlns='jabber:client' to='hub@example.org'><body>Hi</body></message>"));
+
+        // Verify results.
+        assertTrue(result.schemas.isEmpty());
+        assertTrue(analyzer.activate().startsWith("There are no schemas to activate"));
+    }
+
+    /**
+     * Asserts that generated schemas are registered when activated.
+     */
+    @Test
+    public void testActivateRegistersSchemas() throws Exception
+    {
+        // Setup test fixture.
+        final VocabularyAnalyzer analyzer = new VocabularyAnalyzer();
+        analyzer.analyze(readings(20));
+
+        // Execute system under test.
+        analyzer.activate();
+
+        // Verify results.
+        assertNotNull(SchemaRegistry.getInstance().getLocation(NAMESPACE));
+    }
+
+    private static List<String> readings(final int count)
+    {
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add("<message xmlns='jabber:client' to='hub@example.org'>"
+                + "<reading xmlns='" + NAMESPACE + "' unit='celsius' kind='temperature'><value>" + (20 + i) + ".0</value></reading>"
+                + "</message>");
+        }
+        return result;
+    }
+}